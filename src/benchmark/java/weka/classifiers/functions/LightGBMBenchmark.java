@@ -0,0 +1,334 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMBenchmark.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import io.github.metarank.lightgbm4j.LGBMDataset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the hot paths of the LightGBM classifier: data
+ * conversion, model (de)compression, training and prediction. Uses
+ * synthetic datasets of different shapes.
+ * <br>
+ * Run with: mvn -P benchmarks,no-tests test-compile exec:exec
+ * <br>
+ * Additional JMH options can be supplied via -Djmh.args="...", e.g.,
+ * -Djmh.args="-prof gc -p shape=dense LightGBMBenchmark.classifyInstance"
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LightGBMBenchmark {
+
+  /** the number of boosting iterations for the benchmark models. */
+  public final static int NUM_ITERATIONS = 50;
+
+  /**
+   * The synthetic dataset and the model trained on it.
+   */
+  @State(Scope.Benchmark)
+  public static class DataState {
+
+    /** the shape of the dataset. */
+    @Param({"dense", "sparse", "wide", "tall", "nominal", "multiclass"})
+    public String shape;
+
+    /** the dataset. */
+    public Instances data;
+
+    /** the options for the classifier. */
+    public String[] options;
+
+    /** the trained classifier. */
+    public LightGBM classifier;
+
+    /** the model as text. */
+    public String model;
+
+    /** the compressed model. */
+    public byte[] compressed;
+
+    /** the buffer for converting single rows. */
+    public double[] row;
+
+    /** the index of the next row to use. */
+    public int next;
+
+    /**
+     * Generates the dataset and trains the classifier.
+     *
+     * @throws Exception	if training fails
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      switch (shape) {
+	case "dense":
+	  data = generate(5000, 20, 0, 2, 0.0);
+	  break;
+	case "sparse":
+	  data = generate(5000, 500, 0, 2, 0.98);
+	  break;
+	case "wide":
+	  data = generate(500, 2000, 0, 0, 0.0);
+	  break;
+	case "tall":
+	  data = generate(100000, 10, 0, 0, 0.0);
+	  break;
+	case "nominal":
+	  data = generate(5000, 5, 15, 2, 0.0);
+	  break;
+	case "multiclass":
+	  data = generate(5000, 20, 0, 5, 0.0);
+	  break;
+	default:
+	  throw new IllegalArgumentException("Unknown shape: " + shape);
+      }
+
+      options = Utils.splitOptions(
+	"-O " + (data.classAttribute().isNumeric() ? "REGRESSION" : (data.numClasses() == 2 ? "BINARY" : "MULTICLASS"))
+	  + " -I " + NUM_ITERATIONS
+	  + " -P \"verbosity=-1 num_threads=1\"");
+      classifier = new LightGBM();
+      classifier.setOptions(options.clone());
+      classifier.buildClassifier(data);
+      compressed = classifier.m_Model;
+      model      = LightGBMUtils.decompress(compressed);
+      row        = new double[data.numAttributes() - 1];
+      next       = 0;
+    }
+
+    /**
+     * Returns the next instance, cycling through the dataset.
+     *
+     * @return		the instance
+     */
+    public Instance nextInstance() {
+      Instance	result;
+
+      result = data.instance(next);
+      next   = (next + 1) % data.numInstances();
+      return result;
+    }
+
+    /**
+     * Releases the classifier.
+     *
+     * @throws Exception	if closing fails
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+      classifier.close();
+    }
+  }
+
+  /**
+   * Generates a synthetic dataset, with the class depending on the first
+   * attributes.
+   *
+   * @param numRows	the number of rows
+   * @param numNumeric	the number of numeric attributes
+   * @param numNominal	the number of nominal attributes (10 labels each)
+   * @param numClasses	the number of class labels, 0 for numeric class
+   * @param sparsity	the fraction of numeric values that are zero, 0 for dense data
+   * @return		the dataset
+   */
+  public static Instances generate(int numRows, int numNumeric, int numNominal, int numClasses, double sparsity) {
+    Instances		result;
+    ArrayList<Attribute>	atts;
+    List<String>	labels;
+    Random		rnd;
+    double[]		values;
+    double		target;
+    int			i;
+    int			n;
+
+    rnd  = new Random(42);
+    atts = new ArrayList<>();
+    for (i = 0; i < numNumeric; i++)
+      atts.add(new Attribute("num-" + i));
+    labels = new ArrayList<>();
+    for (i = 0; i < 10; i++)
+      labels.add("v" + i);
+    for (i = 0; i < numNominal; i++)
+      atts.add(new Attribute("nom-" + i, new ArrayList<>(labels)));
+    if (numClasses == 0) {
+      atts.add(new Attribute("class"));
+    }
+    else {
+      labels = new ArrayList<>();
+      for (i = 0; i < numClasses; i++)
+	labels.add("c" + i);
+      atts.add(new Attribute("class", labels));
+    }
+
+    result = new Instances("synthetic-" + numRows + "x" + (atts.size() - 1), atts, numRows);
+    result.setClassIndex(result.numAttributes() - 1);
+    for (n = 0; n < numRows; n++) {
+      values = new double[atts.size()];
+      target = 0;
+      for (i = 0; i < numNumeric; i++) {
+	if ((sparsity > 0) && (rnd.nextDouble() < sparsity))
+	  continue;
+	values[i] = rnd.nextGaussian();
+	if (i < 5)
+	  target += values[i] * (i + 1);
+      }
+      for (i = 0; i < numNominal; i++) {
+	values[numNumeric + i] = rnd.nextInt(10);
+	if (i < 5)
+	  target += (values[numNumeric + i] - 4.5) / 2.0;
+      }
+      target += rnd.nextGaussian();
+      if (numClasses == 0)
+	values[values.length - 1] = target;
+      else
+	values[values.length - 1] = Math.floorMod((int) Math.floor(target / 2.0), numClasses);
+      if (sparsity > 0)
+	result.add(new SparseInstance(1.0, values));
+      else
+	result.add(new DenseInstance(1.0, values));
+    }
+
+    return result;
+  }
+
+  /**
+   * Converts the full dataset into a native dataset.
+   *
+   * @param state	the state
+   * @param bh		the black hole
+   * @throws Exception	if conversion fails
+   */
+  @Benchmark
+  public void fromInstances(DataState state, Blackhole bh) throws Exception {
+    LGBMDataset	dataset;
+
+    dataset = LightGBMUtils.fromInstances(state.data);
+    bh.consume(dataset.getNumData());
+    dataset.close();
+  }
+
+  /**
+   * Converts a single instance into a row.
+   *
+   * @param state	the state
+   * @return		the row
+   */
+  @Benchmark
+  public double[] fromInstance(DataState state) {
+    LightGBMUtils.fromInstance(state.nextInstance(), state.row);
+    return state.row;
+  }
+
+  /**
+   * Compresses the model.
+   *
+   * @param state	the state
+   * @return		the compressed model
+   */
+  @Benchmark
+  public byte[] compress(DataState state) {
+    return LightGBMUtils.compress(state.model);
+  }
+
+  /**
+   * Decompresses the model.
+   *
+   * @param state	the state
+   * @return		the model
+   */
+  @Benchmark
+  public String decompress(DataState state) {
+    return LightGBMUtils.decompress(state.compressed);
+  }
+
+  /**
+   * Trains a classifier on the dataset.
+   *
+   * @param state	the state
+   * @return		the classifier
+   * @throws Exception	if training fails
+   */
+  @Benchmark
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 3)
+  public LightGBM buildClassifier(DataState state) throws Exception {
+    LightGBM	result;
+
+    result = new LightGBM();
+    result.setOptions(state.options.clone());
+    result.buildClassifier(state.data);
+    result.close();
+    return result;
+  }
+
+  /**
+   * Predicts a single instance.
+   *
+   * @param state	the state
+   * @return		the prediction
+   * @throws Exception	if prediction fails
+   */
+  @Benchmark
+  public double classifyInstance(DataState state) throws Exception {
+    return state.classifier.classifyInstance(state.nextInstance());
+  }
+
+  /**
+   * Predicts the full dataset in batches.
+   *
+   * @param state	the state
+   * @return		the predictions
+   * @throws Exception	if prediction fails
+   */
+  @Benchmark
+  public double[][] distributionsForInstances(DataState state) throws Exception {
+    return state.classifier.distributionsForInstances(state.data);
+  }
+}
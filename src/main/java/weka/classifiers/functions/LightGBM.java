@@ -20,26 +20,43 @@
 
 package weka.classifiers.functions;
 
-import com.microsoft.ml.lightgbm.PredictionType;
+import com.microsoft.ml.lightgbm.SWIGTYPE_p_double;
+import com.microsoft.ml.lightgbm.lightgbmlibConstants;
 import io.github.metarank.lightgbm4j.LGBMBooster;
 import io.github.metarank.lightgbm4j.LGBMDataset;
 import weka.classifiers.RandomizableClassifier;
+import weka.classifiers.UpdateableClassifier;
 import weka.core.Capabilities;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.SelectedTag;
+import weka.core.SparseInstance;
 import weka.core.Tag;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
-
+import weka.core.WeightedInstancesHandler;
+import weka.core.converters.Loader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.StringReader;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.function.BiConsumer;
 
 /**
  <!-- globalinfo-start -->
@@ -52,6 +69,8 @@ import java.util.Vector;
  * - categorical_features<br>
  * - num_class (for multi-class)<br>
  * <br>
+ * Missing values get handled natively by LightGBM (passed on as NaN).<br>
+ * <br>
  * For more information see:<br>
  * <br>
  * Ke, Guolin, Meng, Qi, Finley, Thomas, Wang, Taifeng, Chen, Wei, Ma, Weidong, Ye, Qiwei, Liu, Tie-Yan: LightGBM: A Highly Efficient Gradient Boosting Decision Tree. In: Advances in Neural Information Processing Systems, 3149-3157, 2017.
@@ -119,13 +138,149 @@ import java.util.Vector;
  *  (default: off)
  * </pre>
  *
+ * <pre> -F
+ *  Uses 32-bit floats instead of 64-bit doubles for the data
+ *  passed to LightGBM (halves the memory).
+ *  (default: off)
+ * </pre>
+ *
+ * <pre> -E &lt;rounds&gt;
+ *  The number of rounds without improvement on the validation set
+ *  before stopping the training (0 = off).
+ *  (default: 0)
+ * </pre>
+ *
+ * <pre> -M &lt;metric&gt;
+ *  The validation metric to monitor for early stopping.
+ *  Uses the first metric if empty.
+ *  (default: none)
+ * </pre>
+ *
+ * <pre> -D &lt;delta&gt;
+ *  The minimum change in the validation metric to count as improvement.
+ *  (default: 0.0)
+ * </pre>
+ *
+ * <pre> -B
+ *  Keeps only the iterations up to the best one on the validation set
+ *  in the model.
+ *  (default: off)
+ * </pre>
+ *
+ * <pre> -C &lt;iterations&gt;
+ *  The maximum number of iterations to keep in the model (0 = all).
+ *  (default: 0)
+ * </pre>
+ *
+ * <pre> -J
+ *  Uses the pure-Java inference engine for making predictions
+ *  instead of the native library.
+ *  (default: off)
+ * </pre>
+ *
+ * <pre> -K
+ *  Compiles the trees into JVM bytecode for pure-Java inference
+ *  (requires a JDK; falls back to interpreting the trees for
+ *  models with more than about 15000 trees, e.g., 5000
+ *  iterations with 4 classes).
+ *  (default: off)
+ * </pre>
+ *
+ * <pre> -N &lt;boosters&gt;
+ *  The maximum number of boosters to use for concurrent predictions
+ *  with the native library.
+ *  (default: 1)
+ * </pre>
+ *
+ * <pre> -G &lt;dir&gt;
+ *  The directory for caching the training datasets in LightGBM's
+ *  binary format, to skip conversion and binning (empty = off).
+ *  (default: none)
+ * </pre>
+ *
+ * <pre> -H &lt;megabytes&gt;
+ *  The maximum size of the dataset cache in MB (0 = unlimited).
+ *  (default: 1024)
+ * </pre>
+ *
+ * <pre> -L &lt;rows&gt;
+ *  The number of rows per off-heap chunk when streaming the
+ *  training data from a loader.
+ *  (default: 10000)
+ * </pre>
+ *
+ * <pre> -Z &lt;NONE|GZIP|DEFLATE_FAST|DEFLATE_BEST&gt;
+ *  The codec for storing the model in the serialized classifier:
+ *  NONE = No compression
+ *  GZIP = Gzip
+ *  DEFLATE_FAST = Deflate (fastest)
+ *  DEFLATE_BEST = Deflate (best compression)
+ *  (default: GZIP)
+ * </pre>
+ *
+ * <pre> -T
+ *  Stores the parsed trees in a compact binary layout as well,
+ *  for the pure-Java inference engine to load without parsing.
+ *  (default: off)
+ * </pre>
+ *
+ * <pre> -U
+ *  Always outputs the full model text instead of a summary for
+ *  large models.
+ *  (default: off)
+ * </pre>
+ *
+ * <pre> -X
+ *  Collects latency metrics for the predictions (count, percentiles,
+ *  conversion vs scoring time, load time), also available via JMX.
+ *  (default: off)
+ * </pre>
+ *
+ * <pre> -W
+ *  Continues training from the existing model (if the data has the
+ *  same structure), adding the specified number of iterations.
+ *  (default: off)
+ * </pre>
+ *
+ * <pre> -Q &lt;instances&gt;
+ *  The number of instances to collect via updateClassifier before
+ *  adding iterations to the model.
+ *  (default: 1000)
+ * </pre>
+ *
+ * <pre> -Y &lt;iterations&gt;
+ *  The number of iterations to add per update.
+ *  (default: 10)
+ * </pre>
+ *
+ * <pre> -A &lt;threads&gt;
+ *  The number of threads to request for training from the JVM-wide
+ *  thread budget (0 = all available cores, cgroup-aware; -1 = OpenMP
+ *  default). Ignored if num_threads is part of the parameters.
+ *  (default: 0)
+ * </pre>
+ *
+ * <pre> -model-dir &lt;dir&gt;
+ *  The directory for storing the model as external file rather than
+ *  in the serialized classifier; native boosters get loaded from the
+ *  file and the pure-Java scorer memory-maps the trees (empty = off).
+ *  (default: none)
+ * </pre>
+ *
+ * <pre> -shared-models
+ *  Whether to share the loaded models (booster pools, pure-Java
+ *  trees, compiled scorers) with all other instances in the JVM
+ *  that have the same model, via the process-wide model registry.
+ *  (default: off)
+ * </pre>
+ *
  <!-- options-end -->
  *
  * @author fracpete (fracpete at waikato dot ac dot nz)
  */
 public class LightGBM
   extends RandomizableClassifier
-  implements TechnicalInformationHandler, AutoCloseable {
+  implements TechnicalInformationHandler, WeightedInstancesHandler, UpdateableClassifier, AutoCloseable {
 
   private static final long serialVersionUID = -6138516902729782286L;
 
@@ -185,6 +340,72 @@ public class LightGBM
   /** whether to randomize before splitting off the validation set. */
   protected boolean m_RandomizeBeforeSplit = false;
 
+  /** whether to use 32-bit floats for the data passed to LightGBM. */
+  protected boolean m_SinglePrecision = false;
+
+  /** the number of rounds without improvement before stopping (0 = off). */
+  protected int m_EarlyStoppingRounds = 0;
+
+  /** the validation metric to monitor for early stopping (empty = first one). */
+  protected String m_EarlyStoppingMetric = "";
+
+  /** the minimum change in the metric that counts as improvement. */
+  protected double m_EarlyStoppingMinDelta = 0.0;
+
+  /** whether to keep only the iterations up to the best one on the validation set. */
+  protected boolean m_KeepBestIteration = false;
+
+  /** the maximum number of iterations to keep in the model (0 = all). */
+  protected int m_IterationCutoff = 0;
+
+  /** whether to use the pure-Java inference engine instead of the native one. */
+  protected boolean m_PureJavaInference = false;
+
+  /** whether to compile the trees into JVM bytecode for pure-Java inference. */
+  protected boolean m_CompiledInference = false;
+
+  /** the maximum number of boosters for concurrent native predictions. */
+  protected int m_NumBoosters = 1;
+
+  /** the directory for caching the binary training datasets (empty = off). */
+  protected String m_DatasetCacheDir = "";
+
+  /** the maximum size of the dataset cache in MB (0 = unlimited). */
+  protected int m_DatasetCacheSize = 1024;
+
+  /** the number of rows per chunk when training from a loader. */
+  protected int m_ChunkSize = 10000;
+
+  /** the codec for the model payloads. */
+  protected int m_ModelCodec = LightGBMModelCodec.CODEC_GZIP;
+
+  /** whether to store the parsed trees in a binary layout as well. */
+  protected boolean m_StoreTrees = false;
+
+  /** whether to always output the full model in toString. */
+  protected boolean m_FullModelOutput = false;
+
+  /** whether to collect prediction metrics. */
+  protected boolean m_CollectPredictionMetrics = false;
+
+  /** whether to continue training from the existing model. */
+  protected boolean m_WarmStart = false;
+
+  /** the number of instances to collect before updating the model. */
+  protected int m_UpdateBatchSize = 1000;
+
+  /** the number of iterations to add per update. */
+  protected int m_UpdateIterations = 10;
+
+  /** the number of threads (0 = automatic, -1 = OpenMP default). */
+  protected int m_NumThreads = 0;
+
+  /** the directory for storing the models as external files (empty = off). */
+  protected String m_ModelDir = "";
+
+  /** whether to share loaded models across instances via the registry. */
+  protected boolean m_SharedModels = false;
+
   /** the booster instance in use. */
   protected transient LGBMBooster m_Booster = null;
 
@@ -194,9 +415,67 @@ public class LightGBM
   /** the built model. */
   protected byte[] m_Model = null;
 
+  /** the parsed trees in binary layout (null if not stored). */
+  protected byte[] m_TreeData = null;
+
+  /** the external model file (null if stored in m_Model). */
+  protected String m_ModelFile = null;
+
+  /** the size of the model text in characters. */
+  protected int m_ModelSize;
+
+  /** the summary of the model (null if not yet determined). */
+  protected String m_ModelSummary = null;
+
+  /** the cached model text. */
+  protected transient SoftReference<String> m_ModelText = null;
+
+  /** the content hash of the internal model (null if not yet determined). */
+  protected transient String m_ModelHash = null;
+
+  /** the keys of the models obtained from the registry (null if none). */
+  protected transient List<String> m_RegistryKeys = null;
+
+  /** the best iteration on the validation set (0 = not determined). */
+  protected int m_BestIteration;
+
   /** whether the class is numeric. */
   protected boolean m_NumericClass;
 
+  /** the model text size (in characters) above which only a summary gets output. */
+  public final static int MAX_FULL_MODEL_OUTPUT = 100000;
+
+  /** the number of feature importances to output in the summary. */
+  public final static int NUM_SUMMARY_IMPORTANCES = 10;
+
+  /** the number of class labels (1 for numeric class). */
+  protected int m_NumClasses;
+
+  /** the pure-Java representation of the model. */
+  protected transient volatile LightGBMTreeModel m_TreeModel = null;
+
+  /** the compiled scorer for the raw scores (null if not available). */
+  protected transient volatile BiConsumer<double[],double[]> m_CompiledScorer = null;
+
+  /** the pool of boosters for native predictions. */
+  protected transient volatile LightGBMBoosterPool m_Pool = null;
+
+  /** the timings and metrics of the last training run. */
+  protected LightGBMTrainingMetrics m_TrainingMetrics = null;
+
+  /** the structure of the training data (null if not trained yet). */
+  protected Instances m_Header = null;
+
+  /** the instances collected via updateClassifier (serialized, so that
+   * pending updates don't get lost). */
+  protected Instances m_UpdateBuffer = null;
+
+  /** the listeners for the training progress. */
+  protected transient List<LightGBMTrainingListener> m_TrainingListeners = null;
+
+  /** the prediction metrics (null if not collected yet). */
+  protected transient volatile LightGBMPredictionMetrics m_PredictionMetrics = null;
+
   /**
    * Returns a string describing this clusterer
    *
@@ -214,6 +493,8 @@ public class LightGBM
       + "- categorical_features\n"
       + "- num_class (for multi-class)\n"
       + "\n"
+      + "Missing values get handled natively by LightGBM (passed on as NaN).\n"
+      + "\n"
       + "For more information see:\n\n"
       + getTechnicalInformation().toString();
   }
@@ -289,6 +570,146 @@ public class LightGBM
         + "\t(default: off)\n",
       "R", 0, "-R"));
 
+    result.addElement(new Option(
+      "\tUses 32-bit floats instead of 64-bit doubles for the data\n"
+        + "\tpassed to LightGBM (halves the memory).\n"
+        + "\t(default: off)\n",
+      "F", 0, "-F"));
+
+    result.addElement(new Option(
+      "\tThe number of rounds without improvement on the validation set\n"
+        + "\tbefore stopping the training (0 = off).\n"
+        + "\t(default: 0)\n",
+      "E", 1, "-E <rounds>"));
+
+    result.addElement(new Option(
+      "\tThe validation metric to monitor for early stopping.\n"
+        + "\tUses the first metric if empty.\n"
+        + "\t(default: none)\n",
+      "M", 1, "-M <metric>"));
+
+    result.addElement(new Option(
+      "\tThe minimum change in the validation metric to count as improvement.\n"
+        + "\t(default: 0.0)\n",
+      "D", 1, "-D <delta>"));
+
+    result.addElement(new Option(
+      "\tKeeps only the iterations up to the best one on the validation set\n"
+        + "\tin the model.\n"
+        + "\t(default: off)\n",
+      "B", 0, "-B"));
+
+    result.addElement(new Option(
+      "\tThe maximum number of iterations to keep in the model (0 = all).\n"
+        + "\t(default: 0)\n",
+      "C", 1, "-C <iterations>"));
+
+    result.addElement(new Option(
+      "\tUses the pure-Java inference engine for making predictions\n"
+        + "\tinstead of the native library.\n"
+        + "\t(default: off)\n",
+      "J", 0, "-J"));
+
+    result.addElement(new Option(
+      "\tCompiles the trees into JVM bytecode for pure-Java inference\n"
+        + "\t(requires a JDK; falls back to interpreting the trees for\n"
+        + "\tmodels with more than about 15000 trees, e.g., 5000\n"
+        + "\titerations with 4 classes).\n"
+        + "\t(default: off)\n",
+      "K", 0, "-K"));
+
+    result.addElement(new Option(
+      "\tThe maximum number of boosters to use for concurrent predictions\n"
+        + "\twith the native library.\n"
+        + "\t(default: 1)\n",
+      "N", 1, "-N <boosters>"));
+
+    result.addElement(new Option(
+      "\tThe directory for caching the training datasets in LightGBM's\n"
+        + "\tbinary format, to skip conversion and binning (empty = off).\n"
+        + "\t(default: none)\n",
+      "G", 1, "-G <dir>"));
+
+    result.addElement(new Option(
+      "\tThe maximum size of the dataset cache in MB (0 = unlimited).\n"
+        + "\t(default: 1024)\n",
+      "H", 1, "-H <megabytes>"));
+
+    result.addElement(new Option(
+      "\tThe number of rows per off-heap chunk when streaming the\n"
+        + "\ttraining data from a loader.\n"
+        + "\t(default: 10000)\n",
+      "L", 1, "-L <rows>"));
+
+    desc = "";
+    for (i = 0; i < LightGBMModelCodec.TAGS_CODEC.length; i++) {
+      tag = new SelectedTag(LightGBMModelCodec.TAGS_CODEC[i].getID(), LightGBMModelCodec.TAGS_CODEC);
+      desc  +=   "\t" + tag.getSelectedTag().getIDStr()
+        + " = " + tag.getSelectedTag().getReadable()
+        + "\n";
+    }
+    result.addElement(new Option(
+      "\tThe codec for storing the model in the serialized classifier:\n"
+        + desc
+        + "\t(default: " + new SelectedTag(LightGBMModelCodec.CODEC_GZIP, LightGBMModelCodec.TAGS_CODEC) + ")",
+      "Z", 1, "-Z " + Tag.toOptionList(LightGBMModelCodec.TAGS_CODEC)));
+
+    result.addElement(new Option(
+      "\tStores the parsed trees in a compact binary layout as well,\n"
+        + "\tfor the pure-Java inference engine to load without parsing.\n"
+        + "\t(default: off)\n",
+      "T", 0, "-T"));
+
+    result.addElement(new Option(
+      "\tAlways outputs the full model text instead of a summary for\n"
+        + "\tlarge models.\n"
+        + "\t(default: off)\n",
+      "U", 0, "-U"));
+
+    result.addElement(new Option(
+      "\tCollects latency metrics for the predictions (count, percentiles,\n"
+        + "\tconversion vs scoring time, load time), also available via JMX.\n"
+        + "\t(default: off)\n",
+      "X", 0, "-X"));
+
+    result.addElement(new Option(
+      "\tContinues training from the existing model (if the data has the\n"
+        + "\tsame structure), adding the specified number of iterations.\n"
+        + "\t(default: off)\n",
+      "W", 0, "-W"));
+
+    result.addElement(new Option(
+      "\tThe number of instances to collect via updateClassifier before\n"
+        + "\tadding iterations to the model.\n"
+        + "\t(default: 1000)\n",
+      "Q", 1, "-Q <instances>"));
+
+    result.addElement(new Option(
+      "\tThe number of iterations to add per update.\n"
+        + "\t(default: 10)\n",
+      "Y", 1, "-Y <iterations>"));
+
+    result.addElement(new Option(
+      "\tThe number of threads to request for training from the JVM-wide\n"
+        + "\tthread budget (0 = all available cores, cgroup-aware; -1 = OpenMP\n"
+        + "\tdefault). Ignored if num_threads is part of the parameters.\n"
+        + "\t(default: 0)\n",
+      "A", 1, "-A <threads>"));
+
+    result.addElement(new Option(
+      "\tThe directory for storing the model as external file rather than\n"
+        + "\tin the serialized classifier; native boosters get loaded from the\n"
+        + "\tfile and the pure-Java scorer memory-maps the trees (empty = off).\n"
+        + "\t(default: none)\n",
+      "model-dir", 1, "-model-dir <dir>"));
+
+    result.addElement(new Option(
+      "\tWhether to share the loaded models (booster pools, pure-Java\n"
+        + "\ttrees, compiled scorers) with all other instances in the JVM\n"
+        + "\tthat have the same model, via the process-wide model registry.\n"
+        + "\t(default: off)\n",
+      "shared-models", 0, "-shared-models"));
+
     return result.elements();
   }
 
@@ -339,6 +760,142 @@ public class LightGBM
    *  (default: off)
    * </pre>
    *
+   * <pre> -F
+   *  Uses 32-bit floats instead of 64-bit doubles for the data
+   *  passed to LightGBM (halves the memory).
+   *  (default: off)
+   * </pre>
+   *
+   * <pre> -E &lt;rounds&gt;
+   *  The number of rounds without improvement on the validation set
+   *  before stopping the training (0 = off).
+   *  (default: 0)
+   * </pre>
+   *
+   * <pre> -M &lt;metric&gt;
+   *  The validation metric to monitor for early stopping.
+   *  Uses the first metric if empty.
+   *  (default: none)
+   * </pre>
+   *
+   * <pre> -D &lt;delta&gt;
+   *  The minimum change in the validation metric to count as improvement.
+   *  (default: 0.0)
+   * </pre>
+   *
+   * <pre> -B
+   *  Keeps only the iterations up to the best one on the validation set
+   *  in the model.
+   *  (default: off)
+   * </pre>
+   *
+   * <pre> -C &lt;iterations&gt;
+   *  The maximum number of iterations to keep in the model (0 = all).
+   *  (default: 0)
+   * </pre>
+   *
+   * <pre> -J
+   *  Uses the pure-Java inference engine for making predictions
+   *  instead of the native library.
+   *  (default: off)
+   * </pre>
+   *
+   * <pre> -K
+   *  Compiles the trees into JVM bytecode for pure-Java inference
+   *  (requires a JDK; falls back to interpreting the trees for
+   *  models with more than about 15000 trees, e.g., 5000
+   *  iterations with 4 classes).
+   *  (default: off)
+   * </pre>
+   *
+   * <pre> -N &lt;boosters&gt;
+   *  The maximum number of boosters to use for concurrent predictions
+   *  with the native library.
+   *  (default: 1)
+   * </pre>
+   *
+   * <pre> -G &lt;dir&gt;
+   *  The directory for caching the training datasets in LightGBM's
+   *  binary format, to skip conversion and binning (empty = off).
+   *  (default: none)
+   * </pre>
+   *
+   * <pre> -H &lt;megabytes&gt;
+   *  The maximum size of the dataset cache in MB (0 = unlimited).
+   *  (default: 1024)
+   * </pre>
+   *
+   * <pre> -L &lt;rows&gt;
+   *  The number of rows per off-heap chunk when streaming the
+   *  training data from a loader.
+   *  (default: 10000)
+   * </pre>
+   *
+   * <pre> -Z &lt;NONE|GZIP|DEFLATE_FAST|DEFLATE_BEST&gt;
+   *  The codec for storing the model in the serialized classifier:
+   *  NONE = No compression
+   *  GZIP = Gzip
+   *  DEFLATE_FAST = Deflate (fastest)
+   *  DEFLATE_BEST = Deflate (best compression)
+   *  (default: GZIP)
+   * </pre>
+   *
+   * <pre> -T
+   *  Stores the parsed trees in a compact binary layout as well,
+   *  for the pure-Java inference engine to load without parsing.
+   *  (default: off)
+   * </pre>
+   *
+   * <pre> -U
+   *  Always outputs the full model text instead of a summary for
+   *  large models.
+   *  (default: off)
+   * </pre>
+   *
+   * <pre> -X
+   *  Collects latency metrics for the predictions (count, percentiles,
+   *  conversion vs scoring time, load time), also available via JMX.
+   *  (default: off)
+   * </pre>
+   *
+   * <pre> -W
+   *  Continues training from the existing model (if the data has the
+   *  same structure), adding the specified number of iterations.
+   *  (default: off)
+   * </pre>
+   *
+   * <pre> -Q &lt;instances&gt;
+   *  The number of instances to collect via updateClassifier before
+   *  adding iterations to the model.
+   *  (default: 1000)
+   * </pre>
+   *
+   * <pre> -Y &lt;iterations&gt;
+   *  The number of iterations to add per update.
+   *  (default: 10)
+   * </pre>
+   *
+   * <pre> -A &lt;threads&gt;
+   *  The number of threads to request for training from the JVM-wide
+   *  thread budget (0 = all available cores, cgroup-aware; -1 = OpenMP
+   *  default). Ignored if num_threads is part of the parameters.
+   *  (default: 0)
+   * </pre>
+   *
+   * <pre> -model-dir &lt;dir&gt;
+   *  The directory for storing the model as external file rather than
+   *  in the serialized classifier; native boosters get loaded from the
+   *  file and the pure-Java scorer memory-maps the trees (empty = off).
+   *  (default: none)
+   * </pre>
+   *
+   * <pre> -shared-models
+   *  Whether to share the loaded models (booster pools, pure-Java
+   *  trees, compiled scorers) with all other instances in the JVM
+   *  that have the same model, via the process-wide model registry.
+   *  (default: off)
+   * </pre>
+   *
    <!-- options-end -->
    *
    * @param options	the options to parse
@@ -370,41 +927,203 @@ public class LightGBM
 
     setRandomizeBeforeSplit(Utils.getFlag('R', options));
 
-    super.setOptions(options);
-  }
-
-  /**
-   * Gets the current settings of the classifier.
-   *
-   * @return an array of strings suitable for passing to setOptions
-   */
-  @Override
-  public String[] getOptions() {
-    List<String> result;
+    setSinglePrecision(Utils.getFlag('F', options));
 
-    result = new ArrayList<String>(Arrays.asList(super.getOptions()));
+    tmpStr = Utils.getOption('E', options);
+    if (tmpStr.length() != 0)
+      setEarlyStoppingRounds(Integer.parseInt(tmpStr));
+    else
+      setEarlyStoppingRounds(0);
 
-    result.add("-O");
-    result.add("" + getObjective());
+    setEarlyStoppingMetric(Utils.getOption('M', options));
 
-    if (!getParameters().trim().isEmpty()) {
-      result.add("-P");
-      result.add("" + getParameters());
-    }
+    tmpStr = Utils.getOption('D', options);
+    if (tmpStr.length() != 0)
+      setEarlyStoppingMinDelta(Double.parseDouble(tmpStr));
+    else
+      setEarlyStoppingMinDelta(0.0);
 
-    result.add("-I");
-    result.add("" + getNumIterations());
+    setKeepBestIteration(Utils.getFlag('B', options));
 
-    if (getValidationPercentage() > 0) {
-      result.add("-V");
-      result.add("" + getValidationPercentage());
-    }
+    tmpStr = Utils.getOption('C', options);
+    if (tmpStr.length() != 0)
+      setIterationCutoff(Integer.parseInt(tmpStr));
+    else
+      setIterationCutoff(0);
 
-    if (getRandomizeBeforeSplit())
-      result.add("-R");
+    setPureJavaInference(Utils.getFlag('J', options));
 
-    return result.toArray(new String[0]);
-  }
+    setCompiledInference(Utils.getFlag('K', options));
+
+    tmpStr = Utils.getOption('N', options);
+    if (tmpStr.length() != 0)
+      setNumBoosters(Integer.parseInt(tmpStr));
+    else
+      setNumBoosters(1);
+
+    setDatasetCacheDir(Utils.getOption('G', options));
+
+    tmpStr = Utils.getOption('H', options);
+    if (tmpStr.length() != 0)
+      setDatasetCacheSize(Integer.parseInt(tmpStr));
+    else
+      setDatasetCacheSize(1024);
+
+    tmpStr = Utils.getOption('L', options);
+    if (tmpStr.length() != 0)
+      setChunkSize(Integer.parseInt(tmpStr));
+    else
+      setChunkSize(10000);
+
+    tmpStr = Utils.getOption('Z', options);
+    if (tmpStr.length() != 0)
+      setModelCodec(new SelectedTag(tmpStr, LightGBMModelCodec.TAGS_CODEC));
+    else
+      setModelCodec(new SelectedTag(LightGBMModelCodec.CODEC_GZIP, LightGBMModelCodec.TAGS_CODEC));
+
+    setStoreTrees(Utils.getFlag('T', options));
+
+    setFullModelOutput(Utils.getFlag('U', options));
+
+    setCollectPredictionMetrics(Utils.getFlag('X', options));
+
+    setWarmStart(Utils.getFlag('W', options));
+
+    tmpStr = Utils.getOption('Q', options);
+    if (tmpStr.length() != 0)
+      setUpdateBatchSize(Integer.parseInt(tmpStr));
+    else
+      setUpdateBatchSize(1000);
+
+    tmpStr = Utils.getOption('Y', options);
+    if (tmpStr.length() != 0)
+      setUpdateIterations(Integer.parseInt(tmpStr));
+    else
+      setUpdateIterations(10);
+
+    tmpStr = Utils.getOption('A', options);
+    if (tmpStr.length() != 0)
+      setNumThreads(Integer.parseInt(tmpStr));
+    else
+      setNumThreads(0);
+
+    setModelDir(Utils.getOption("model-dir", options));
+
+    setSharedModels(Utils.getFlag("shared-models", options));
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the classifier.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result;
+
+    result = new ArrayList<String>(Arrays.asList(super.getOptions()));
+
+    result.add("-O");
+    result.add("" + getObjective());
+
+    if (!getParameters().trim().isEmpty()) {
+      result.add("-P");
+      result.add("" + getParameters());
+    }
+
+    result.add("-I");
+    result.add("" + getNumIterations());
+
+    if (getValidationPercentage() > 0) {
+      result.add("-V");
+      result.add("" + getValidationPercentage());
+    }
+
+    if (getRandomizeBeforeSplit())
+      result.add("-R");
+
+    if (getSinglePrecision())
+      result.add("-F");
+
+    if (getEarlyStoppingRounds() > 0) {
+      result.add("-E");
+      result.add("" + getEarlyStoppingRounds());
+    }
+
+    if (!getEarlyStoppingMetric().isEmpty()) {
+      result.add("-M");
+      result.add(getEarlyStoppingMetric());
+    }
+
+    if (getEarlyStoppingMinDelta() > 0) {
+      result.add("-D");
+      result.add("" + getEarlyStoppingMinDelta());
+    }
+
+    if (getKeepBestIteration())
+      result.add("-B");
+
+    if (getIterationCutoff() > 0) {
+      result.add("-C");
+      result.add("" + getIterationCutoff());
+    }
+
+    if (getPureJavaInference())
+      result.add("-J");
+
+    if (getCompiledInference())
+      result.add("-K");
+
+    result.add("-N");
+    result.add("" + getNumBoosters());
+
+    if (!getDatasetCacheDir().isEmpty()) {
+      result.add("-G");
+      result.add(getDatasetCacheDir());
+    }
+
+    result.add("-H");
+    result.add("" + getDatasetCacheSize());
+
+    result.add("-L");
+    result.add("" + getChunkSize());
+
+    result.add("-Z");
+    result.add("" + getModelCodec());
+
+    if (getStoreTrees())
+      result.add("-T");
+
+    if (getFullModelOutput())
+      result.add("-U");
+
+    if (getCollectPredictionMetrics())
+      result.add("-X");
+
+    if (getWarmStart())
+      result.add("-W");
+
+    result.add("-Q");
+    result.add("" + getUpdateBatchSize());
+
+    result.add("-Y");
+    result.add("" + getUpdateIterations());
+
+    result.add("-A");
+    result.add("" + getNumThreads());
+
+    if (!getModelDir().isEmpty()) {
+      result.add("-model-dir");
+      result.add(getModelDir());
+    }
+
+    if (getSharedModels())
+      result.add("-shared-models");
+
+    return result.toArray(new String[0]);
+  }
 
   /**
    * Sets the type of booster to use.
@@ -551,245 +1270,2074 @@ public class LightGBM
   }
 
   /**
-   * Returns the Capabilities of this classifier.
+   * Sets whether to use 32-bit floats instead of 64-bit doubles for the data.
    *
-   * @return the capabilities of this object
-   * @see Capabilities
+   * @param value 	true if to use floats
    */
-  @Override
-  public Capabilities getCapabilities() {
-    Capabilities	result;
-
-    result = new Capabilities(this);
-
-    // attributes
-    result.enable(Capabilities.Capability.NOMINAL_ATTRIBUTES);
-    result.enable(Capabilities.Capability.NUMERIC_ATTRIBUTES);
-    result.enable(Capabilities.Capability.DATE_ATTRIBUTES);
-
-    // classes
-    result.enable(Capabilities.Capability.MISSING_CLASS_VALUES);
-    switch (m_Objective) {
-      case OBJECTIVE_BINARY:
-        result.enable(Capabilities.Capability.BINARY_CLASS);
-        result.disable(Capabilities.Capability.UNARY_CLASS);
-        break;
-
-      case OBJECTIVE_MULTICLASS:
-      case OBJECTIVE_MULTICLASSOVA:
-        result.enable(Capabilities.Capability.NOMINAL_CLASS);
-        result.disable(Capabilities.Capability.UNARY_CLASS);
-        break;
-
-      default:
-        result.enable(Capabilities.Capability.NUMERIC_CLASS);
-    }
-
-    // other
-    result.setMinimumNumberInstances(1);
-
-    return result;
+  public void setSinglePrecision(boolean value) {
+    m_SinglePrecision = value;
   }
 
   /**
-   * Saves the model to the {@link #m_Model} member variable.
+   * Gets whether to use 32-bit floats instead of 64-bit doubles for the data.
    *
-   * @param booster the model to save
+   * @return 		true if to use floats
    */
-  protected void saveModel(LGBMBooster booster) throws Exception {
-    m_Model = LightGBMUtils.compress(m_Booster.saveModelToString(0, 0, LGBMBooster.FeatureImportanceType.GAIN));
+  public boolean getSinglePrecision() {
+    return m_SinglePrecision;
   }
 
   /**
-   * Loads the model from the {@link #m_Model} member variable.
+   * Returns the tip text for this property
    *
-   * @return the instantiated model
-   * @throws Exception if loading fails
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
    */
-  protected LGBMBooster loadModel() throws Exception {
-    return LGBMBooster.loadModelFromString(LightGBMUtils.decompress(m_Model));
+  public String singlePrecisionTipText() {
+    return "If enabled, the data is passed to LightGBM as 32-bit floats rather than 64-bit doubles, halving the memory required during conversion.";
   }
 
   /**
-   * Generates a classifier. Must initialize all fields of the classifier
-   * that are not being set via options (ie. multiple calls of buildClassifier
-   * must always lead to the same result). Must not change the dataset
-   * in any way.
+   * Sets the number of rounds without improvement before stopping.
    *
-   * @param data set of instances serving as training data
-   * @throws Exception if the classifier has not been
-   *                   generated successfully
+   * @param value 	the rounds, 0 to turn off
    */
-  @Override
-  public void buildClassifier(Instances data) throws Exception {
-    Instances		train;
-    Instances 		val;
-    LGBMDataset 	lgbmTrain;
-    LGBMDataset 	lgbmVal;
-    int		 	i;
-    int			size;
-    StringBuilder 	categorical;
-    boolean		finished;
-
-    // can classifier handle the data?
-    getCapabilities().testWithFail(data);
-
-    // remove instances with missing class
-    data = new Instances(data);
-    data.deleteWithMissingClass();
-
-    m_NumericClass = data.classAttribute().isNumeric();
-
-    // validation set?
-    train = data;
-    val   = null;
-    if (m_ValidationPercentage > 0) {
-      if (m_RandomizeBeforeSplit)
-        data.randomize(new Random(m_Seed));
-      size  = (int) Math.round(data.size() * m_ValidationPercentage / 100);
-      train = new Instances(data, data.numInstances() - size);
-      val   = new Instances(data, size);
-      for (i = 0; i < data.numInstances(); i++) {
-        if (i < data.numInstances() - size)
-          train.add((Instance) data.instance(i).copy());
-        else
-          val.add((Instance) data.instance(i).copy());
-      }
-      if (getDebug())
-        System.out.println("train size: " + train.numInstances() + ", validation size: " + val.numInstances());
-    }
-
-    // categorical features
-    categorical = new StringBuilder();
-    for (i = 0; i < data.numAttributes(); i++) {
-      if (i == data.classIndex())
-        continue;
-      if (data.attribute(i).isNominal()) {
-        if (categorical.length() > 0)
-          categorical.append(",");
-        categorical.append(i);
-      }
-    }
-
-    lgbmTrain = LightGBMUtils.fromInstances(train);
-    lgbmVal = null;
-    if (val != null)
-      lgbmVal = LightGBMUtils.fromInstances(val, lgbmTrain);
-    m_ActualParameters = "objective=" + getObjective().getSelectedTag().getIDStr().toLowerCase()
-      + " label=name:" + data.classAttribute().name();
-    if (categorical.length() > 0)
-      m_ActualParameters += " categorical_features=" + categorical.toString();
-    if (data.classAttribute().isNominal() && (m_Objective != OBJECTIVE_BINARY))
-      m_ActualParameters += " num_class=" + data.classAttribute().numValues();
-    if (!m_Parameters.isEmpty())
-      m_ActualParameters += " " + m_Parameters;
-    if (getDebug())
-      System.out.println("Actual parameters: " + m_ActualParameters);
-
-    try {
-      m_Booster = LGBMBooster.create(lgbmTrain, m_ActualParameters);
-      if (lgbmVal != null)
-        m_Booster.addValidData(lgbmVal);
-      // train
-      for (i = 0; i < m_NumIterations; i++) {
-        finished = m_Booster.updateOneIter();
-        if (finished) {
-          System.out.println("No more splits possible, stopping training at iteration " + (i+1) + " out of " + m_NumIterations);
-          break;
-        }
-      }
-      saveModel(m_Booster);
-    }
-    catch (Exception e) {
-      if (m_Booster != null)
-        m_Booster.close();
-    }
-    finally {
-      lgbmTrain.close();
-      if (lgbmVal != null)
-        lgbmVal.close();
-    }
+  public void setEarlyStoppingRounds(int value) {
+    if (value >= 0)
+      m_EarlyStoppingRounds = value;
   }
 
   /**
-   * Initializes the booster instance.
+   * Gets the number of rounds without improvement before stopping.
    *
-   * @throws Exception	if initialization fails
+   * @return 		the rounds, 0 if off
    */
-  protected void initBooster() throws Exception {
-    if (m_Booster == null) {
-      if (m_Model != null)
-        m_Booster = loadModel();
-      else
-        throw new IllegalStateException("No model trained?");
-    }
+  public int getEarlyStoppingRounds() {
+    return m_EarlyStoppingRounds;
   }
 
   /**
-   * Classifies the given test instance. The instance has to belong to a dataset
-   * when it's being classified.
+   * Returns the tip text for this property
    *
-   * @param instance the instance to be classified
-   * @return the predicted most likely class for the instance or
-   *         Utils.missingValue() if no prediction is made
-   * @throws Exception if an error occurred during the prediction
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
    */
-  @Override
-  public double classifyInstance(Instance instance) throws Exception {
-    double	result;
-    double[]	values;
-
-    initBooster();
-
-    values = LightGBMUtils.fromInstance(instance);
-    result = m_Booster.predictForMatSingleRow(values, PredictionType.C_API_PREDICT_NORMAL);
-
-    if (!m_NumericClass)
-      result = Math.round(result);
-
-    return result;
+  public String earlyStoppingRoundsTipText() {
+    return "The number of rounds without improvement of the validation metric before stopping the training (0 = off); requires a validation set.";
   }
 
   /**
-   * Prints the all the rules of the rule learner.
+   * Sets the validation metric to monitor for early stopping.
    *
-   * @return a textual description of the classifier
+   * @param value 	the metric, empty for the first one
    */
-  @Override
-  public String toString() {
-    StringBuilder	result;
-
-    result = new StringBuilder();
+  public void setEarlyStoppingMetric(String value) {
+    m_EarlyStoppingMetric = value.trim();
+  }
 
-    if (m_Model == null) {
-      result.append("No model built yet.");
-    }
-    else {
-      result.append("LightGBM\n");
-      result.append("========\n\n");
-      result.append("Actual parameters: ").append(m_ActualParameters).append("\n");
-      result.append("Model:\n");
-      result.append(LightGBMUtils.decompress(m_Model));
-    }
+  /**
+   * Gets the validation metric to monitor for early stopping.
+   *
+   * @return 		the metric, empty for the first one
+   */
+  public String getEarlyStoppingMetric() {
+    return m_EarlyStoppingMetric;
+  }
 
-    return result.toString();
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String earlyStoppingMetricTipText() {
+    return "The name of the validation metric to monitor for early stopping (eg l2 or auc, see 'metric' parameter); uses the first metric if empty.";
   }
 
   /**
-   * Closes this resource, relinquishing any underlying resources.
-   * This method is invoked automatically on objects managed by the
-   * {@code try}-with-resources statement.
+   * Sets the minimum change in the metric that counts as improvement.
    *
-   * @throws Exception if this resource cannot be closed
+   * @param value 	the delta
+   */
+  public void setEarlyStoppingMinDelta(double value) {
+    if (value >= 0)
+      m_EarlyStoppingMinDelta = value;
+  }
+
+  /**
+   * Gets the minimum change in the metric that counts as improvement.
+   *
+   * @return 		the delta
+   */
+  public double getEarlyStoppingMinDelta() {
+    return m_EarlyStoppingMinDelta;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String earlyStoppingMinDeltaTipText() {
+    return "The minimum change in the validation metric that counts as improvement.";
+  }
+
+  /**
+   * Sets whether to keep only the iterations up to the best one on the validation set.
+   *
+   * @param value 	true if to keep only up to the best iteration
+   */
+  public void setKeepBestIteration(boolean value) {
+    m_KeepBestIteration = value;
+  }
+
+  /**
+   * Gets whether to keep only the iterations up to the best one on the validation set.
+   *
+   * @return 		true if to keep only up to the best iteration
+   */
+  public boolean getKeepBestIteration() {
+    return m_KeepBestIteration;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String keepBestIterationTipText() {
+    return "If enabled, only the iterations up to the best one on the validation set (see early stopping metric) are stored in the model; requires a validation set.";
+  }
+
+  /**
+   * Sets the maximum number of iterations to keep in the model.
+   *
+   * @param value 	the iterations, 0 for all
+   */
+  public void setIterationCutoff(int value) {
+    if (value >= 0)
+      m_IterationCutoff = value;
+  }
+
+  /**
+   * Gets the maximum number of iterations to keep in the model.
+   *
+   * @return 		the iterations, 0 for all
+   */
+  public int getIterationCutoff() {
+    return m_IterationCutoff;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String iterationCutoffTipText() {
+    return "The maximum number of iterations to keep in the model (0 = all).";
+  }
+
+  /**
+   * Sets whether to use the pure-Java inference engine instead of the native one.
+   *
+   * @param value 	true if to use pure-Java inference
+   */
+  public void setPureJavaInference(boolean value) {
+    m_PureJavaInference = value;
+  }
+
+  /**
+   * Gets whether to use the pure-Java inference engine instead of the native one.
+   *
+   * @return 		true if to use pure-Java inference
+   */
+  public boolean getPureJavaInference() {
+    return m_PureJavaInference;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String pureJavaInferenceTipText() {
+    return "If enabled, predictions are made by evaluating the trees in Java rather than via the native library (no JNI calls or native libraries required for scoring).";
+  }
+
+  /**
+   * Sets whether to compile the trees into JVM bytecode for pure-Java inference.
+   *
+   * @param value 	true if to compile
+   */
+  public void setCompiledInference(boolean value) {
+    m_CompiledInference = value;
+  }
+
+  /**
+   * Gets whether to compile the trees into JVM bytecode for pure-Java inference.
+   *
+   * @return 		true if to compile
+   */
+  public boolean getCompiledInference() {
+    return m_CompiledInference;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String compiledInferenceTipText() {
+    return "If enabled, the trees get compiled into a JVM class for pure-Java inference, allowing the JIT to inline the whole ensemble; "
+      + "requires a JDK and falls back to interpreting the trees for models with more than about 15000 trees (e.g., 5000 iterations with 4 classes).";
+  }
+
+  /**
+   * Sets the maximum number of boosters for concurrent predictions.
+   *
+   * @param value 	the number of boosters, at least 1
+   */
+  public void setNumBoosters(int value) {
+    if (value >= 1)
+      m_NumBoosters = value;
+  }
+
+  /**
+   * Gets the maximum number of boosters for concurrent predictions.
+   *
+   * @return 		the number of boosters
+   */
+  public int getNumBoosters() {
+    return m_NumBoosters;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String numBoostersTipText() {
+    return "The maximum number of boosters for making predictions with the native library concurrently; each additional booster gets loaded from the model on demand.";
+  }
+
+  /**
+   * Sets the directory for caching the binary training datasets.
+   *
+   * @param value 	the directory, empty to turn off
+   */
+  public void setDatasetCacheDir(String value) {
+    m_DatasetCacheDir = value.trim();
+  }
+
+  /**
+   * Gets the directory for caching the binary training datasets.
+   *
+   * @return 		the directory, empty if off
+   */
+  public String getDatasetCacheDir() {
+    return m_DatasetCacheDir;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String datasetCacheDirTipText() {
+    return "The directory for caching the training datasets in LightGBM's binary format, keyed by the content of the data; avoids conversion and binning when training repeatedly on the same data (empty = off).";
+  }
+
+  /**
+   * Sets the maximum size of the dataset cache.
+   *
+   * @param value 	the size in MB, 0 for unlimited
+   */
+  public void setDatasetCacheSize(int value) {
+    if (value >= 0)
+      m_DatasetCacheSize = value;
+  }
+
+  /**
+   * Gets the maximum size of the dataset cache.
+   *
+   * @return 		the size in MB, 0 for unlimited
+   */
+  public int getDatasetCacheSize() {
+    return m_DatasetCacheSize;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String datasetCacheSizeTipText() {
+    return "The maximum size of the dataset cache in MB, the least recently used datasets get removed when exceeded (0 = unlimited).";
+  }
+
+  /**
+   * Sets the number of rows per chunk when streaming from a loader.
+   *
+   * @param value 	the number of rows, at least 1
+   */
+  public void setChunkSize(int value) {
+    if (value >= 1)
+      m_ChunkSize = value;
+  }
+
+  /**
+   * Gets the number of rows per chunk when streaming from a loader.
+   *
+   * @return 		the number of rows
+   */
+  public int getChunkSize() {
+    return m_ChunkSize;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String chunkSizeTipText() {
+    return "The number of rows per off-heap chunk when streaming the training data from a loader (see buildClassifier(Loader)).";
+  }
+
+  /**
+   * Sets the codec for storing the model.
+   *
+   * @param value 	the codec
+   */
+  public void setModelCodec(SelectedTag value) {
+    if (value.getTags() == LightGBMModelCodec.TAGS_CODEC) {
+      m_ModelCodec = value.getSelectedTag().getID();
+    }
+  }
+
+  /**
+   * Gets the codec for storing the model.
+   *
+   * @return 		the codec
+   */
+  public SelectedTag getModelCodec() {
+    return new SelectedTag(m_ModelCodec, LightGBMModelCodec.TAGS_CODEC);
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String modelCodecTipText() {
+    return "The codec for storing the model in the serialized classifier; trades off size against loading speed.";
+  }
+
+  /**
+   * Sets whether to store the parsed trees in a binary layout as well.
+   *
+   * @param value 	true if to store the trees
+   */
+  public void setStoreTrees(boolean value) {
+    m_StoreTrees = value;
+  }
+
+  /**
+   * Gets whether to store the parsed trees in a binary layout as well.
+   *
+   * @return 		true if to store the trees
+   */
+  public boolean getStoreTrees() {
+    return m_StoreTrees;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String storeTreesTipText() {
+    return "If enabled, the parsed trees get stored in a compact binary layout as well, which the pure-Java inference engine loads without having to parse the model text.";
+  }
+
+  /**
+   * Sets whether to always output the full model text.
+   *
+   * @param value 	true if to output the full model
+   */
+  public void setFullModelOutput(boolean value) {
+    m_FullModelOutput = value;
+  }
+
+  /**
+   * Gets whether to always output the full model text.
+   *
+   * @return 		true if to output the full model
+   */
+  public boolean getFullModelOutput() {
+    return m_FullModelOutput;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String fullModelOutputTipText() {
+    return "If enabled, the full model text gets output instead of a summary (number of trees, leaves, features, top feature importances) for large models.";
+  }
+
+  /**
+   * Sets whether to collect prediction metrics.
+   *
+   * @param value 	true if to to collect prediction metrics
+   */
+  public void setCollectPredictionMetrics(boolean value) {
+    m_CollectPredictionMetrics = value;
+  }
+
+  /**
+   * Gets whether to collect prediction metrics.
+   *
+   * @return 		true if to to collect prediction metrics
+   */
+  public boolean getCollectPredictionMetrics() {
+    return m_CollectPredictionMetrics;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String collectPredictionMetricsTipText() {
+    return "If enabled, latency metrics get collected for the predictions (number of calls, percentiles, conversion vs scoring time, model load time); see getPredictionMetrics() for registering them with JMX.";
+  }
+
+  /**
+   * Sets whether to continue training from the existing model.
+   *
+   * @param value 	true if to to continue training from the existing model
+   */
+  public void setWarmStart(boolean value) {
+    m_WarmStart = value;
+  }
+
+  /**
+   * Gets whether to continue training from the existing model.
+   *
+   * @return 		true if to to continue training from the existing model
+   */
+  public boolean getWarmStart() {
+    return m_WarmStart;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String warmStartTipText() {
+    return "If enabled and a model with the same data structure exists, buildClassifier continues training from that model by adding the specified number of iterations (trained on the new data), instead of starting from scratch.";
+  }
+
+  /**
+   * Sets the number of instances to collect before updating the model.
+   *
+   * @param value 	the number of instances
+   */
+  public void setUpdateBatchSize(int value) {
+    if (value >= 1)
+      m_UpdateBatchSize = value;
+  }
+
+  /**
+   * Gets the number of instances to collect before updating the model.
+   *
+   * @return 		the number of instances
+   */
+  public int getUpdateBatchSize() {
+    return m_UpdateBatchSize;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String updateBatchSizeTipText() {
+    return "The number of instances to collect via updateClassifier before adding iterations to the model.";
+  }
+
+  /**
+   * Sets the number of iterations to add per update.
+   *
+   * @param value 	the number of iterations
+   */
+  public void setUpdateIterations(int value) {
+    if (value >= 1)
+      m_UpdateIterations = value;
+  }
+
+  /**
+   * Gets the number of iterations to add per update.
+   *
+   * @return 		the number of iterations
+   */
+  public int getUpdateIterations() {
+    return m_UpdateIterations;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String updateIterationsTipText() {
+    return "The number of iterations to add to the model per batch of instances collected via updateClassifier.";
+  }
+
+  /**
+   * Sets the number of threads to request from the JVM-wide budget.
+   *
+   * @param value 	the number of threads, 0 for automatic, -1 for OpenMP default
+   */
+  public void setNumThreads(int value) {
+    if (value >= -1)
+      m_NumThreads = value;
+  }
+
+  /**
+   * Gets the number of threads to request from the JVM-wide budget.
+   *
+   * @return 		the number of threads, 0 for automatic, -1 for OpenMP default
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String numThreadsTipText() {
+    return "The number of threads to request for training from the JVM-wide thread budget, which is shared by all concurrently training models; 0 requests all available cores (taking container CPU limits into account), -1 leaves it to OpenMP's default; ignored if num_threads is part of the parameters.";
+  }
+
+  /**
+   * Sets the directory for storing the models as external files.
+   *
+   * @param value 	the directory, empty to turn off
+   */
+  public void setModelDir(String value) {
+    m_ModelDir = value.trim();
+  }
+
+  /**
+   * Gets the directory for storing the models as external files.
+   *
+   * @return 		the directory, empty if off
+   */
+  public String getModelDir() {
+    return m_ModelDir;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String modelDirTipText() {
+    return "The directory for storing the model as external file (named after the SHA-256 of its content) instead of inside the serialized classifier; native boosters get loaded straight from the file and the pure-Java scorer memory-maps the trees, sharing the page cache across processes (empty = off).";
+  }
+
+  /**
+   * Sets whether to share the loaded models via the registry.
+   *
+   * @param value 	true if to share the loaded models via the registry
+   */
+  public void setSharedModels(boolean value) {
+    m_SharedModels = value;
+  }
+
+  /**
+   * Gets whether to share the loaded models via the registry.
+   *
+   * @return 		true if to share the loaded models via the registry
+   */
+  public boolean getSharedModels() {
+    return m_SharedModels;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String sharedModelsTipText() {
+    return "If enabled, the loaded models (booster pools, pure-Java trees, compiled scorers) are obtained from a process-wide registry keyed by the model's content hash, i.e., all instances with the same model (e.g., deserialized multiple times) share them; unused models stay loaded until the registry's memory cap (system property weka.classifiers.functions.LightGBM.registry, in MB) requires evicting them.";
+  }
+
+  /**
+   * Returns the Capabilities of this classifier.
+   *
+   * @return the capabilities of this object
+   * @see Capabilities
+   */
+  @Override
+  public Capabilities getCapabilities() {
+    Capabilities	result;
+
+    result = new Capabilities(this);
+
+    // attributes
+    result.enable(Capabilities.Capability.NOMINAL_ATTRIBUTES);
+    result.enable(Capabilities.Capability.NUMERIC_ATTRIBUTES);
+    result.enable(Capabilities.Capability.DATE_ATTRIBUTES);
+    result.enable(Capabilities.Capability.MISSING_VALUES);
+
+    // classes
+    result.enable(Capabilities.Capability.MISSING_CLASS_VALUES);
+    switch (m_Objective) {
+      case OBJECTIVE_BINARY:
+        result.enable(Capabilities.Capability.BINARY_CLASS);
+        result.disable(Capabilities.Capability.UNARY_CLASS);
+        break;
+
+      case OBJECTIVE_MULTICLASS:
+      case OBJECTIVE_MULTICLASSOVA:
+        result.enable(Capabilities.Capability.NOMINAL_CLASS);
+        result.disable(Capabilities.Capability.UNARY_CLASS);
+        break;
+
+      default:
+        result.enable(Capabilities.Capability.NUMERIC_CLASS);
+    }
+
+    // other
+    result.setMinimumNumberInstances(1);
+
+    return result;
+  }
+
+  /**
+   * Saves the model to the {@link #m_Model} member variable.
+   *
+   * @param booster the model to save
+   */
+  protected void saveModel(LGBMBooster booster) throws Exception {
+    saveModel(booster, 0);
+  }
+
+  /**
+   * Saves the model to the {@link #m_Model} member variable, only
+   * including the specified number of iterations.
+   *
+   * @param booster the model to save
+   * @param numIterations the number of iterations to save, 0 for all
+   */
+  protected void saveModel(LGBMBooster booster, int numIterations) throws Exception {
+    String	model;
+    File	file;
+
+    if (!m_ModelDir.isEmpty()) {
+      file = LightGBMUtils.saveModel(booster, numIterations, new File(m_ModelDir));
+      try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        m_ModelSummary = summarize(reader);
+      }
+      m_ModelFile = file.getAbsolutePath();
+      m_ModelSize = (int) Math.min(Integer.MAX_VALUE, file.length());
+      m_Model     = null;
+      m_ModelHash = null;
+      m_ModelText = null;
+      m_TreeData  = null;
+      if (getDebug())
+        System.out.println("Model file: " + m_ModelFile);
+      return;
+    }
+
+    model      = booster.saveModelToString(0, numIterations, LGBMBooster.FeatureImportanceType.GAIN);
+    m_ModelFile    = null;
+    m_Model        = LightGBMUtils.compress(model, m_ModelCodec);
+    m_ModelHash    = null;
+    m_ModelSize    = model.length();
+    m_ModelSummary = summarize(model);
+    m_ModelText    = new SoftReference<>(model);
+    m_TreeData     = null;
+    if (m_StoreTrees) {
+      try {
+        m_TreeData = LightGBMModelCodec.encode(LightGBMTreeModel.parse(model).toBytes(), m_ModelCodec);
+      }
+      catch (Exception e) {
+        System.err.println("Failed to store trees in binary layout: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Returns the model text, decompressing it only if no longer cached.
+   *
+   * @return		the model text, null if no model built
+   */
+  protected String getModelText() {
+    String	result;
+
+    if (!hasModel())
+      return null;
+
+    result = (m_ModelText == null) ? null : m_ModelText.get();
+    if (result == null) {
+      if (m_ModelFile != null) {
+        try {
+          result = new String(Files.readAllBytes(getModelFile().toPath()));
+        }
+        catch (Exception e) {
+          System.err.println("Failed to read model file: " + e.getMessage());
+          return "Failed to read model file: " + e;
+        }
+      }
+      else {
+        result = LightGBMUtils.decompress(m_Model);
+      }
+      m_ModelText = new SoftReference<>(result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns whether a model has been built (stored internally or as
+   * external file).
+   *
+   * @return		true if model available
+   */
+  protected boolean hasModel() {
+    return (m_Model != null) || (m_ModelFile != null);
+  }
+
+  /**
+   * Returns the external model file.
+   *
+   * @return		the file
+   * @throws IOException	if the model is not stored externally or the file is missing
+   */
+  protected File getModelFile() throws IOException {
+    File	result;
+
+    if (m_ModelFile == null)
+      throw new IOException("Model is not stored as external file!");
+    result = new File(m_ModelFile);
+    if (!result.isFile())
+      throw new IOException("Model file not found: " + m_ModelFile);
+
+    return result;
+  }
+
+  /**
+   * Generates a summary of the model text: number of trees, leaves and
+   * features, as well as the top feature importances.
+   *
+   * @param model	the model text
+   * @return		the summary
+   */
+  protected static String summarize(String model) {
+    try {
+      return summarize(new BufferedReader(new StringReader(model)));
+    }
+    catch (IOException e) {
+      // cannot happen with a string
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Generates a summary of the model text, reading it line by line.
+   *
+   * @param reader	the reader for the model text
+   * @return		the summary
+   * @throws IOException	if reading fails
+   * @see #summarize(String)
+   */
+  protected static String summarize(BufferedReader reader) throws IOException {
+    StringBuilder	result;
+    String		line;
+    int			numTrees;
+    long		numLeaves;
+    int			numFeatures;
+    List<String>	importances;
+    boolean		inImportances;
+    int			i;
+
+    numTrees      = 0;
+    numLeaves     = 0;
+    numFeatures   = 0;
+    importances   = new ArrayList<>();
+    inImportances = false;
+    while ((line = reader.readLine()) != null) {
+      if (inImportances) {
+        if (line.trim().isEmpty())
+          inImportances = false;
+        else
+          importances.add(line.trim());
+      }
+      else if (line.startsWith("Tree=")) {
+        numTrees++;
+      }
+      else if (line.startsWith("num_leaves=")) {
+        numLeaves += Integer.parseInt(line.substring("num_leaves=".length()).trim());
+      }
+      else if (line.startsWith("max_feature_idx=")) {
+        numFeatures = Integer.parseInt(line.substring("max_feature_idx=".length()).trim()) + 1;
+      }
+      else if (line.startsWith("feature_importances:")) {
+        inImportances = true;
+      }
+    }
+
+    result = new StringBuilder();
+    result.append("Trees: ").append(numTrees).append("\n");
+    result.append("Leaves: ").append(numLeaves).append("\n");
+    result.append("Features: ").append(numFeatures).append("\n");
+    if (importances.size() > 0) {
+      result.append("Top feature importances (gain):\n");
+      for (i = 0; (i < importances.size()) && (i < NUM_SUMMARY_IMPORTANCES); i++)
+        result.append("  ").append(importances.get(i).replace("=", ": ")).append("\n");
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Loads the model from the {@link #m_Model} member variable or the
+   * external model file.
+   *
+   * @return the instantiated model
+   * @throws Exception if loading fails
+   */
+  protected LGBMBooster loadModel() throws Exception {
+    LightGBMUtils.loadNative();
+    if (m_ModelFile != null)
+      return LGBMBooster.createFromModelfile(getModelFile().getAbsolutePath());
+    return LGBMBooster.loadModelFromString(getModelText());
+  }
+
+  /**
+   * Generates a classifier. Must initialize all fields of the classifier
+   * that are not being set via options (ie. multiple calls of buildClassifier
+   * must always lead to the same result). Must not change the dataset
+   * in any way.
+   *
+   * @param data set of instances serving as training data
+   * @throws Exception if the classifier has not been
+   *                   generated successfully
+   */
+  @Override
+  public void buildClassifier(Instances data) throws Exception {
+    Instances		train;
+    Instances 		val;
+    LGBMDataset 	lgbmTrain;
+    LGBMDataset 	lgbmVal;
+    LGBMBooster		init;
+    Capabilities	caps;
+    int		 	i;
+    int			size;
+    int			threads;
+    long		start;
+
+    // only the structure? (eg incremental training via updateClassifier)
+    if (data.numInstances() == 0) {
+      caps = getCapabilities();
+      caps.setMinimumNumberInstances(0);
+      caps.testWithFail(data);
+      close();
+      m_Model           = null;
+      m_ModelFile       = null;
+      m_TreeData        = null;
+      m_ModelSummary    = null;
+      m_TrainingMetrics = null;
+      m_Header          = new Instances(data, 0);
+      m_NumericClass    = data.classAttribute().isNumeric();
+      m_NumClasses      = data.numClasses();
+      m_BestIteration   = 0;
+      m_UpdateBuffer    = null;
+      return;
+    }
+
+    // can classifier handle the data?
+    getCapabilities().testWithFail(data);
+
+    init = warmStartBooster(data);
+    close();
+    m_TrainingMetrics = new LightGBMTrainingMetrics();
+    m_UpdateBuffer    = null;
+
+    // remove instances with missing class
+    data = new Instances(data);
+    data.deleteWithMissingClass();
+
+    m_NumericClass = data.classAttribute().isNumeric();
+    m_NumClasses   = data.numClasses();
+    m_BestIteration = 0;
+
+    // validation set?
+    train = data;
+    val   = null;
+    if (m_ValidationPercentage > 0) {
+      if (m_RandomizeBeforeSplit)
+        data.randomize(new Random(m_Seed));
+      size  = (int) Math.round(data.size() * m_ValidationPercentage / 100);
+      train = new Instances(data, data.numInstances() - size);
+      val   = new Instances(data, size);
+      for (i = 0; i < data.numInstances(); i++) {
+        if (i < data.numInstances() - size)
+          train.add((Instance) data.instance(i).copy());
+        else
+          val.add((Instance) data.instance(i).copy());
+      }
+      if (getDebug())
+        System.out.println("train size: " + train.numInstances() + ", validation size: " + val.numInstances());
+    }
+
+    threads = acquireThreads();
+    try {
+      start = System.nanoTime();
+      if (m_DatasetCacheDir.isEmpty())
+        lgbmTrain = LightGBMUtils.fromInstances(train, null, m_SinglePrecision, datasetParameters(train, threads));
+      else
+        lgbmTrain = new LightGBMDatasetCache(new File(m_DatasetCacheDir), m_DatasetCacheSize * 1024L * 1024L).fromInstances(train, m_SinglePrecision, datasetParameters(train, threads), getDebug());
+      lgbmVal = null;
+      if (val != null)
+        lgbmVal = LightGBMUtils.fromInstances(val, lgbmTrain, m_SinglePrecision, datasetParameters(val, threads));
+      if (init != null) {
+        LightGBMUtils.setInitScore(lgbmTrain, init, train, numOutputs());
+        if (lgbmVal != null)
+          LightGBMUtils.setInitScore(lgbmVal, init, val, numOutputs());
+      }
+      m_TrainingMetrics.setDataSize(train.numInstances(), data.numAttributes() - 1, m_SinglePrecision);
+      notifyPhaseCompleted(LightGBMTrainingMetrics.PHASE_CONVERSION, System.nanoTime() - start);
+
+      train(data, lgbmTrain, lgbmVal, init, m_NumIterations, threads);
+    }
+    finally {
+      LightGBMThreads.release(threads);
+      if (init != null)
+        init.close();
+    }
+  }
+
+  /**
+   * Returns the booster to continue training from, if warm start is enabled
+   * and a model for data with the same structure is available.
+   *
+   * @param data	the new training data
+   * @return		the booster, null if training from scratch
+   * @throws Exception	if loading the model fails
+   */
+  protected LGBMBooster warmStartBooster(Instances data) throws Exception {
+    if (!m_WarmStart || !hasModel())
+      return null;
+    if ((m_Header == null) || !m_Header.equalHeaders(data)) {
+      System.err.println("Data structure differs from the existing model, training from scratch!");
+      return null;
+    }
+    return loadModel();
+  }
+
+  /**
+   * Continues training from the current model on the data (or starts from
+   * scratch if no model yet), adding the specified number of iterations.
+   * No validation set gets used.
+   *
+   * @param data	the data to train on, must have the same structure as the training data
+   * @param numIterations	the number of iterations to add
+   * @throws Exception	if training fails
+   */
+  public synchronized void continueTraining(Instances data, int numIterations) throws Exception {
+    LGBMDataset 	lgbmTrain;
+    LGBMBooster		init;
+    int			threads;
+    long		start;
+
+    if (m_Header == null)
+      throw new IllegalStateException("No model trained or structure available, call buildClassifier first!");
+    if (!m_Header.equalHeaders(data))
+      throw new IllegalArgumentException("Incompatible data structure: " + m_Header.equalHeadersMsg(data));
+
+    data = new Instances(data);
+    data.deleteWithMissingClass();
+    if (data.numInstances() == 0)
+      return;
+
+    init = null;
+    if (hasModel())
+      init = loadModel();
+    close();
+    m_TrainingMetrics = new LightGBMTrainingMetrics();
+    m_BestIteration   = 0;
+
+    threads = acquireThreads();
+    try {
+      start     = System.nanoTime();
+      lgbmTrain = LightGBMUtils.fromInstances(data, null, m_SinglePrecision, datasetParameters(data, threads));
+      if (init != null)
+        LightGBMUtils.setInitScore(lgbmTrain, init, data, numOutputs());
+      m_TrainingMetrics.setDataSize(data.numInstances(), data.numAttributes() - 1, m_SinglePrecision);
+      notifyPhaseCompleted(LightGBMTrainingMetrics.PHASE_CONVERSION, System.nanoTime() - start);
+
+      train(data, lgbmTrain, null, init, numIterations, threads);
+    }
+    finally {
+      LightGBMThreads.release(threads);
+      if (init != null)
+        init.close();
+    }
+  }
+
+  /**
+   * Collects the instance and adds iterations to the model (trained on the
+   * collected instances) once the update batch size has been reached.
+   * Remaining instances get used by {@link #flushUpdates()}, which also
+   * gets called automatically when making predictions without a model.
+   *
+   * @param instance	the instance to add
+   * @throws Exception	if updating fails
+   */
+  @Override
+  public synchronized void updateClassifier(Instance instance) throws Exception {
+    if (m_Header == null)
+      throw new IllegalStateException("No model trained or structure available, call buildClassifier first!");
+    if (instance.classIsMissing())
+      return;
+    if (m_UpdateBuffer == null)
+      m_UpdateBuffer = new Instances(m_Header, m_UpdateBatchSize);
+    m_UpdateBuffer.add(instance);
+    if (m_UpdateBuffer.numInstances() >= m_UpdateBatchSize)
+      flushUpdates();
+  }
+
+  /**
+   * Adds iterations to the model, trained on the instances collected via
+   * updateClassifier so far (if any).
+   *
+   * @throws Exception	if updating fails
+   */
+  public synchronized void flushUpdates() throws Exception {
+    Instances	data;
+
+    if ((m_UpdateBuffer == null) || (m_UpdateBuffer.numInstances() == 0))
+      return;
+    data           = m_UpdateBuffer;
+    m_UpdateBuffer = null;
+    if (getDebug())
+      System.out.println("Updating model with " + data.numInstances() + " instance(s)");
+    continueTraining(data, m_UpdateIterations);
+  }
+
+  /**
+   * Generates a classifier by streaming the training data from the loader
+   * straight into LightGBM, without materializing the data as Instances.
+   * The rows get read one at a time and collected in off-heap chunks (see
+   * chunk size), i.e., the memory on the Java heap is independent of the
+   * size of the data. Uses the last attribute as class if the structure
+   * has no class set. A validation set is not supported in this mode.
+   *
+   * @param loader	the loader to read the training data from
+   * @throws Exception	if the classifier has not been generated successfully
+   */
+  public void buildClassifier(Loader loader) throws Exception {
+    Instances		structure;
+    Capabilities	caps;
+    LGBMDataset		lgbmTrain;
+    int			threads;
+    long		start;
+
+    structure = loader.getStructure();
+    if (structure.classIndex() == -1)
+      structure.setClassIndex(structure.numAttributes() - 1);
+
+    // can classifier handle the data?
+    caps = getCapabilities();
+    caps.setMinimumNumberInstances(0);
+    caps.testWithFail(structure);
+
+    close();
+    m_TrainingMetrics = new LightGBMTrainingMetrics();
+    m_UpdateBuffer    = null;
+
+    m_NumericClass  = structure.classAttribute().isNumeric();
+    m_NumClasses    = structure.numClasses();
+    m_BestIteration = 0;
+
+    if (m_ValidationPercentage > 0)
+      System.err.println("Validation set not supported when training from a loader, ignored!");
+
+    threads = acquireThreads();
+    try {
+      start     = System.nanoTime();
+      lgbmTrain = LightGBMUtils.fromLoader(loader, structure, m_ChunkSize, m_SinglePrecision, datasetParameters(structure, threads));
+      m_TrainingMetrics.setDataSize(lgbmTrain.getNumData(), structure.numAttributes() - 1, m_SinglePrecision);
+      notifyPhaseCompleted(LightGBMTrainingMetrics.PHASE_CONVERSION, System.nanoTime() - start);
+      if (getDebug())
+        System.out.println("train size: " + lgbmTrain.getNumData());
+
+      train(structure, lgbmTrain, null, null, m_NumIterations, threads);
+    }
+    finally {
+      LightGBMThreads.release(threads);
+    }
+  }
+
+  /**
+   * Cross-validates the current setup natively on the data. The data gets
+   * binned only once and the folds get trained concurrently.
+   *
+   * @param data	the data to cross-validate on
+   * @param numFolds	the number of folds
+   * @param numThreads	the total number of threads to request from the JVM-wide budget, less than 1 for as many as available
+   * @param random	the random number generator for randomizing the data
+   * @return		the per-fold and aggregated metrics
+   * @throws Exception	if cross-validation fails
+   * @see LightGBMCrossValidation
+   */
+  public LightGBMCrossValidation.Result crossValidate(Instances data, int numFolds, int numThreads, Random random) throws Exception {
+    return LightGBMCrossValidation.crossValidate(this, data, numFolds, numThreads, random);
+  }
+
+  /**
+   * Adds the listener for the training progress. Listeners are not
+   * serialized with the classifier.
+   *
+   * @param l		the listener to add
+   */
+  public void addTrainingListener(LightGBMTrainingListener l) {
+    if (m_TrainingListeners == null)
+      m_TrainingListeners = new ArrayList<>();
+    m_TrainingListeners.add(l);
+  }
+
+  /**
+   * Removes the listener for the training progress.
+   *
+   * @param l		the listener to remove
+   */
+  public void removeTrainingListener(LightGBMTrainingListener l) {
+    if (m_TrainingListeners != null)
+      m_TrainingListeners.remove(l);
+  }
+
+  /**
+   * Returns the timings and metrics of the last training run.
+   *
+   * @return		the metrics, null if not trained yet
+   */
+  public LightGBMTrainingMetrics getTrainingMetrics() {
+    return m_TrainingMetrics;
+  }
+
+  /**
+   * Returns the prediction metrics, if collected (see -X). They can be
+   * registered with JMX via {@link LightGBMPredictionMetrics#register(String)}.
+   *
+   * @return		the metrics, null if not collected
+   */
+  public LightGBMPredictionMetrics getPredictionMetrics() {
+    if (!m_CollectPredictionMetrics)
+      return null;
+    if (m_PredictionMetrics == null) {
+      synchronized (this) {
+        if (m_PredictionMetrics == null)
+          m_PredictionMetrics = new LightGBMPredictionMetrics();
+      }
+    }
+    return m_PredictionMetrics;
+  }
+
+  /**
+   * Requests the threads for training from the JVM-wide budget, unless
+   * disabled or the parameters already set the number of threads.
+   *
+   * @return		the granted number of threads, 0 if not managed
+   * @see LightGBMThreads
+   */
+  protected int acquireThreads() {
+    if (m_NumThreads < 0)
+      return 0;
+    if (LightGBMParameters.parse(m_Parameters).containsKey("num_threads"))
+      return 0;
+    return LightGBMThreads.acquire(m_NumThreads);
+  }
+
+  /**
+   * Returns the booster parameters for the number of threads.
+   *
+   * @param threads	the number of threads, 0 if not managed
+   * @return		the parameters
+   */
+  protected String threadParameters(int threads) {
+    if (threads > 0)
+      return "num_threads=" + threads;
+    return "";
+  }
+
+  /**
+   * Assembles all parameters: the automatically filled in ones, followed
+   * by the user-supplied ones.
+   *
+   * @param header	the structure of the data
+   * @return		the parameters (name to value)
+   * @throws IllegalArgumentException	if the user-supplied parameters are invalid
+   * @see LightGBMParameters
+   */
+  protected Map<String,String> allParameters(Instances header) {
+    Map<String,String>	result;
+    Map<String,String>	user;
+    StringBuilder 	categorical;
+    int			i;
+    int			n;
+
+    user = LightGBMParameters.parse(m_Parameters);
+    LightGBMParameters.checkAutomatic(user);
+    LightGBMParameters.checkConflicts(user);
+
+    // categorical features (indices of the features, i.e., without the class)
+    categorical = new StringBuilder();
+    n           = 0;
+    for (i = 0; i < header.numAttributes(); i++) {
+      if (i == header.classIndex())
+        continue;
+      if (header.attribute(i).isNominal()) {
+        if (categorical.length() > 0)
+          categorical.append(",");
+        categorical.append(n);
+      }
+      n++;
+    }
+
+    result = new LinkedHashMap<>();
+    result.put("objective", getObjective().getSelectedTag().getIDStr().toLowerCase());
+    result.put("label_column", "name:" + header.classAttribute().name());
+    if (categorical.length() > 0)
+      result.put("categorical_feature", categorical.toString());
+    if (header.classAttribute().isNominal() && (m_Objective != OBJECTIVE_BINARY))
+      result.put("num_class", "" + header.classAttribute().numValues());
+    result.putAll(user);
+
+    return result;
+  }
+
+  /**
+   * Assembles the parameters for constructing the datasets: the dataset
+   * parameters (incl. the categorical features) and the ones shared with
+   * the booster. LightGBM only applies the binning parameters when
+   * constructing a dataset, not when creating the booster.
+   *
+   * @param header	the structure of the data
+   * @param threads	the number of threads, 0 if not managed
+   * @return		the parameters
+   * @throws IllegalArgumentException	if the user-supplied parameters are invalid
+   * @see LightGBMParameters#datasetParameters(Map)
+   */
+  protected String datasetParameters(Instances header, int threads) {
+    Map<String,String>	result;
+
+    result = LightGBMParameters.datasetParameters(allParameters(header));
+    if ((threads > 0) && !result.containsKey("num_threads"))
+      result.put("num_threads", "" + threads);
+
+    return LightGBMParameters.toString(result);
+  }
+
+  /**
+   * Assembles the parameters for the booster: the automatically filled in
+   * ones, followed by the user-supplied ones, without the dataset
+   * parameters.
+   *
+   * @param header	the structure of the data
+   * @return		the parameters
+   * @throws IllegalArgumentException	if the user-supplied parameters are invalid
+   * @see LightGBMParameters#boosterParameters(Map)
+   * @see #datasetParameters(Instances, int)
+   */
+  protected String actualParameters(Instances header) {
+    return LightGBMParameters.toString(LightGBMParameters.boosterParameters(allParameters(header)));
+  }
+
+  /**
+   * Trains the booster on the datasets and stores the model. Closes the
+   * datasets afterwards. When continuing from an existing booster, the
+   * datasets must have the booster's raw scores as init scores; the trees
+   * of that booster get prepended to the newly trained ones.
+   *
+   * @param header	the structure of the data
+   * @param lgbmTrain	the training data
+   * @param lgbmVal	the validation data, can be null
+   * @param init	the booster to continue from, null to train from scratch
+   * @param numIterations	the number of iterations to train
+   * @param numThreads	the number of threads granted from the budget, 0 if not managed
+   * @throws Exception	if training fails
+   */
+  protected void train(Instances header, LGBMDataset lgbmTrain, LGBMDataset lgbmVal, LGBMBooster init, int numIterations, int numThreads) throws Exception {
+    int		 	i;
+    boolean		finished;
+    int			metricIndex;
+    int			keep;
+    boolean		higherBetter;
+    double		metric;
+    double		bestMetric;
+    boolean		evaluate;
+    String[]		names;
+    double[]		trainEval;
+    double[]		validEval;
+    long		start;
+    long		iterStart;
+    int			initIterations;
+
+    if (m_TrainingMetrics == null)
+      m_TrainingMetrics = new LightGBMTrainingMetrics();
+    m_Header           = new Instances(header, 0);
+    m_ActualParameters = actualParameters(header);
+    if (numThreads > 0)
+      m_ActualParameters += " " + threadParameters(numThreads);
+    if (getDebug()) {
+      System.out.println("Actual parameters: " + m_ActualParameters);
+      if (numThreads > 0)
+        System.out.println("Threads: " + numThreads + " (budget: " + LightGBMThreads.getBudget() + ", in use: " + LightGBMThreads.getInUse() + ")");
+    }
+    for (String warning: LightGBMParameters.warnings(LightGBMParameters.parse(m_Parameters), getDebug()))
+      System.err.println("Warning: " + warning);
+
+    try {
+      start     = System.nanoTime();
+      m_Booster = LGBMBooster.create(lgbmTrain, m_ActualParameters);
+      if (lgbmVal != null)
+        m_Booster.addValidData(lgbmVal);
+      notifyPhaseCompleted(LightGBMTrainingMetrics.PHASE_BOOSTER, System.nanoTime() - start);
+      // only evaluate all metrics in each iteration if someone is listening
+      evaluate = (m_TrainingListeners != null) && !m_TrainingListeners.isEmpty();
+      names    = (evaluate || (lgbmVal != null)) ? m_Booster.getEvalNames() : new String[0];
+      // early stopping/best iteration?
+      metricIndex  = -1;
+      higherBetter = false;
+      bestMetric   = Double.NaN;
+      if ((m_EarlyStoppingRounds > 0) || m_KeepBestIteration) {
+        if (lgbmVal == null) {
+          System.err.println("Early stopping and keeping the best iteration require a validation set, ignored!");
+        }
+        else {
+          metricIndex  = metricIndex(names, m_EarlyStoppingMetric);
+          higherBetter = isHigherBetter(names[metricIndex]);
+        }
+      }
+      // train
+      start = System.nanoTime();
+      for (i = 0; i < numIterations; i++) {
+        iterStart = System.nanoTime();
+        finished  = m_Booster.updateOneIter();
+        if (finished) {
+          System.out.println("No more splits possible, stopping training at iteration " + (i+1) + " out of " + numIterations);
+          break;
+        }
+        trainEval = null;
+        validEval = null;
+        if (evaluate)
+          trainEval = m_Booster.getEval(0);
+        if ((evaluate || (metricIndex > -1)) && (lgbmVal != null))
+          validEval = m_Booster.getEval(1);
+        notifyIterationCompleted(i + 1, System.nanoTime() - iterStart, names, trainEval, validEval);
+        if (metricIndex > -1) {
+          metric = validEval[metricIndex];
+          if (Double.isNaN(bestMetric)
+            || (higherBetter && (metric > bestMetric + m_EarlyStoppingMinDelta))
+            || (!higherBetter && (metric < bestMetric - m_EarlyStoppingMinDelta))) {
+            bestMetric      = metric;
+            m_BestIteration = i + 1;
+          }
+          else if ((m_EarlyStoppingRounds > 0) && (i + 1 - m_BestIteration >= m_EarlyStoppingRounds)) {
+            if (getDebug())
+              System.out.println("Early stopping at iteration " + (i+1) + ", best iteration " + m_BestIteration + ": " + bestMetric);
+            // discard the iterations after the best one
+            while (i + 1 > m_BestIteration) {
+              LightGBMUtils.rollbackOneIter(m_Booster);
+              i--;
+            }
+            break;
+          }
+        }
+      }
+      notifyPhaseCompleted(LightGBMTrainingMetrics.PHASE_BOOSTING, System.nanoTime() - start);
+      // prepend the trees of the model that training continued from
+      if (init != null) {
+        initIterations = LightGBMUtils.currentIteration(init);
+        LightGBMUtils.merge(m_Booster, init);
+        if (m_BestIteration > 0)
+          m_BestIteration += initIterations;
+        if (getDebug())
+          System.out.println("Continued from model with " + initIterations + " iteration(s)");
+      }
+      // truncate model?
+      keep = 0;
+      if (m_KeepBestIteration)
+        keep = m_BestIteration;
+      if ((m_IterationCutoff > 0) && ((keep == 0) || (m_IterationCutoff < keep)))
+        keep = m_IterationCutoff;
+      start = System.nanoTime();
+      saveModel(m_Booster, keep);
+      m_TrainingMetrics.setModelSize(m_ModelSize);
+      notifyPhaseCompleted(LightGBMTrainingMetrics.PHASE_SAVE, System.nanoTime() - start);
+      if (keep > 0) {
+        if (getDebug())
+          System.out.println("Keeping " + keep + " iteration(s) in model");
+        // gets re-initialized from the truncated model
+        m_Booster.close();
+        m_Booster = null;
+      }
+      if (getDebug())
+        System.out.println("Training metrics:\n" + m_TrainingMetrics);
+      if (m_TrainingListeners != null) {
+        for (LightGBMTrainingListener l: m_TrainingListeners)
+          l.trainingCompleted(m_TrainingMetrics);
+      }
+    }
+    catch (Exception e) {
+      if (m_Booster != null) {
+        m_Booster.close();
+        m_Booster = null;
+      }
+      throw e;
+    }
+    finally {
+      lgbmTrain.close();
+      if (lgbmVal != null)
+        lgbmVal.close();
+    }
+  }
+
+  /**
+   * Records the time of the phase and notifies the listeners.
+   *
+   * @param phase	the phase that was completed
+   * @param time	the time it took (nanoseconds)
+   */
+  protected void notifyPhaseCompleted(String phase, long time) {
+    m_TrainingMetrics.addPhaseTime(phase, time);
+    if (m_TrainingListeners != null) {
+      for (LightGBMTrainingListener l: m_TrainingListeners)
+        l.phaseCompleted(phase, time);
+    }
+  }
+
+  /**
+   * Records the iteration and notifies the listeners.
+   *
+   * @param iteration	the iteration (1-based)
+   * @param time	the time it took (nanoseconds)
+   * @param names	the names of the metrics
+   * @param train	the training metrics, null if not evaluated
+   * @param valid	the validation metrics, null if not evaluated
+   */
+  protected void notifyIterationCompleted(int iteration, long time, String[] names, double[] train, double[] valid) {
+    m_TrainingMetrics.addIteration(time, (train != null) || (valid != null) ? names : null, train, valid);
+    if (m_TrainingListeners != null) {
+      for (LightGBMTrainingListener l: m_TrainingListeners)
+        l.iterationCompleted(iteration, time, names, (train == null) ? new double[0] : train, (valid == null) ? new double[0] : valid);
+    }
+  }
+
+  /**
+   * Determines the index of the metric to monitor.
+   *
+   * @param names	the available metrics
+   * @param metric	the metric to look for, empty for the first one
+   * @return		the index
+   * @throws IllegalArgumentException	if the metric is not available
+   */
+  protected int metricIndex(String[] names, String metric) {
+    int		i;
+
+    if (names.length == 0)
+      throw new IllegalArgumentException("No validation metrics available!");
+    if (metric.isEmpty())
+      return 0;
+    for (i = 0; i < names.length; i++) {
+      if (names[i].equals(metric))
+        return i;
+    }
+
+    throw new IllegalArgumentException("Metric '" + metric + "' not available: " + Utils.arrayToString(names));
+  }
+
+  /**
+   * Returns whether higher values of the metric are better.
+   *
+   * @param metric	the name of the metric
+   * @return		true if higher is better
+   */
+  protected boolean isHigherBetter(String metric) {
+    return metric.startsWith("auc")
+      || metric.startsWith("ndcg")
+      // not "mape"
+      || metric.equals("map")
+      || metric.startsWith("map@")
+      || metric.startsWith("average_precision");
+  }
+
+  /**
+   * Loads the pure-Java representation of the model. External models get
+   * memory-mapped, unless they need compiling.
+   *
+   * @return		the model
+   * @throws Exception	if loading fails
+   */
+  protected LightGBMTreeModel loadTreeModel() throws Exception {
+    LightGBMTreeModel	result;
+
+    if (m_ModelFile != null) {
+      result = LightGBMMappedTreeModel.mapModel(getModelFile());
+      // the compiler requires the arrays on the heap
+      if (m_CompiledInference)
+        result = LightGBMTreeModel.fromBytes(Files.readAllBytes(LightGBMMappedTreeModel.treesFile(getModelFile()).toPath()));
+    }
+    else if (m_TreeData != null) {
+      result = LightGBMTreeModel.fromBytes(LightGBMModelCodec.decode(m_TreeData));
+    }
+    else {
+      result = LightGBMTreeModel.parse(LightGBMUtils.decompress(m_Model));
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the content hash of the model, used as key in the registry.
+   * External models are named after the hash of their content already.
+   *
+   * @return		the hash
+   */
+  protected String modelKey() {
+    String	name;
+
+    if (m_ModelFile != null) {
+      name = new File(m_ModelFile).getName();
+      if (name.lastIndexOf('.') > -1)
+        name = name.substring(0, name.lastIndexOf('.'));
+      return name;
+    }
+
+    if (m_ModelHash == null)
+      m_ModelHash = LightGBMUtils.digest(m_Model);
+    return m_ModelHash;
+  }
+
+  /**
+   * Obtains the shared representation of the model from the registry,
+   * loading it if necessary. The reference gets released in {@link #close()}.
+   *
+   * @param type	the type of representation
+   * @param loader	for loading the representation
+   * @param <T>		the type of the representation
+   * @return		the representation
+   * @throws Exception	if loading fails
+   */
+  protected <T> T register(String type, Callable<T> loader) throws Exception {
+    T		result;
+    String	key;
+
+    key    = modelKey() + "/" + type;
+    result = LightGBMModelRegistry.acquire(key, m_ModelSize, loader);
+    if (m_RegistryKeys == null)
+      m_RegistryKeys = new ArrayList<>();
+    m_RegistryKeys.add(key);
+    if (getDebug())
+      System.out.println("Shared model " + key + ": " + LightGBMModelRegistry.getReferences(key) + " reference(s)");
+
+    return result;
+  }
+
+  /**
+   * Initializes the pure-Java representation of the model (once).
+   *
+   * @throws Exception	if initialization fails
+   */
+  protected void initTreeModel() throws Exception {
+    LightGBMTreeModel	model;
+    long		start;
+
+    if (m_TreeModel != null)
+      return;
+
+    synchronized (this) {
+      if (m_TreeModel != null)
+        return;
+      // only collected instances so far?
+      if (!hasModel())
+        flushUpdates();
+      if (!hasModel())
+        throw new IllegalStateException("No model trained?");
+      start = System.nanoTime();
+      if (m_SharedModels)
+        model = register(((m_ModelFile != null) && !m_CompiledInference) ? "mapped" : "trees", this::loadTreeModel);
+      else
+        model = loadTreeModel();
+      if (m_CompiledInference) {
+        try {
+          if (m_SharedModels)
+            m_CompiledScorer = register("compiled", () -> LightGBMCompiler.compile(model));
+          else
+            m_CompiledScorer = LightGBMCompiler.compile(model);
+        }
+        catch (Exception e) {
+          System.err.println("Failed to compile model, using interpreter instead: " + e.getMessage());
+        }
+      }
+      if (m_CollectPredictionMetrics)
+        getPredictionMetrics().addLoad(System.nanoTime() - start);
+      // published last, as it signals that initialization has finished
+      m_TreeModel = model;
+    }
+  }
+
+  /**
+   * Creates the pool of boosters. Adopts the booster from training, if still
+   * available.
+   *
+   * @return		the pool
+   * @throws Exception	if creating fails
+   */
+  protected LightGBMBoosterPool loadPool() throws Exception {
+    LightGBMBoosterPool	result;
+
+    if (m_ModelFile != null)
+      result = new LightGBMBoosterPool(getModelFile(), m_Booster, m_NumBoosters, numOutputs());
+    else
+      result = new LightGBMBoosterPool(m_Model, m_Booster, m_NumBoosters, numOutputs());
+    m_Booster = null;
+    if (m_CollectPredictionMetrics)
+      result.setMetrics(getPredictionMetrics());
+
+    return result;
+  }
+
+  /**
+   * Initializes the pool of boosters (once). Adopts the booster from
+   * training, if still available.
+   *
+   * @return		the pool
+   * @throws Exception	if initialization fails
+   */
+  protected LightGBMBoosterPool initPool() throws Exception {
+    LightGBMBoosterPool	result;
+
+    result = m_Pool;
+    if (result != null)
+      return result;
+
+    synchronized (this) {
+      if (m_Pool == null) {
+        // only collected instances so far?
+        if (!hasModel())
+          flushUpdates();
+        if (!hasModel())
+          throw new IllegalStateException("No model trained?");
+        LightGBMUtils.loadNative();
+        if (m_SharedModels)
+          m_Pool = register("pool" + m_NumBoosters, this::loadPool);
+        else
+          m_Pool = loadPool();
+        // already loaded by another instance?
+        if (m_Booster != null) {
+          m_Booster.close();
+          m_Booster = null;
+        }
+      }
+      return m_Pool;
+    }
+  }
+
+  /**
+   * Predicts the class memberships for a given instance, using a single
+   * native call. For multi-class objectives, the full class probability
+   * vector is returned. For numeric classes, the array contains the
+   * predicted value. Sparse instances are passed on in CSR format.
+   * Uses the pure-Java inference engine (or the compiled trees) if enabled.
+   *
+   * @param instance the instance to be classified
+   * @return an array containing the estimated membership probabilities of the
+   *         test instance in each class or the numeric prediction
+   * @throws Exception if distribution could not be computed successfully
+   */
+  @Override
+  public double[] distributionForInstance(Instance instance) throws Exception {
+    int				numFeatures;
+    double[]			row;
+    double[]			predictions;
+    LightGBMBoosterPool		pool;
+    LightGBMBoosterPool.Slot	slot;
+    LightGBMPredictionMetrics	metrics;
+    double[]			result;
+    int				numNonZeros;
+    long			start;
+    long			converted;
+    long			scored;
+
+    numFeatures = instance.numAttributes() - (instance.classIndex() == -1 ? 0 : 1);
+    metrics     = m_CollectPredictionMetrics ? getPredictionMetrics() : null;
+
+    if (m_PureJavaInference || m_CompiledInference) {
+      initTreeModel();
+      start       = now(metrics);
+      row         = new double[numFeatures];
+      predictions = new double[numOutputs()];
+      LightGBMUtils.fromInstance(instance, row);
+      converted   = now(metrics);
+      if (m_CompiledScorer != null) {
+        m_CompiledScorer.accept(row, predictions);
+        m_TreeModel.transform(predictions);
+      }
+      else {
+        m_TreeModel.predict(row, predictions);
+      }
+      scored = now(metrics);
+      result = toDistribution(predictions, 0);
+      if (metrics != null)
+        metrics.addPrediction(converted - start, scored - converted, now(metrics) - start);
+      return result;
+    }
+
+    pool  = initPool();
+    start = now(metrics);
+    slot  = pool.acquire();
+    try {
+      row = slot.getRow(numFeatures);
+      if (instance instanceof SparseInstance) {
+        numNonZeros = LightGBMUtils.fromSparseInstance(instance, slot.getIndices(numFeatures), row);
+        converted   = now(metrics);
+        LightGBMUtils.predictForSparseRow(slot.getBooster(), slot.getIndices(numFeatures), row, numNonZeros, numFeatures, slot.getNativeOutput(), slot.getNativeOutputLen(), slot.getPredictions());
+      }
+      else {
+        LightGBMUtils.fromInstance(instance, row);
+        converted = now(metrics);
+        LightGBMUtils.predictForRow(slot.getBooster(), row, slot.getNativeOutput(), slot.getNativeOutputLen(), slot.getPredictions());
+      }
+      scored = now(metrics);
+      result = toDistribution(slot.getPredictions(), 0);
+    }
+    finally {
+      pool.release(slot);
+    }
+    if (metrics != null)
+      metrics.addPrediction(converted - start, scored - converted, now(metrics) - start);
+
+    return result;
+  }
+
+  /**
+   * Returns the current time for the metrics.
+   *
+   * @param metrics	the metrics, null if not collected
+   * @return		the time in nanoseconds, 0 if no metrics
+   */
+  protected static long now(LightGBMPredictionMetrics metrics) {
+    return (metrics == null) ? 0 : System.nanoTime();
+  }
+
+  /**
+   * Returns the number of values that the booster outputs per row.
+   *
+   * @return		the number of outputs
+   */
+  protected int numOutputs() {
+    if (m_NumericClass || (m_Objective == OBJECTIVE_BINARY))
+      return 1;
+    else
+      return m_NumClasses;
+  }
+
+  /**
+   * Turns the raw booster output for a single row into a Weka distribution.
+   *
+   * @param predictions	the booster output
+   * @param offset	the offset of the row in the output
+   * @return		the distribution
+   */
+  protected double[] toDistribution(double[] predictions, int offset) {
+    double[]	result;
+
+    if (m_NumericClass) {
+      result = new double[]{predictions[offset]};
+    }
+    else if (m_Objective == OBJECTIVE_BINARY) {
+      result    = new double[2];
+      result[1] = predictions[offset];
+      result[0] = 1.0 - result[1];
+    }
+    else {
+      result = new double[m_NumClasses];
+      System.arraycopy(predictions, offset, result, 0, m_NumClasses);
+      // one-vs-all probabilities don't necessarily sum up to 1
+      if (Utils.sum(result) > 0)
+        Utils.normalize(result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns true, as the batch prediction packs blocks of instances into
+   * a single matrix and performs a single native call per block.
+   *
+   * @return		true
+   */
+  @Override
+  public boolean implementsMoreEfficientBatchPrediction() {
+    return true;
+  }
+
+  /**
+   * Batch scoring method. Packs blocks of instances (see batch size) into
+   * a row-major matrix (or CSR arrays for sparse data) and predicts them
+   * with a single native call each.
+   *
+   * @param insts 	the instances to get predictions for
+   * @return 		an array of probability distributions, one for each instance
+   * @throws Exception 	if a problem occurs
+   */
+  @Override
+  public double[][] distributionsForInstances(Instances insts) throws Exception {
+    double[][]			result;
+    int				batchSize;
+    int				numFeatures;
+    int				numOutputs;
+    int				start;
+    int				end;
+    int				i;
+    SWIGTYPE_p_double		matrix;
+    double[]			predictions;
+    boolean			sparse;
+    LightGBMBoosterPool		pool;
+    LightGBMBoosterPool.Slot	slot;
+    LightGBMPredictionMetrics	metrics;
+    long			batchStart;
+    long			converted;
+
+    if (m_PureJavaInference || m_CompiledInference) {
+      result = new double[insts.numInstances()][];
+      for (i = 0; i < insts.numInstances(); i++)
+        result[i] = distributionForInstance(insts.instance(i));
+      return result;
+    }
+
+    try {
+      batchSize = Integer.parseInt(getBatchSize());
+    }
+    catch (Exception e) {
+      batchSize = Integer.parseInt(BATCH_SIZE_DEFAULT);
+    }
+    if (batchSize < 1)
+      batchSize = Integer.parseInt(BATCH_SIZE_DEFAULT);
+
+    result      = new double[insts.numInstances()][];
+    numFeatures = insts.numAttributes() - (insts.classIndex() == -1 ? 0 : 1);
+    numOutputs  = numOutputs();
+    matrix      = null;
+    sparse      = LightGBMUtils.isSparse(insts);
+    metrics     = m_CollectPredictionMetrics ? getPredictionMetrics() : null;
+    pool        = initPool();
+    slot        = pool.acquire();
+    try {
+      for (start = 0; start < insts.numInstances(); start += batchSize) {
+        end        = Math.min(start + batchSize, insts.numInstances());
+        batchStart = now(metrics);
+        if (sparse) {
+          // conversion happens as part of the native call
+          converted   = batchStart;
+          predictions = LightGBMUtils.predictForCSR(slot.getBooster(), insts, start, end, numFeatures, numOutputs);
+        }
+        else {
+          // filled directly, the buffers get reused across batches and calls
+          matrix = slot.getNativeMatrix((long) (end - start) * numFeatures);
+          LightGBMUtils.fillMatrix(insts, start, end, matrix);
+          converted   = now(metrics);
+          predictions = LightGBMUtils.predictForMat(
+            slot.getBooster(), matrix, end - start, numFeatures,
+            slot.getNativeBatchOutput((long) (end - start) * numOutputs), slot.getNativeOutputLen(),
+            lightgbmlibConstants.C_API_PREDICT_NORMAL);
+        }
+        if (metrics != null)
+          metrics.addBatch(end - start, converted - batchStart, now(metrics) - converted);
+        for (i = start; i < end; i++)
+          result[i] = toDistribution(predictions, (i - start) * numOutputs);
+      }
+    }
+    finally {
+      pool.release(slot);
+    }
+
+    return result;
+  }
+
+  /**
+   * Prints the all the rules of the rule learner.
+   *
+   * @return a textual description of the classifier
+   */
+  @Override
+  public String toString() {
+    StringBuilder	result;
+
+    result = new StringBuilder();
+
+    if (!hasModel()) {
+      result.append("No model built yet.");
+    }
+    else {
+      result.append("LightGBM\n");
+      result.append("========\n\n");
+      result.append("Actual parameters: ").append(m_ActualParameters).append("\n");
+      if (m_BestIteration > 0)
+        result.append("Best iteration: ").append(m_BestIteration).append("\n");
+      // models serialized by older versions have no summary
+      if (m_ModelSummary == null) {
+        m_ModelSize    = getModelText().length();
+        m_ModelSummary = summarize(getModelText());
+      }
+      if (m_FullModelOutput || (m_ModelSize <= MAX_FULL_MODEL_OUTPUT)) {
+        result.append("Model:\n");
+        result.append(getModelText());
+      }
+      else {
+        result.append("Model summary:\n");
+        result.append(m_ModelSummary);
+        result.append("\n(model text has " + m_ModelSize + " characters, use -U for outputting it in full)\n");
+      }
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Closes this resource, relinquishing any underlying resources.
+   * This method is invoked automatically on objects managed by the
+   * {@code try}-with-resources statement.
+   *
+   * @throws Exception if this resource cannot be closed
    */
   @Override
-  public void close() throws Exception {
+  public synchronized void close() throws Exception {
+    m_ModelText      = null;
+    m_TreeModel      = null;
+    m_CompiledScorer = null;
+    if (m_RegistryKeys != null) {
+      // shared models get closed by the registry
+      for (String key: m_RegistryKeys)
+        LightGBMModelRegistry.release(key);
+      m_RegistryKeys = null;
+      m_Pool         = null;
+    }
+    if (m_Pool != null) {
+      m_Pool.close();
+      m_Pool = null;
+    }
     if (m_Booster != null) {
       m_Booster.close();
       m_Booster = null;
     }
   }
 
+  /**
+   * Determines the number of class labels of a model that was serialized
+   * without it, from the data structure, the actual parameters or the
+   * model text (in that order).
+   *
+   * @return		the number of class labels (1 for numeric class)
+   */
+  protected int determineNumClasses() {
+    String	text;
+    int		pos;
+    int		end;
+
+    if (m_NumericClass)
+      return 1;
+    if (m_Header != null)
+      return m_Header.numClasses();
+
+    text = (m_ActualParameters == null) ? "" : " " + m_ActualParameters;
+    pos  = text.indexOf(" num_class=");
+    if (pos > -1) {
+      pos += " num_class=".length();
+    }
+    else {
+      text = getModelText();
+      pos  = (text == null) ? -1 : text.indexOf("\nnum_class=");
+      if (pos == -1)
+        return 2;
+      pos += "\nnum_class=".length();
+    }
+    end = pos;
+    while ((end < text.length()) && Character.isDigit(text.charAt(end)))
+      end++;
+
+    return Math.max(2, Integer.parseInt(text.substring(pos, end)));
+  }
+
+  /**
+   * Restores the classifier. Options that are missing in classifiers
+   * serialized by older versions get their default values. With shared
+   * models, the model data of all instances with the same model gets
+   * deduplicated.
+   *
+   * @param in		the stream to read from
+   * @throws IOException	if reading fails
+   * @throws ClassNotFoundException	if a class cannot be found
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    LightGBM	defaults;
+
+    in.defaultReadObject();
+    // fields missing in the stream are null/0 rather than their defaults
+    defaults = new LightGBM();
+    if (m_EarlyStoppingMetric == null) {
+      // serialized before any of the options were added
+      m_EarlyStoppingMetric = defaults.m_EarlyStoppingMetric;
+      m_NumBoosters         = defaults.m_NumBoosters;
+      m_DatasetCacheSize    = defaults.m_DatasetCacheSize;
+      m_ChunkSize           = defaults.m_ChunkSize;
+      m_ModelCodec          = defaults.m_ModelCodec;
+      m_UpdateBatchSize     = defaults.m_UpdateBatchSize;
+      m_UpdateIterations    = defaults.m_UpdateIterations;
+    }
+    if (m_DatasetCacheDir == null)
+      m_DatasetCacheDir = defaults.m_DatasetCacheDir;
+    if (m_ModelDir == null)
+      m_ModelDir = defaults.m_ModelDir;
+    // models serialized by older versions don't store the number of classes
+    if ((m_NumClasses == 0) && hasModel())
+      m_NumClasses = determineNumClasses();
+    if (m_SharedModels && (m_Model != null)) {
+      m_Model = LightGBMModelRegistry.intern(modelKey(), m_Model);
+      if (m_TreeData != null)
+        m_TreeData = LightGBMModelRegistry.intern(modelKey() + "/data", m_TreeData);
+    }
+  }
+
   /**
    * Main method.
    *
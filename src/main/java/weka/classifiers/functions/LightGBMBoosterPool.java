@@ -0,0 +1,388 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMBoosterPool.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import com.microsoft.ml.lightgbm.SWIGTYPE_p_double;
+import com.microsoft.ml.lightgbm.SWIGTYPE_p_long_long;
+import com.microsoft.ml.lightgbm.lightgbmlib;
+import io.github.metarank.lightgbm4j.LGBMBooster;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of native boosters for concurrent predictions. Each booster comes
+ * with its own prediction buffers, i.e., a thread has exclusive access to
+ * a slot between {@link #acquire()} and {@link #release(Slot)}. Boosters
+ * get loaded lazily from the model, up to the maximum size of the pool.
+ * Closing the pool only closes the idle slots right away, slots that are
+ * in use get closed once they are released.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LightGBMBoosterPool
+  implements AutoCloseable {
+
+  /**
+   * A booster with its buffers for single row predictions.
+   */
+  public static class Slot
+    implements AutoCloseable {
+
+    /** the booster. */
+    protected LGBMBooster m_Booster;
+
+    /** the buffer for the feature values of a single row. */
+    protected double[] m_Row;
+
+    /** the buffer for the feature indices of a single sparse row. */
+    protected int[] m_Indices;
+
+    /** the buffer for the predictions of a single row. */
+    protected double[] m_Predictions;
+
+    /** the native output buffer for single row predictions. */
+    protected SWIGTYPE_p_double m_NativeOutput;
+
+    /** the native buffer for the output length of single row predictions. */
+    protected SWIGTYPE_p_long_long m_NativeOutputLen;
+
+    /** the native buffer for the feature values of a batch (null if not yet allocated). */
+    protected SWIGTYPE_p_double m_NativeMatrix;
+
+    /** the number of values that the native batch buffer holds. */
+    protected long m_NativeMatrixSize;
+
+    /** the native output buffer for batch predictions (null if not yet allocated). */
+    protected SWIGTYPE_p_double m_NativeBatchOutput;
+
+    /** the number of values that the native batch output buffer holds. */
+    protected long m_NativeBatchOutputSize;
+
+    /**
+     * Initializes the slot.
+     *
+     * @param booster	the booster to use
+     * @param numOutputs	the number of outputs per row
+     */
+    public Slot(LGBMBooster booster, int numOutputs) {
+      m_Booster         = booster;
+      m_Predictions     = new double[numOutputs];
+      m_NativeOutput    = lightgbmlib.new_doubleArray(numOutputs);
+      m_NativeOutputLen = lightgbmlib.new_int64_tp();
+    }
+
+    /**
+     * Returns the booster.
+     *
+     * @return		the booster
+     */
+    public LGBMBooster getBooster() {
+      return m_Booster;
+    }
+
+    /**
+     * Returns the buffer for the feature values of a single row.
+     *
+     * @param numFeatures	the number of features
+     * @return		the buffer
+     */
+    public double[] getRow(int numFeatures) {
+      if ((m_Row == null) || (m_Row.length != numFeatures)) {
+	m_Row     = new double[numFeatures];
+	m_Indices = new int[numFeatures];
+      }
+      return m_Row;
+    }
+
+    /**
+     * Returns the buffer for the feature indices of a single sparse row.
+     *
+     * @param numFeatures	the number of features
+     * @return		the buffer
+     */
+    public int[] getIndices(int numFeatures) {
+      getRow(numFeatures);
+      return m_Indices;
+    }
+
+    /**
+     * Returns the buffer for the predictions of a single row.
+     *
+     * @return		the buffer
+     */
+    public double[] getPredictions() {
+      return m_Predictions;
+    }
+
+    /**
+     * Returns the native output buffer.
+     *
+     * @return		the buffer
+     */
+    public SWIGTYPE_p_double getNativeOutput() {
+      return m_NativeOutput;
+    }
+
+    /**
+     * Returns the native buffer for the output length.
+     *
+     * @return		the buffer
+     */
+    public SWIGTYPE_p_long_long getNativeOutputLen() {
+      return m_NativeOutputLen;
+    }
+
+    /**
+     * Returns the native buffer for the feature values of a batch, growing
+     * it if necessary.
+     *
+     * @param size	the number of values the buffer must hold
+     * @return		the buffer
+     */
+    public SWIGTYPE_p_double getNativeMatrix(long size) {
+      if (size > m_NativeMatrixSize) {
+	if (m_NativeMatrix != null)
+	  lightgbmlib.delete_doubleArray(m_NativeMatrix);
+	m_NativeMatrix     = lightgbmlib.new_doubleArray(size);
+	m_NativeMatrixSize = size;
+      }
+      return m_NativeMatrix;
+    }
+
+    /**
+     * Returns the native output buffer for batch predictions, growing it if
+     * necessary.
+     *
+     * @param size	the number of values the buffer must hold
+     * @return		the buffer
+     */
+    public SWIGTYPE_p_double getNativeBatchOutput(long size) {
+      if (size > m_NativeBatchOutputSize) {
+	if (m_NativeBatchOutput != null)
+	  lightgbmlib.delete_doubleArray(m_NativeBatchOutput);
+	m_NativeBatchOutput     = lightgbmlib.new_doubleArray(size);
+	m_NativeBatchOutputSize = size;
+      }
+      return m_NativeBatchOutput;
+    }
+
+    /**
+     * Frees the buffers and closes the booster.
+     */
+    @Override
+    public void close() {
+      if (m_NativeOutput != null) {
+	lightgbmlib.delete_doubleArray(m_NativeOutput);
+	m_NativeOutput = null;
+      }
+      if (m_NativeOutputLen != null) {
+	lightgbmlib.delete_int64_tp(m_NativeOutputLen);
+	m_NativeOutputLen = null;
+      }
+      if (m_NativeMatrix != null) {
+	lightgbmlib.delete_doubleArray(m_NativeMatrix);
+	m_NativeMatrix     = null;
+	m_NativeMatrixSize = 0;
+      }
+      if (m_NativeBatchOutput != null) {
+	lightgbmlib.delete_doubleArray(m_NativeBatchOutput);
+	m_NativeBatchOutput     = null;
+	m_NativeBatchOutputSize = 0;
+      }
+      if (m_Booster != null) {
+	try {
+	  m_Booster.close();
+	}
+	catch (Exception e) {
+	  System.err.println("Failed to close booster: " + e.getMessage());
+	}
+	m_Booster = null;
+      }
+    }
+  }
+
+  /** the compressed model to load the boosters from (null if from file). */
+  protected byte[] m_Model;
+
+  /** the model file to load the boosters from (null if from compressed model). */
+  protected File m_ModelFile;
+
+  /** the maximum number of boosters. */
+  protected int m_Size;
+
+  /** the number of outputs per row. */
+  protected int m_NumOutputs;
+
+  /** the slots that are available. */
+  protected LinkedBlockingQueue<Slot> m_Available;
+
+  /** all the slots that were created. */
+  protected List<Slot> m_All;
+
+  /** for recording the load times (can be null). */
+  protected LightGBMPredictionMetrics m_Metrics;
+
+  /** whether the pool has been closed. */
+  protected volatile boolean m_Closed;
+
+  /**
+   * Initializes the pool.
+   *
+   * @param model	the compressed model to load the boosters from
+   * @param initial	the booster to use for the first slot, can be null
+   * @param size	the maximum number of boosters
+   * @param numOutputs	the number of outputs per row
+   */
+  public LightGBMBoosterPool(byte[] model, LGBMBooster initial, int size, int numOutputs) {
+    Slot	slot;
+
+    m_Model      = model;
+    m_Size       = Math.max(1, size);
+    m_NumOutputs = numOutputs;
+    m_Available  = new LinkedBlockingQueue<>();
+    m_All        = new ArrayList<>();
+    if (initial != null) {
+      slot = new Slot(initial, numOutputs);
+      m_All.add(slot);
+      m_Available.add(slot);
+    }
+  }
+
+  /**
+   * Initializes the pool, loading the boosters from the model file.
+   *
+   * @param modelFile	the model file to load the boosters from
+   * @param initial	the booster to use for the first slot, can be null
+   * @param size	the maximum number of boosters
+   * @param numOutputs	the number of outputs per row
+   */
+  public LightGBMBoosterPool(File modelFile, LGBMBooster initial, int size, int numOutputs) {
+    this((byte[]) null, initial, size, numOutputs);
+    m_ModelFile = modelFile;
+  }
+
+  /**
+   * Loads a new booster, either from the model file or the compressed model.
+   *
+   * @return		the booster
+   * @throws Exception	if loading fails
+   */
+  protected LGBMBooster loadBooster() throws Exception {
+    LightGBMUtils.loadNative();
+    if (m_ModelFile != null)
+      return LGBMBooster.createFromModelfile(m_ModelFile.getAbsolutePath());
+    else
+      return LGBMBooster.loadModelFromString(LightGBMUtils.decompress(m_Model));
+  }
+
+  /**
+   * Sets the metrics for recording the time it takes to load boosters.
+   *
+   * @param value	the metrics, null to disable
+   */
+  public void setMetrics(LightGBMPredictionMetrics value) {
+    m_Metrics = value;
+  }
+
+  /**
+   * Returns the maximum number of boosters.
+   *
+   * @return		the size
+   */
+  public int getSize() {
+    return m_Size;
+  }
+
+  /**
+   * Obtains exclusive access to a slot, creating a new booster if none
+   * is available and the pool hasn't reached its size yet. Otherwise
+   * waits for a slot to be released.
+   *
+   * @return		the slot
+   * @throws IllegalStateException	if the pool has been closed
+   * @throws Exception	if loading of booster fails or interrupted
+   */
+  public Slot acquire() throws Exception {
+    Slot	result;
+    long	start;
+
+    if (m_Closed)
+      throw new IllegalStateException("Booster pool has been closed!");
+
+    result = m_Available.poll();
+    if (result != null)
+      return result;
+
+    synchronized (this) {
+      if (m_Closed)
+	throw new IllegalStateException("Booster pool has been closed!");
+      if (m_All.size() < m_Size) {
+	start = System.nanoTime();
+	result = new Slot(loadBooster(), m_NumOutputs);
+	m_All.add(result);
+	if (m_Metrics != null)
+	  m_Metrics.addLoad(System.nanoTime() - start);
+	return result;
+      }
+    }
+
+    // wait for a slot, but stop waiting once the pool gets closed
+    while ((result = m_Available.poll(100, TimeUnit.MILLISECONDS)) == null) {
+      if (m_Closed)
+	throw new IllegalStateException("Booster pool has been closed!");
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the slot to the pool. Closes the slot instead if the pool
+   * has been closed in the meantime.
+   *
+   * @param slot	the slot to release
+   */
+  public void release(Slot slot) {
+    m_Available.offer(slot);
+    // closed in the meantime? then the slot might have missed the closing
+    if (m_Closed)
+      close();
+  }
+
+  /**
+   * Closes the pool: closes the boosters of the idle slots, the ones of
+   * slots that are in use get closed when they are released. Acquiring
+   * slots fails afterwards. Can be called multiple times.
+   */
+  @Override
+  public synchronized void close() {
+    Slot	slot;
+
+    m_Closed = true;
+    while ((slot = m_Available.poll()) != null) {
+      slot.close();
+      m_All.remove(slot);
+    }
+  }
+}
@@ -0,0 +1,498 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMCompiler.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Turns a {@link LightGBMTreeModel} into a JVM class, with each tree
+ * unrolled into nested branches, which allows the JIT to inline and
+ * branch-predict the whole ensemble. The class gets generated as Java
+ * source code, compiled in memory (requires a JDK) and loaded via a
+ * private class loader.
+ * <br>
+ * The thresholds, leaf values and categorical bitsets are not part of the
+ * code, but get passed to the constructor as arrays (one per tree), which
+ * keeps the constant pool of the class small. The size of the model is
+ * therefore only limited by the number of generated methods.
+ * <br>
+ * The generated class implements {@link BiConsumer} and computes the raw
+ * scores for a row (first argument) into the output array (second argument).
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LightGBMCompiler {
+
+  /** the name of the generated class. */
+  public final static String CLASS_NAME = "LightGBMCompiledScorer";
+
+  /**
+   * the maximum number of generated methods (one per tree plus one per
+   * large subtree), as each one takes up a few entries of the constant
+   * pool, which is limited to 65535 entries.
+   */
+  public final static int MAX_METHODS = 15000;
+
+  /**
+   * the estimated bytecode size above which subtrees get moved into
+   * methods of their own. Methods therefore stay well below HotSpot's limit
+   * of 8000 bytes for JIT-compiling methods (-XX:-DontCompileHugeMethods).
+   */
+  public final static int MAX_SUBTREE_SIZE = 3000;
+
+  /** the maximum number of tree calls per method (about 11 bytes each, see {@link #MAX_SUBTREE_SIZE}). */
+  public final static int TREES_PER_METHOD = 500;
+
+  /**
+   * Class loader for the generated class.
+   */
+  protected static class ScorerClassLoader
+    extends ClassLoader {
+
+    /** the bytecode of the generated class. */
+    protected byte[] m_Bytecode;
+
+    /**
+     * Initializes the class loader.
+     *
+     * @param parent	the parent loader
+     * @param bytecode	the bytecode of the generated class
+     */
+    public ScorerClassLoader(ClassLoader parent, byte[] bytecode) {
+      super(parent);
+      m_Bytecode = bytecode;
+    }
+
+    /**
+     * Defines the generated class.
+     *
+     * @param name	the name of the class
+     * @return		the class
+     * @throws ClassNotFoundException	if not the generated class
+     */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      if (name.equals(CLASS_NAME))
+	return defineClass(name, m_Bytecode, 0, m_Bytecode.length);
+      return super.findClass(name);
+    }
+  }
+
+  /**
+   * Checks whether the model can be compiled.
+   *
+   * @param model	the model to check
+   * @return		null if it can be compiled, otherwise the reason why not
+   */
+  public static String canCompile(LightGBMTreeModel model) {
+    if (ToolProvider.getSystemJavaCompiler() == null)
+      return "No Java compiler available (JDK required)";
+    if (countMethods(model) > MAX_METHODS)
+      return "Model too large: " + countMethods(model) + " > " + MAX_METHODS + " methods";
+
+    return null;
+  }
+
+  /**
+   * Returns the number of methods that get generated for the trees: one
+   * per tree and one per subtree that exceeds {@link #MAX_SUBTREE_SIZE}.
+   *
+   * @param model	the model
+   * @return		the number of methods
+   */
+  public static int countMethods(LightGBMTreeModel model) {
+    int		result;
+    int[]	sizes;
+    int		i;
+    int		n;
+
+    result = 0;
+    for (i = 0; i < model.getNumTrees(); i++) {
+      result++;
+      sizes = new int[model.m_NodeOffsets[i + 1] - model.m_NodeOffsets[i]];
+      if (sizes.length == 0)
+	continue;
+      estimateSizes(model, i, 0, sizes);
+      for (n = 1; n < sizes.length; n++) {
+	if (sizes[n] > MAX_SUBTREE_SIZE)
+	  result++;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Estimates the (upper bound of the) bytecode size of the split.
+   *
+   * @param model	the model
+   * @param n		the global node index
+   * @return		the size in bytes
+   */
+  protected static int estimateSize(LightGBMTreeModel model, int n) {
+    if ((model.m_DecisionType[n] & LightGBMTreeModel.CATEGORICAL_MASK) != 0)
+      return 24;
+    if (((model.m_DecisionType[n] >> 2) & 3) == LightGBMTreeModel.MISSING_ZERO)
+      return 64;
+    return 24;
+  }
+
+  /**
+   * Estimates the bytecode sizes of all the subtrees of the tree.
+   *
+   * @param model	the model
+   * @param tree	the tree index
+   * @param node	the node (negative for leaves)
+   * @param sizes	for storing the sizes, indexed by node
+   * @return		the size of the subtree in bytes
+   */
+  protected static int estimateSizes(LightGBMTreeModel model, int tree, int node, int[] sizes) {
+    int		n;
+
+    // leaf: array access and return
+    if (node < 0)
+      return 6;
+
+    n           = model.m_NodeOffsets[tree] + node;
+    sizes[node] = estimateSize(model, n)
+      + estimateSizes(model, tree, model.m_LeftChild[n], sizes)
+      + estimateSizes(model, tree, model.m_RightChild[n], sizes);
+
+    return sizes[node];
+  }
+
+  /**
+   * Generates the condition for going left at a numeric split, mirroring
+   * the missing value handling of LightGBM.
+   *
+   * @param model	the model
+   * @param tree	the tree index
+   * @param n		the global node index
+   * @return		the condition
+   */
+  protected static String numericCondition(LightGBMTreeModel model, int tree, int n) {
+    String	value;
+    String	threshold;
+    String	zero;
+    int		missing;
+    boolean	defaultLeft;
+
+    value       = "r[" + model.m_SplitFeature[n] + "]";
+    threshold   = "t[" + (n - model.m_NodeOffsets[tree]) + "]";
+    missing     = (model.m_DecisionType[n] >> 2) & 3;
+    defaultLeft = (model.m_DecisionType[n] & LightGBMTreeModel.DEFAULT_LEFT_MASK) != 0;
+
+    switch (missing) {
+      case LightGBMTreeModel.MISSING_NAN:
+	if (defaultLeft)
+	  return "!(" + value + " > " + threshold + ")";
+	else
+	  return value + " <= " + threshold;
+
+      case LightGBMTreeModel.MISSING_ZERO:
+	zero = "(" + value + " != " + value + " || (" + value + " >= -" + LightGBMTreeModel.ZERO_THRESHOLD + " && " + value + " <= " + LightGBMTreeModel.ZERO_THRESHOLD + "))";
+	if (defaultLeft)
+	  return "(" + zero + " || " + value + " <= " + threshold + ")";
+	else
+	  return "(!" + zero + " && " + value + " <= " + threshold + ")";
+
+      default:
+	// NaN gets treated as 0
+	if (0.0 <= model.m_Threshold[n])
+	  return "!(" + value + " > " + threshold + ")";
+	else
+	  return value + " <= " + threshold;
+    }
+  }
+
+  /**
+   * Generates the nested branches for the node.
+   *
+   * @param model	the model
+   * @param tree	the tree index
+   * @param node	the node (negative for leaves)
+   * @param root	the root node of the method that is being generated
+   * @param indent	the indentation
+   * @param sizes	the estimated bytecode sizes of the subtrees
+   * @param code	for appending the code
+   * @param methods	for appending the methods of large subtrees
+   */
+  protected static void generateNode(LightGBMTreeModel model, int tree, int node, int root, String indent, int[] sizes, StringBuilder code, StringBuilder methods) {
+    int		n;
+    String	name;
+
+    if (node < 0) {
+      code.append(indent).append("return l[").append(~node).append("];\n");
+      return;
+    }
+
+    // large subtree? move it into its own method
+    if ((node != root) && (sizes[node] > MAX_SUBTREE_SIZE)) {
+      name = "t" + tree + "_" + node;
+      code.append(indent).append("return ").append(name).append("(r);\n");
+      methods.append("  private double ").append(name).append("(double[] r) {\n");
+      generateMethod(model, tree, node, sizes, methods);
+      return;
+    }
+
+    n = model.m_NodeOffsets[tree] + node;
+    if ((model.m_DecisionType[n] & LightGBMTreeModel.CATEGORICAL_MASK) != 0)
+      code.append(indent).append("if (c(r[").append(model.m_SplitFeature[n]).append("], c[").append(node).append("])) {\n");
+    else
+      code.append(indent).append("if (").append(numericCondition(model, tree, n)).append(") {\n");
+    generateNode(model, tree, model.m_LeftChild[n], root, indent + "  ", sizes, code, methods);
+    code.append(indent).append("} else {\n");
+    generateNode(model, tree, model.m_RightChild[n], root, indent + "  ", sizes, code, methods);
+    code.append(indent).append("}\n");
+  }
+
+  /**
+   * Generates the body of the method for the subtree, with the subtrees
+   * that are too large going into methods of their own. The body consists
+   * of the node and its children below {@link #MAX_SUBTREE_SIZE}, i.e., the
+   * method stays below twice that size.
+   *
+   * @param model	the model
+   * @param tree	the tree index
+   * @param node	the root of the subtree (negative for leaves)
+   * @param sizes	the estimated bytecode sizes of the subtrees
+   * @param code	for appending the code of the method (incl closing brace)
+   */
+  protected static void generateMethod(LightGBMTreeModel model, int tree, int node, int[] sizes, StringBuilder code) {
+    StringBuilder	body;
+    StringBuilder	methods;
+
+    body    = new StringBuilder();
+    methods = new StringBuilder();
+    generateNode(model, tree, node, node, "    ", sizes, body, methods);
+    code.append("    final double[] t = T[").append(tree).append("];\n");
+    code.append("    final double[] l = L[").append(tree).append("];\n");
+    code.append("    final int[][] c = C[").append(tree).append("];\n");
+    code.append(body);
+    code.append("  }\n\n");
+    code.append(methods);
+  }
+
+  /**
+   * Generates the source code for the model.
+   *
+   * @param model	the model to generate the code for
+   * @return		the source code
+   * @see #thresholds(LightGBMTreeModel)
+   * @see #leaves(LightGBMTreeModel)
+   * @see #bitsets(LightGBMTreeModel)
+   */
+  public static String generate(LightGBMTreeModel model) {
+    StringBuilder	code;
+    int[]		sizes;
+    int			i;
+    int			numTrees;
+    int			numOutputs;
+
+    code       = new StringBuilder();
+    numTrees   = model.getNumTrees();
+    numOutputs = model.getNumTreePerIteration();
+
+    // data of the trees
+    code.append("  private final double[][] T;\n");
+    code.append("  private final double[][] L;\n");
+    code.append("  private final int[][][] C;\n\n");
+    code.append("  public ").append(CLASS_NAME).append("(double[][] t, double[][] l, int[][][] c) {\n");
+    code.append("    T = t;\n");
+    code.append("    L = l;\n");
+    code.append("    C = c;\n");
+    code.append("  }\n\n");
+
+    // trees
+    for (i = 0; i < numTrees; i++) {
+      sizes = new int[model.m_NodeOffsets[i + 1] - model.m_NodeOffsets[i]];
+      if (sizes.length > 0)
+	estimateSizes(model, i, 0, sizes);
+      code.append("  private double t").append(i).append("(double[] r) {\n");
+      generateMethod(model, i, (sizes.length == 0) ? -1 : 0, sizes, code);
+    }
+
+    // chunks of trees
+    for (i = 0; i < numTrees; i++) {
+      if (i % TREES_PER_METHOD == 0)
+	code.append("  private void s").append(i / TREES_PER_METHOD).append("(double[] r, double[] o) {\n");
+      code.append("    o[").append(i % numOutputs).append("] += t").append(i).append("(r);\n");
+      if ((i % TREES_PER_METHOD == TREES_PER_METHOD - 1) || (i == numTrees - 1))
+	code.append("  }\n\n");
+    }
+
+    // entry point
+    code.append("  public void accept(double[] r, double[] o) {\n");
+    code.append("    java.util.Arrays.fill(o, 0, ").append(numOutputs).append(", 0.0);\n");
+    for (i = 0; i * TREES_PER_METHOD < numTrees; i++)
+      code.append("    s").append(i).append("(r, o);\n");
+    code.append("  }\n\n");
+
+    // categorical lookup
+    code.append("  private static boolean c(double v, int[] b) {\n");
+    code.append("    if (v != v) return false;\n");
+    code.append("    int i = (int) v;\n");
+    code.append("    if (i < 0 || i / 32 >= b.length) return false;\n");
+    code.append("    return ((b[i / 32] >>> (i % 32)) & 1) != 0;\n");
+    code.append("  }\n");
+
+    return "public final class " + CLASS_NAME + " implements java.util.function.BiConsumer<double[],double[]> {\n"
+      + code + "}\n";
+  }
+
+  /**
+   * Returns the thresholds of the splits per tree, for passing them to
+   * the constructor of the generated class.
+   *
+   * @param model	the model
+   * @return		the thresholds, indexed by tree and node
+   */
+  public static double[][] thresholds(LightGBMTreeModel model) {
+    double[][]	result;
+    int		i;
+
+    result = new double[model.getNumTrees()][];
+    for (i = 0; i < result.length; i++)
+      result[i] = Arrays.copyOfRange(model.m_Threshold, model.m_NodeOffsets[i], model.m_NodeOffsets[i + 1]);
+
+    return result;
+  }
+
+  /**
+   * Returns the leaf values per tree, for passing them to the constructor
+   * of the generated class.
+   *
+   * @param model	the model
+   * @return		the leaf values, indexed by tree and leaf
+   */
+  public static double[][] leaves(LightGBMTreeModel model) {
+    double[][]	result;
+    int		i;
+
+    result = new double[model.getNumTrees()][];
+    for (i = 0; i < result.length; i++)
+      result[i] = Arrays.copyOfRange(model.m_LeafValue, model.m_LeafOffsets[i], model.m_LeafOffsets[i + 1]);
+
+    return result;
+  }
+
+  /**
+   * Returns the bitsets of the categorical splits per tree, for passing
+   * them to the constructor of the generated class.
+   *
+   * @param model	the model
+   * @return		the bitsets, indexed by tree and node (null for numeric splits)
+   */
+  public static int[][][] bitsets(LightGBMTreeModel model) {
+    int[][][]	result;
+    int		i;
+    int		node;
+    int		n;
+    int		catIndex;
+    int		from;
+    int		to;
+
+    result = new int[model.getNumTrees()][][];
+    for (i = 0; i < result.length; i++) {
+      result[i] = new int[model.m_NodeOffsets[i + 1] - model.m_NodeOffsets[i]][];
+      for (node = 0; node < result[i].length; node++) {
+	n = model.m_NodeOffsets[i] + node;
+	if ((model.m_DecisionType[n] & LightGBMTreeModel.CATEGORICAL_MASK) == 0)
+	  continue;
+	catIndex           = model.m_CatOffsets[i] + (int) model.m_Threshold[n];
+	from               = model.m_BitsetOffsets[i] + model.m_CatBoundaries[catIndex];
+	to                 = model.m_BitsetOffsets[i] + model.m_CatBoundaries[catIndex + 1];
+	result[i][node]    = Arrays.copyOfRange(model.m_CatThreshold, from, to);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Compiles the model into a class and instantiates it.
+   *
+   * @param model	the model to compile
+   * @return		the compiled scorer, computing the raw scores
+   * @throws Exception	if the model cannot be compiled
+   */
+  @SuppressWarnings("unchecked")
+  public static BiConsumer<double[],double[]> compile(LightGBMTreeModel model) throws Exception {
+    JavaCompiler			compiler;
+    StandardJavaFileManager		standard;
+    ForwardingJavaFileManager<StandardJavaFileManager>	manager;
+    final ByteArrayOutputStream		bytecode;
+    JavaFileObject			source;
+    StringWriter			errors;
+    String				msg;
+    Class<?>				cls;
+
+    msg = canCompile(model);
+    if (msg != null)
+      throw new IllegalArgumentException(msg);
+
+    compiler = ToolProvider.getSystemJavaCompiler();
+    bytecode = new ByteArrayOutputStream();
+    source   = new SimpleJavaFileObject(URI.create("string:///" + CLASS_NAME + ".java"), JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+	return generate(model);
+      }
+    };
+    standard = compiler.getStandardFileManager(null, null, null);
+    manager  = new ForwardingJavaFileManager<StandardJavaFileManager>(standard) {
+      @Override
+      public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+	return new SimpleJavaFileObject(URI.create("mem:///" + className + kind.extension), kind) {
+	  @Override
+	  public OutputStream openOutputStream() {
+	    return bytecode;
+	  }
+	};
+      }
+    };
+    errors = new StringWriter();
+    try {
+      if (!compiler.getTask(errors, manager, null, Arrays.asList("-g:none", "-nowarn"), null, Arrays.asList(source)).call())
+	throw new IllegalStateException("Failed to compile model:\n" + errors);
+    }
+    finally {
+      manager.close();
+    }
+
+    cls = new ScorerClassLoader(LightGBMCompiler.class.getClassLoader(), bytecode.toByteArray()).loadClass(CLASS_NAME);
+    return (BiConsumer<double[],double[]>) cls
+      .getDeclaredConstructor(double[][].class, double[][].class, int[][][].class)
+      .newInstance(thresholds(model), leaves(model), bitsets(model));
+  }
+}
@@ -0,0 +1,370 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMCrossValidation.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import io.github.metarank.lightgbm4j.LGBMBooster;
+import io.github.metarank.lightgbm4j.LGBMDataset;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Native k-fold cross-validation for LightGBM. The data gets converted and
+ * binned only once, the folds are subsets of that dataset that share its
+ * bin mappers. The folds get trained concurrently on a bounded thread pool,
+ * with the LightGBM threads split between the concurrent folds. The folds
+ * are the same as the ones of Weka's cross-validation when using the same
+ * random number generator.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LightGBMCrossValidation {
+
+  /**
+   * The metrics of the cross-validation.
+   */
+  public static class Result
+    implements Serializable {
+
+    private static final long serialVersionUID = 2640837598235587106L;
+
+    /** the names of the metrics. */
+    protected String[] m_MetricNames;
+
+    /** the metrics per fold (fold x metric). */
+    protected double[][] m_FoldMetrics;
+
+    /** the number of iterations per fold. */
+    protected int[] m_FoldIterations;
+
+    /**
+     * Initializes the result.
+     *
+     * @param metricNames	the names of the metrics
+     * @param foldMetrics	the metrics per fold
+     * @param foldIterations	the number of iterations per fold
+     */
+    public Result(String[] metricNames, double[][] foldMetrics, int[] foldIterations) {
+      m_MetricNames    = metricNames;
+      m_FoldMetrics    = foldMetrics;
+      m_FoldIterations = foldIterations;
+    }
+
+    /**
+     * Returns the number of folds.
+     *
+     * @return		the number of folds
+     */
+    public int getNumFolds() {
+      return m_FoldMetrics.length;
+    }
+
+    /**
+     * Returns the names of the metrics.
+     *
+     * @return		the names
+     */
+    public String[] getMetricNames() {
+      return m_MetricNames;
+    }
+
+    /**
+     * Returns the metrics of the fold.
+     *
+     * @param fold	the fold index
+     * @return		the metrics, same order as the names
+     */
+    public double[] getFoldMetrics(int fold) {
+      return m_FoldMetrics[fold];
+    }
+
+    /**
+     * Returns the number of iterations that were trained for the fold.
+     *
+     * @param fold	the fold index
+     * @return		the number of iterations
+     */
+    public int getFoldIterations(int fold) {
+      return m_FoldIterations[fold];
+    }
+
+    /**
+     * Returns the values of the metric across the folds.
+     *
+     * @param metric	the metric index
+     * @return		the values
+     */
+    protected double[] values(int metric) {
+      double[]	result;
+      int	i;
+
+      result = new double[m_FoldMetrics.length];
+      for (i = 0; i < m_FoldMetrics.length; i++)
+	result[i] = m_FoldMetrics[i][metric];
+
+      return result;
+    }
+
+    /**
+     * Returns the mean of the metric across the folds.
+     *
+     * @param metric	the metric index
+     * @return		the mean
+     */
+    public double getMean(int metric) {
+      return Utils.mean(values(metric));
+    }
+
+    /**
+     * Returns the standard deviation of the metric across the folds.
+     *
+     * @param metric	the metric index
+     * @return		the standard deviation
+     */
+    public double getStdDev(int metric) {
+      if (m_FoldMetrics.length < 2)
+	return 0.0;
+      return Math.sqrt(Utils.variance(values(metric)));
+    }
+
+    /**
+     * Returns the per-fold and aggregated metrics as table.
+     *
+     * @return		the table
+     */
+    @Override
+    public String toString() {
+      StringBuilder	result;
+      int		i;
+      int		n;
+
+      result = new StringBuilder();
+      result.append(String.format("%-8s %10s", "Fold", "Iterations"));
+      for (String name: m_MetricNames)
+	result.append(String.format(" %20s", name));
+      result.append("\n");
+      for (i = 0; i < m_FoldMetrics.length; i++) {
+	result.append(String.format("%-8d %10d", i + 1, m_FoldIterations[i]));
+	for (n = 0; n < m_MetricNames.length; n++)
+	  result.append(String.format(" %20s", Utils.doubleToString(m_FoldMetrics[i][n], 6)));
+	result.append("\n");
+      }
+      result.append(String.format("%-8s %10s", "Mean", ""));
+      for (n = 0; n < m_MetricNames.length; n++)
+	result.append(String.format(" %20s", Utils.doubleToString(getMean(n), 6)));
+      result.append("\n");
+      result.append(String.format("%-8s %10s", "StdDev", ""));
+      for (n = 0; n < m_MetricNames.length; n++)
+	result.append(String.format(" %20s", Utils.doubleToString(getStdDev(n), 6)));
+      result.append("\n");
+
+      return result.toString();
+    }
+  }
+
+  /**
+   * Returns the row indices of the test fold, using the same fold sizes
+   * as {@link Instances#testCV(int, int)}.
+   *
+   * @param numRows	the number of rows
+   * @param numFolds	the number of folds
+   * @param fold	the fold index
+   * @param test	whether to return the test or the train indices
+   * @return		the sorted indices
+   */
+  protected static int[] foldRows(int numRows, int numFolds, int fold, boolean test) {
+    int[]	result;
+    int		numTest;
+    int		offset;
+    int		first;
+    int		i;
+    int		n;
+
+    numTest = numRows / numFolds;
+    if (fold < numRows % numFolds) {
+      numTest++;
+      offset = fold;
+    }
+    else {
+      offset = numRows % numFolds;
+    }
+    first = fold * (numRows / numFolds) + offset;
+
+    if (test) {
+      result = new int[numTest];
+      for (i = 0; i < numTest; i++)
+	result[i] = first + i;
+    }
+    else {
+      result = new int[numRows - numTest];
+      n = 0;
+      for (i = 0; i < numRows; i++) {
+	if ((i < first) || (i >= first + numTest))
+	  result[n++] = i;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Trains and evaluates a single fold.
+   *
+   * @param dataset	the full dataset
+   * @param numFolds	the number of folds
+   * @param fold	the fold index
+   * @param parameters	the booster parameters
+   * @param numIterations	the number of iterations to train
+   * @param metrics	for storing the metrics of the fold
+   * @param names	for storing the metric names
+   * @param iterations	for storing the number of iterations of the fold
+   * @throws Exception	if training fails
+   */
+  protected static void trainFold(LGBMDataset dataset, int numFolds, int fold, String parameters, int numIterations, double[][] metrics, String[][] names, int[] iterations) throws Exception {
+    LGBMDataset		train;
+    LGBMDataset		test;
+    LGBMBooster		booster;
+    int			numRows;
+    int			i;
+
+    train   = null;
+    test    = null;
+    booster = null;
+    try {
+      synchronized (dataset) {
+	numRows = dataset.getNumData();
+	train   = LightGBMUtils.subset(dataset, foldRows(numRows, numFolds, fold, false));
+	test    = LightGBMUtils.subset(dataset, foldRows(numRows, numFolds, fold, true));
+      }
+      booster = LGBMBooster.create(train, parameters);
+      booster.addValidData(test);
+      for (i = 0; i < numIterations; i++) {
+	if (booster.updateOneIter())
+	  break;
+      }
+      iterations[fold] = i;
+      names[fold]      = booster.getEvalNames();
+      metrics[fold]    = booster.getEval(1);
+    }
+    finally {
+      if (booster != null)
+	booster.close();
+      if (train != null)
+	train.close();
+      if (test != null)
+	test.close();
+    }
+  }
+
+  /**
+   * Cross-validates the classifier setup on the data.
+   *
+   * @param classifier	the classifier setup to evaluate
+   * @param data	the data to use
+   * @param numFolds	the number of folds
+   * @param numThreads	the total number of threads to request from the JVM-wide budget, less than 1 for as many as available
+   * @param random	the random number generator for randomizing the data
+   * @return		the metrics
+   * @throws Exception	if cross-validation fails
+   */
+  public static Result crossValidate(LightGBM classifier, Instances data, int numFolds, int numThreads, Random random) throws Exception {
+    LGBMDataset		dataset;
+    ExecutorService	executor;
+    List<Future<?>>	futures;
+    String		parameters;
+    int			poolSize;
+    int			threadsPerFold;
+    double[][]		metrics;
+    String[][]		names;
+    int[]		iterations;
+    int			i;
+
+    if (numFolds < 2)
+      throw new IllegalArgumentException("Number of folds must be at least 2: " + numFolds);
+
+    classifier.getCapabilities().testWithFail(data);
+
+    data = new Instances(data);
+    data.deleteWithMissingClass();
+    if (data.numInstances() < numFolds)
+      throw new IllegalArgumentException("Cannot have less data than folds: " + data.numInstances() + " < " + numFolds);
+    data.randomize(random);
+    if (data.classAttribute().isNominal())
+      data.stratify(numFolds);
+
+    // user-supplied num_threads takes precedence, as LightGBM uses the first occurrence
+    parameters = classifier.actualParameters(data);
+    numThreads = LightGBMThreads.acquire(numThreads);
+    dataset    = null;
+    executor   = null;
+    try {
+      poolSize       = Math.min(numFolds, numThreads);
+      threadsPerFold = Math.max(1, numThreads / poolSize);
+      parameters    += " num_threads=" + threadsPerFold;
+      if (classifier.getDebug())
+	System.out.println("Cross-validation: " + poolSize + " concurrent fold(s), parameters: " + parameters);
+
+      metrics    = new double[numFolds][];
+      names      = new String[numFolds][];
+      iterations = new int[numFolds];
+      dataset    = LightGBMUtils.fromInstances(data, null, classifier.getSinglePrecision(), classifier.datasetParameters(data, numThreads));
+      executor   = Executors.newFixedThreadPool(poolSize);
+      futures = new ArrayList<>();
+      for (i = 0; i < numFolds; i++) {
+	final int fold = i;
+	final String params = parameters;
+	final LGBMDataset ds = dataset;
+	futures.add(executor.submit(() -> {
+	  trainFold(ds, numFolds, fold, params, classifier.getNumIterations(), metrics, names, iterations);
+	  return null;
+	}));
+      }
+      for (Future<?> future: futures) {
+	try {
+	  future.get();
+	}
+	catch (ExecutionException e) {
+	  executor.shutdownNow();
+	  if (e.getCause() instanceof Exception)
+	    throw (Exception) e.getCause();
+	  throw e;
+	}
+      }
+    }
+    finally {
+      if (executor != null)
+	executor.shutdownNow();
+      if (dataset != null)
+	dataset.close();
+      LightGBMThreads.release(numThreads);
+    }
+
+    return new Result(names[0], metrics, iterations);
+  }
+}
@@ -0,0 +1,326 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMDatasetCache.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import com.microsoft.ml.lightgbm.lightgbmlib;
+import io.github.metarank.lightgbm4j.LGBMDataset;
+import io.github.metarank.lightgbm4j.LGBMException;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * On-disk cache for LightGBM datasets in LightGBM's binary format, which
+ * already contains the binned feature values. Repeated training on the same
+ * data can therefore skip the conversion and the binning. Entries are keyed
+ * by a content hash of the data (header, values and weights) and of the
+ * dataset parameters (except the number of threads). The oldest entries
+ * get removed once the size of the cache exceeds its limit.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LightGBMDatasetCache {
+
+  /** the extension for the cache files. */
+  public final static String EXTENSION = ".bin";
+
+  /** the cache directory. */
+  protected File m_Directory;
+
+  /** the maximum size of the cache in bytes (0 = unlimited). */
+  protected long m_MaxSize;
+
+  /**
+   * Initializes the cache.
+   *
+   * @param dir		the directory for the cache files
+   * @param maxSize	the maximum size in bytes, 0 for unlimited
+   */
+  public LightGBMDatasetCache(File dir, long maxSize) {
+    m_Directory = dir;
+    m_MaxSize   = Math.max(0, maxSize);
+  }
+
+  /**
+   * Returns the cache directory.
+   *
+   * @return		the directory
+   */
+  public File getDirectory() {
+    return m_Directory;
+  }
+
+  /**
+   * Returns the maximum size of the cache.
+   *
+   * @return		the size in bytes, 0 for unlimited
+   */
+  public long getMaxSize() {
+    return m_MaxSize;
+  }
+
+  /**
+   * Computes the content hash for the data.
+   *
+   * @param data	the data to compute the hash for
+   * @param float32	whether 32-bit floats are used instead of 64-bit doubles
+   * @return		the hash (hex string)
+   * @throws Exception	if hashing fails
+   * @see #key(Instances, boolean, String)
+   */
+  public static String key(Instances data, boolean float32) throws Exception {
+    return key(data, float32, "");
+  }
+
+  /**
+   * Computes the content hash for the data and the dataset parameters
+   * (which influence the binning). The number of threads gets ignored,
+   * as it has no influence on the dataset, as does the order of the
+   * parameters.
+   *
+   * @param data	the data to compute the hash for
+   * @param float32	whether 32-bit floats are used instead of 64-bit doubles
+   * @param parameters	the dataset parameters (blank-separated key=value pairs)
+   * @return		the hash (hex string)
+   * @throws Exception	if hashing fails
+   */
+  public static String key(Instances data, boolean float32, String parameters) throws Exception {
+    MessageDigest	digest;
+    ByteBuffer		buffer;
+    StringBuilder	result;
+    Map<String,String>	params;
+    int			i;
+
+    params = new TreeMap<>(LightGBMParameters.parse(parameters));
+    params.remove("num_threads");
+
+    digest = MessageDigest.getInstance("SHA-256");
+    // no parameters result in the same keys as before
+    if (!params.isEmpty()) {
+      digest.update(LightGBMParameters.toString(params).getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    digest.update(new Instances(data, 0).toString().getBytes(StandardCharsets.UTF_8));
+    buffer = ByteBuffer.allocate(16 * (data.numAttributes() + 2));
+    buffer.putInt(data.classIndex());
+    buffer.put((byte) (float32 ? 1 : 0));
+    for (Instance inst: data) {
+      buffer.put((byte) ((inst instanceof SparseInstance) ? 1 : 0));
+      buffer.putDouble(inst.weight());
+      buffer.putInt(inst.numValues());
+      for (i = 0; i < inst.numValues(); i++) {
+	buffer.putInt(inst.index(i));
+	buffer.putDouble(inst.valueSparse(i));
+      }
+      digest.update(buffer.array(), 0, buffer.position());
+      buffer.clear();
+    }
+
+    result = new StringBuilder();
+    for (byte b: digest.digest())
+      result.append(String.format("%02x", b));
+
+    return result.toString();
+  }
+
+  /**
+   * Returns the cache file for the key.
+   *
+   * @param key		the key
+   * @return		the file
+   */
+  protected File file(String key) {
+    return new File(m_Directory, key + EXTENSION);
+  }
+
+  /**
+   * Loads the dataset from the cache.
+   *
+   * @param key		the key of the dataset
+   * @return		the dataset, null if not cached
+   * @throws LGBMException	if loading fails, the entry gets removed in that case
+   * @see #load(String, String)
+   */
+  public LGBMDataset load(String key) throws LGBMException {
+    return load(key, "");
+  }
+
+  /**
+   * Loads the dataset from the cache, using the dataset parameters that
+   * it was constructed with (LightGBM checks the binning parameters
+   * against the ones stored in the file).
+   *
+   * @param key		the key of the dataset
+   * @param parameters	the dataset parameters (blank-separated key=value pairs)
+   * @return		the dataset, null if not cached
+   * @throws LGBMException	if loading fails, the entry gets removed in that case
+   */
+  public LGBMDataset load(String key, String parameters) throws LGBMException {
+    File	file;
+
+    file = file(key);
+    if (!file.isFile())
+      return null;
+
+    LightGBMUtils.loadNative();
+    file.setLastModified(System.currentTimeMillis());
+    try {
+      return LGBMDataset.createFromFile(file.getAbsolutePath(), parameters, null);
+    }
+    catch (LGBMException e) {
+      file.delete();
+      throw e;
+    }
+  }
+
+  /**
+   * Stores the dataset in the cache. Writes to a temporary file first
+   * (which must not exist, as LightGBM refuses to overwrite files),
+   * which gets renamed afterwards. Evicts old entries if necessary.
+   *
+   * @param key		the key of the dataset
+   * @param dataset	the dataset to store
+   * @throws Exception	if storing fails
+   */
+  public void store(String key, LGBMDataset dataset) throws Exception {
+    File	tmp;
+    int		code;
+
+    if (!m_Directory.exists() && !m_Directory.mkdirs())
+      throw new IOException("Failed to create cache directory: " + m_Directory);
+
+    tmp = new File(m_Directory, key + "-" + UUID.randomUUID() + ".tmp");
+    try {
+      code = lightgbmlib.LGBM_DatasetSaveBinary(dataset.handle, tmp.getAbsolutePath());
+      if (code < 0)
+	throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+      if (tmp.length() == 0)
+	throw new IOException("Failed to write dataset: " + tmp);
+      Files.move(tmp.toPath(), file(key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally {
+      if (tmp.exists())
+	tmp.delete();
+    }
+
+    evict();
+  }
+
+  /**
+   * Removes the least recently used entries until the size of the cache
+   * is within its limit.
+   */
+  protected void evict() {
+    File[]	files;
+    long	total;
+    int		i;
+
+    if (m_MaxSize == 0)
+      return;
+
+    files = m_Directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+    if (files == null)
+      return;
+
+    total = 0;
+    for (File file: files)
+      total += file.length();
+    if (total <= m_MaxSize)
+      return;
+
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (i = 0; (i < files.length) && (total > m_MaxSize); i++) {
+      total -= files[i].length();
+      files[i].delete();
+    }
+  }
+
+  /**
+   * Returns the dataset for the data from the cache, or converts the data
+   * and adds the dataset to the cache. Failures of the cache itself only
+   * get reported, the data gets converted in that case.
+   *
+   * @param data	the data to convert
+   * @param float32	whether to use 32-bit floats instead of 64-bit doubles
+   * @param debug	whether to output debugging information
+   * @return		the dataset
+   * @throws Exception	if conversion fails
+   */
+  public LGBMDataset fromInstances(Instances data, boolean float32, boolean debug) throws Exception {
+    return fromInstances(data, float32, "", debug);
+  }
+
+  /**
+   * Returns the dataset for the data from the cache, or converts the data
+   * (using the dataset parameters) and adds the dataset to the cache.
+   *
+   * @param data	the data to convert
+   * @param float32	whether to use 32-bit floats instead of 64-bit doubles
+   * @param parameters	the dataset parameters (blank-separated key=value pairs)
+   * @param debug	whether to output debugging information
+   * @return		the dataset
+   * @throws Exception	if conversion fails
+   * @see #fromInstances(Instances, boolean, boolean)
+   */
+  public LGBMDataset fromInstances(Instances data, boolean float32, String parameters, boolean debug) throws Exception {
+    LGBMDataset		result;
+    String		key;
+
+    key    = null;
+    result = null;
+    try {
+      key    = key(data, float32, parameters);
+      result = load(key, parameters);
+      if (debug)
+	System.out.println("Dataset cache " + ((result == null) ? "miss" : "hit") + ": " + key);
+    }
+    catch (Exception e) {
+      System.err.println("Failed to load dataset from cache, converting data instead: " + e.getMessage());
+    }
+    if (result != null)
+      return result;
+
+    result = LightGBMUtils.fromInstances(data, null, float32, parameters);
+    if (key != null) {
+      try {
+	store(key, result);
+      }
+      catch (Exception e) {
+	System.err.println("Failed to store dataset in cache: " + e.getMessage());
+      }
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,340 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMMappedTreeModel.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Pure-Java tree ensemble whose node and leaf arrays are memory-mapped
+ * from a file in the binary layout of {@link LightGBMTreeModel}, rather than
+ * being loaded onto the Java heap. The pages are backed by the OS page
+ * cache, i.e., processes on the same host that map the same file share
+ * the memory. Only the small per-tree offset arrays reside on the heap.
+ * <br>
+ * Mapped models are not serializable.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LightGBMMappedTreeModel
+  extends LightGBMTreeModel {
+
+  private static final long serialVersionUID = -4319541872209455102L;
+
+  /** the extension of the files with the binary layout. */
+  public final static String EXTENSION = ".trees";
+
+  /** the feature used by each split. */
+  protected transient IntBuffer m_SplitFeatureBuffer;
+
+  /** the threshold of each split. */
+  protected transient DoubleBuffer m_ThresholdBuffer;
+
+  /** the decision type of each split. */
+  protected transient ByteBuffer m_DecisionTypeBuffer;
+
+  /** the left child of each split. */
+  protected transient IntBuffer m_LeftChildBuffer;
+
+  /** the right child of each split. */
+  protected transient IntBuffer m_RightChildBuffer;
+
+  /** the value of each leaf. */
+  protected transient DoubleBuffer m_LeafValueBuffer;
+
+  /** the categorical boundaries. */
+  protected transient IntBuffer m_CatBoundariesBuffer;
+
+  /** the categorical bitsets. */
+  protected transient IntBuffer m_CatThresholdBuffer;
+
+  /**
+   * Returns the total number of leaves across all trees.
+   *
+   * @return		the number of leaves
+   */
+  @Override
+  public int getNumLeaves() {
+    return m_LeafValueBuffer.limit();
+  }
+
+  /**
+   * Returns the index of the leaf that the row ends up in.
+   *
+   * @param tree	the index of the tree
+   * @param row		the feature values
+   * @return		the (global) index of the leaf
+   */
+  @Override
+  public int leafIndex(int tree, double[] row) {
+    int		nodeOffset;
+    int		node;
+    int		n;
+    int		type;
+    int		missing;
+    int		catIndex;
+    int		bitsetOffset;
+    int		intValue;
+    int		pos;
+    double	value;
+
+    nodeOffset = m_NodeOffsets[tree];
+    if (m_NodeOffsets[tree + 1] == nodeOffset)
+      return m_LeafOffsets[tree];
+
+    node = 0;
+    while (node >= 0) {
+      n     = nodeOffset + node;
+      value = row[m_SplitFeatureBuffer.get(n)];
+      type  = m_DecisionTypeBuffer.get(n);
+      if ((type & CATEGORICAL_MASK) != 0) {
+	intValue = Double.isNaN(value) ? -1 : (int) value;
+	node     = m_RightChildBuffer.get(n);
+	if (intValue >= 0) {
+	  catIndex     = m_CatOffsets[tree] + (int) m_ThresholdBuffer.get(n);
+	  bitsetOffset = m_BitsetOffsets[tree] + m_CatBoundariesBuffer.get(catIndex);
+	  pos          = intValue / 32;
+	  if ((pos < m_CatBoundariesBuffer.get(catIndex + 1) - m_CatBoundariesBuffer.get(catIndex))
+	    && (((m_CatThresholdBuffer.get(bitsetOffset + pos) >>> (intValue % 32)) & 1) != 0))
+	    node = m_LeftChildBuffer.get(n);
+	}
+      }
+      else {
+	missing = (type >> 2) & 3;
+	if (Double.isNaN(value) && (missing != MISSING_NAN))
+	  value = 0.0;
+	if (((missing == MISSING_ZERO) && (value >= -ZERO_THRESHOLD) && (value <= ZERO_THRESHOLD))
+	  || ((missing == MISSING_NAN) && Double.isNaN(value)))
+	  node = ((type & DEFAULT_LEFT_MASK) != 0) ? m_LeftChildBuffer.get(n) : m_RightChildBuffer.get(n);
+	else
+	  node = (value <= m_ThresholdBuffer.get(n)) ? m_LeftChildBuffer.get(n) : m_RightChildBuffer.get(n);
+      }
+    }
+
+    return m_LeafOffsets[tree] + ~node;
+  }
+
+  /**
+   * Computes the raw scores (before output transformation) for the row.
+   *
+   * @param row		the feature values
+   * @param output	the array for the raw scores, numTreePerIteration long
+   */
+  @Override
+  public void predictRaw(double[] row, double[] output) {
+    int		i;
+
+    for (i = 0; i < m_NumTreePerIteration; i++)
+      output[i] = 0.0;
+    for (i = 0; i < getNumTrees(); i++)
+      output[i % m_NumTreePerIteration] += m_LeafValueBuffer.get(leafIndex(i, row));
+  }
+
+  /**
+   * Not supported, as the arrays are not on the heap.
+   *
+   * @param out		ignored
+   * @throws IOException	always
+   */
+  @Override
+  public void write(DataOutputStream out) throws IOException {
+    throw new IOException("Mapped models cannot be written, copy the file instead!");
+  }
+
+  /**
+   * Returns the section of the buffer at its current position and advances
+   * the position past the section.
+   *
+   * @param buffer	the buffer
+   * @param numBytes	the size of the section in bytes
+   * @return		the section
+   */
+  protected static ByteBuffer section(ByteBuffer buffer, int numBytes) {
+    ByteBuffer	result;
+
+    result = buffer.duplicate();
+    result.limit(buffer.position() + numBytes);
+    result = result.slice();
+    buffer.position(buffer.position() + numBytes);
+
+    return result;
+  }
+
+  /**
+   * Reads an int array (length followed by values) onto the heap.
+   *
+   * @param buffer	the buffer to read from
+   * @return		the values
+   */
+  protected static int[] readInts(ByteBuffer buffer) {
+    int[]	result;
+
+    result = new int[buffer.getInt()];
+    buffer.asIntBuffer().get(result);
+    buffer.position(buffer.position() + result.length * 4);
+
+    return result;
+  }
+
+  /**
+   * Maps an int array (length followed by values).
+   *
+   * @param buffer	the buffer to map from
+   * @return		the values
+   */
+  protected static IntBuffer mapInts(ByteBuffer buffer) {
+    return section(buffer, buffer.getInt() * 4).asIntBuffer();
+  }
+
+  /**
+   * Maps a double array (length followed by values).
+   *
+   * @param buffer	the buffer to map from
+   * @return		the values
+   */
+  protected static DoubleBuffer mapDoubles(ByteBuffer buffer) {
+    return section(buffer, buffer.getInt() * 8).asDoubleBuffer();
+  }
+
+  /**
+   * Reads a string written with DataOutput.writeUTF.
+   *
+   * @param buffer	the buffer to read from
+   * @return		the string
+   * @throws IOException	if decoding fails
+   */
+  protected static String readUTF(ByteBuffer buffer) throws IOException {
+    byte[]	data;
+    int		len;
+
+    len     = buffer.getShort() & 0xFFFF;
+    data    = new byte[len + 2];
+    data[0] = (byte) (len >> 8);
+    data[1] = (byte) len;
+    buffer.get(data, 2, len);
+
+    return new DataInputStream(new ByteArrayInputStream(data)).readUTF();
+  }
+
+  /**
+   * Memory-maps the file with the binary layout.
+   *
+   * @param file	the file to map
+   * @return		the model
+   * @throws IOException	if mapping fails
+   */
+  public static LightGBMMappedTreeModel map(File file) throws IOException {
+    LightGBMMappedTreeModel	result;
+    MappedByteBuffer		buffer;
+    int				version;
+    int				i;
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      // the mapping stays valid after closing the channel
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    version = buffer.getInt();
+    if ((version < 1) || (version > BINARY_VERSION))
+      throw new IOException("Unsupported binary layout version: " + version);
+
+    result = new LightGBMMappedTreeModel();
+    result.m_NumTreePerIteration = buffer.getInt();
+    result.m_MaxFeatureIndex     = buffer.getInt();
+    result.m_OutputType          = buffer.getInt();
+    result.m_Sigmoid             = buffer.getDouble();
+    result.m_AverageOutput       = (version >= 2) && (buffer.get() != 0);
+    result.m_FeatureNames        = new String[buffer.getInt()];
+    for (i = 0; i < result.m_FeatureNames.length; i++)
+      result.m_FeatureNames[i] = readUTF(buffer);
+    result.m_NodeOffsets         = readInts(buffer);
+    result.m_LeafOffsets         = readInts(buffer);
+    result.m_CatOffsets          = readInts(buffer);
+    result.m_BitsetOffsets       = readInts(buffer);
+    result.m_SplitFeatureBuffer  = mapInts(buffer);
+    result.m_ThresholdBuffer     = mapDoubles(buffer);
+    result.m_DecisionTypeBuffer  = section(buffer, buffer.getInt());
+    result.m_LeftChildBuffer     = mapInts(buffer);
+    result.m_RightChildBuffer    = mapInts(buffer);
+    result.m_LeafValueBuffer     = mapDoubles(buffer);
+    result.m_CatBoundariesBuffer = mapInts(buffer);
+    result.m_CatThresholdBuffer  = mapInts(buffer);
+
+    return result;
+  }
+
+  /**
+   * Returns the file with the binary layout that belongs to the model text
+   * file.
+   *
+   * @param modelFile	the model text file
+   * @return		the file with the binary layout
+   */
+  public static File treesFile(File modelFile) {
+    String	name;
+
+    name = modelFile.getName();
+    if (name.lastIndexOf('.') > -1)
+      name = name.substring(0, name.lastIndexOf('.'));
+
+    return new File(modelFile.getParentFile(), name + EXTENSION);
+  }
+
+  /**
+   * Memory-maps the binary layout of the model text file. If the file with
+   * the binary layout does not exist yet, the model text gets parsed once
+   * and the binary layout written next to it (shared by all processes
+   * using the same model file).
+   *
+   * @param modelFile	the model text file
+   * @return		the model
+   * @throws IOException	if parsing, writing or mapping fails
+   */
+  public static LightGBMMappedTreeModel mapModel(File modelFile) throws IOException {
+    File	trees;
+    File	tmp;
+
+    trees = treesFile(modelFile);
+    if (!trees.exists()) {
+      tmp = File.createTempFile("trees", ".tmp", modelFile.getParentFile());
+      try {
+	Files.write(tmp.toPath(), parse(new String(Files.readAllBytes(modelFile.toPath()))).toBytes());
+	LightGBMUtils.publish(tmp, trees);
+      }
+      finally {
+	if (tmp.exists())
+	  tmp.delete();
+      }
+    }
+
+    return map(trees);
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMModelCodec.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import weka.core.Tag;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes/decodes the payloads stored in a serialized model (model text,
+ * binary tree layout) with a choice of codecs. Each payload starts with a
+ * small header (magic, codec, uncompressed length), which allows decoding
+ * into a single array of the right size. Payloads without the header are
+ * treated as plain gzip data, as stored by older versions.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LightGBMModelCodec {
+
+  /** no compression. */
+  public static final int CODEC_NONE = 0;
+
+  /** gzip compression. */
+  public static final int CODEC_GZIP = 1;
+
+  /** deflate, fastest compression level. */
+  public static final int CODEC_DEFLATE_FAST = 2;
+
+  /** deflate, best compression level. */
+  public static final int CODEC_DEFLATE_BEST = 3;
+
+  /** the codecs. */
+  public static final Tag[] TAGS_CODEC = {
+    new Tag(CODEC_NONE, "NONE", "No compression"),
+    new Tag(CODEC_GZIP, "GZIP", "Gzip"),
+    new Tag(CODEC_DEFLATE_FAST, "DEFLATE_FAST", "Deflate (fastest)"),
+    new Tag(CODEC_DEFLATE_BEST, "DEFLATE_BEST", "Deflate (best compression)"),
+  };
+
+  /** the magic bytes at the start of a payload. */
+  public final static byte[] MAGIC = {'L', 'G', 'B', 'M'};
+
+  /** the buffer size for the streams. */
+  public final static int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Encodes the data with the specified codec.
+   *
+   * @param data	the data to encode
+   * @param codec	the codec to use (CODEC_*)
+   * @return		the payload
+   * @throws IOException	if encoding fails
+   */
+  public static byte[] encode(byte[] data, int codec) throws IOException {
+    ByteArrayOutputStream	bos;
+    DataOutputStream		dos;
+    GZIPOutputStream		gos;
+    DeflaterOutputStream	zos;
+    Deflater			deflater;
+
+    bos = new ByteArrayOutputStream((codec == CODEC_NONE) ? data.length + 9 : data.length / 4 + 9);
+    dos = new DataOutputStream(bos);
+    dos.write(MAGIC);
+    dos.writeByte(codec);
+    dos.writeInt(data.length);
+    dos.flush();
+
+    switch (codec) {
+      case CODEC_NONE:
+	bos.write(data);
+	break;
+
+      case CODEC_GZIP:
+	gos = new GZIPOutputStream(bos, BUFFER_SIZE);
+	gos.write(data);
+	gos.close();
+	break;
+
+      case CODEC_DEFLATE_FAST:
+      case CODEC_DEFLATE_BEST:
+	deflater = new Deflater((codec == CODEC_DEFLATE_FAST) ? Deflater.BEST_SPEED : Deflater.BEST_COMPRESSION);
+	try {
+	  zos = new DeflaterOutputStream(bos, deflater, BUFFER_SIZE);
+	  zos.write(data);
+	  zos.close();
+	}
+	finally {
+	  deflater.end();
+	}
+	break;
+
+      default:
+	throw new IllegalArgumentException("Unknown codec: " + codec);
+    }
+
+    return bos.toByteArray();
+  }
+
+  /**
+   * Checks whether the payload has a header.
+   *
+   * @param payload	the payload to check
+   * @return		true if header present
+   */
+  protected static boolean hasHeader(byte[] payload) {
+    int		i;
+
+    if (payload.length < MAGIC.length + 5)
+      return false;
+    for (i = 0; i < MAGIC.length; i++) {
+      if (payload[i] != MAGIC[i])
+	return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the codec of the payload.
+   *
+   * @param payload	the payload
+   * @return		the codec (CODEC_*)
+   */
+  public static int codec(byte[] payload) {
+    if (hasHeader(payload))
+      return payload[MAGIC.length];
+    else
+      return CODEC_GZIP;
+  }
+
+  /**
+   * Reads the stream fully into the array.
+   *
+   * @param input	the stream to read from
+   * @param data	the array to fill
+   * @throws IOException	if reading fails or stream too short
+   */
+  protected static void readFully(InputStream input, byte[] data) throws IOException {
+    new DataInputStream(input).readFully(data);
+  }
+
+  /**
+   * Decodes the payload.
+   *
+   * @param payload	the payload to decode
+   * @return		the data
+   * @throws IOException	if decoding fails
+   */
+  public static byte[] decode(byte[] payload) throws IOException {
+    ByteArrayInputStream	bis;
+    ByteArrayOutputStream	bos;
+    DataInputStream		dis;
+    Inflater			inflater;
+    byte[]			result;
+    int				codec;
+    int				length;
+
+    // legacy: plain gzip
+    if (!hasHeader(payload)) {
+      bos = new ByteArrayOutputStream(payload.length * 4);
+      LightGBMUtils.copy(new GZIPInputStream(new ByteArrayInputStream(payload), BUFFER_SIZE), bos);
+      return bos.toByteArray();
+    }
+
+    bis = new ByteArrayInputStream(payload);
+    dis = new DataInputStream(bis);
+    dis.skipBytes(MAGIC.length);
+    codec  = dis.readByte();
+    length = dis.readInt();
+    result = new byte[length];
+
+    switch (codec) {
+      case CODEC_NONE:
+	dis.readFully(result);
+	break;
+
+      case CODEC_GZIP:
+	readFully(new GZIPInputStream(bis, BUFFER_SIZE), result);
+	break;
+
+      case CODEC_DEFLATE_FAST:
+      case CODEC_DEFLATE_BEST:
+	inflater = new Inflater();
+	try {
+	  readFully(new InflaterInputStream(bis, inflater, BUFFER_SIZE), result);
+	}
+	finally {
+	  inflater.end();
+	}
+	break;
+
+      default:
+	throw new IOException("Unknown codec: " + codec);
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,308 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMModelRegistry.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Process-wide registry of loaded models (booster pools, pure-Java trees,
+ * compiled scorers), keyed by the content hash of the model. Classifiers
+ * with the same model (e.g., deserialized multiple times) share the loaded
+ * instances instead of loading their own.
+ * <br>
+ * Entries are reference counted: {@link #acquire(String, long, Callable)}
+ * increments and {@link #release(String)} decrements the count. Entries
+ * that are no longer referenced stay loaded for reuse, until the total
+ * (estimated) size exceeds the maximum size, at which point the least
+ * recently used ones get closed. Referenced entries never get evicted.
+ * <br>
+ * The maximum size can be set via the system property
+ * {@link #PROPERTY_MAX_SIZE} (in MB) or {@link #setMaxSize(long)}.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LightGBMModelRegistry {
+
+  /** the system property for the maximum size in MB. */
+  public final static String PROPERTY_MAX_SIZE = "weka.classifiers.functions.LightGBM.registry";
+
+  /** the default maximum size in MB. */
+  public final static long DEFAULT_MAX_SIZE = 1024;
+
+  /**
+   * A registry entry.
+   */
+  protected static class Entry {
+
+    /** the key. */
+    protected String m_Key;
+
+    /** the estimated size in bytes. */
+    protected long m_Size;
+
+    /** the loaded value (null if not yet loaded). */
+    protected volatile Object m_Value;
+
+    /** the number of references. */
+    protected int m_References;
+
+    /**
+     * Initializes the entry.
+     *
+     * @param key	the key
+     * @param size	the estimated size in bytes
+     */
+    public Entry(String key, long size) {
+      m_Key  = key;
+      m_Size = size;
+    }
+  }
+
+  /** the entries, in access order (least recently used first). */
+  protected static Map<String,Entry> m_Entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** the interned model data (hash to data). */
+  protected static Map<String,WeakReference<byte[]>> m_Interned = new HashMap<>();
+
+  /** the maximum size in bytes (-1 if not determined yet). */
+  protected static long m_MaxSize = -1;
+
+  /**
+   * Sets the maximum total size of the entries.
+   *
+   * @param value	the size in bytes, 0 for unlimited
+   */
+  public static synchronized void setMaxSize(long value) {
+    if (value >= 0)
+      m_MaxSize = value;
+    evict();
+  }
+
+  /**
+   * Returns the maximum total size of the entries.
+   *
+   * @return		the size in bytes, 0 for unlimited
+   */
+  public static synchronized long getMaxSize() {
+    String	prop;
+
+    if (m_MaxSize == -1) {
+      m_MaxSize = DEFAULT_MAX_SIZE * 1024L * 1024L;
+      prop      = System.getProperty(PROPERTY_MAX_SIZE);
+      if (prop != null) {
+	try {
+	  if (Long.parseLong(prop) >= 0)
+	    m_MaxSize = Long.parseLong(prop) * 1024L * 1024L;
+	}
+	catch (Exception e) {
+	  System.err.println("Invalid value for system property " + PROPERTY_MAX_SIZE + ": " + prop);
+	}
+      }
+    }
+
+    return m_MaxSize;
+  }
+
+  /**
+   * Returns the total estimated size of the loaded entries.
+   *
+   * @return		the size in bytes
+   */
+  public static synchronized long getSize() {
+    long	result;
+
+    result = 0;
+    for (Entry entry: m_Entries.values()) {
+      if (entry.m_Value != null)
+	result += entry.m_Size;
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the number of entries.
+   *
+   * @return		the number of entries
+   */
+  public static synchronized int getNumEntries() {
+    return m_Entries.size();
+  }
+
+  /**
+   * Returns the number of references to the entry.
+   *
+   * @param key		the key of the entry
+   * @return		the number of references, 0 if not present
+   */
+  public static synchronized int getReferences(String key) {
+    Entry	entry;
+
+    entry = m_Entries.get(key);
+    if (entry == null)
+      return 0;
+    return entry.m_References;
+  }
+
+  /**
+   * Returns the shared copy of the data, if the same data is already in
+   * use, otherwise registers the data as the shared copy.
+   *
+   * @param hash	the hash of the data
+   * @param data	the data to intern
+   * @return		the shared copy
+   */
+  public static synchronized byte[] intern(String hash, byte[] data) {
+    WeakReference<byte[]>	ref;
+    byte[]			result;
+
+    ref    = m_Interned.get(hash);
+    result = (ref == null) ? null : ref.get();
+    if (result != null)
+      return result;
+
+    // remove stale references
+    m_Interned.values().removeIf((r) -> r.get() == null);
+    m_Interned.put(hash, new WeakReference<>(data));
+
+    return data;
+  }
+
+  /**
+   * Obtains a reference to the entry, loading its value if not present
+   * yet. Loading happens outside the registry's lock, i.e., only requests
+   * for the same key wait for it.
+   *
+   * @param key		the key of the entry
+   * @param size	the estimated size of the value in bytes
+   * @param loader	for loading the value
+   * @param <T>		the type of the value
+   * @return		the value
+   * @throws Exception	if loading fails
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T acquire(String key, long size, Callable<T> loader) throws Exception {
+    Entry	entry;
+
+    synchronized (LightGBMModelRegistry.class) {
+      entry = m_Entries.get(key);
+      if (entry == null) {
+	entry = new Entry(key, size);
+	m_Entries.put(key, entry);
+      }
+      entry.m_References++;
+    }
+
+    try {
+      synchronized (entry) {
+	if (entry.m_Value == null)
+	  entry.m_Value = loader.call();
+      }
+    }
+    catch (Exception e) {
+      release(key);
+      throw e;
+    }
+
+    synchronized (LightGBMModelRegistry.class) {
+      evict();
+    }
+
+    return (T) entry.m_Value;
+  }
+
+  /**
+   * Releases a reference to the entry. The entry stays loaded until it
+   * gets evicted.
+   *
+   * @param key		the key of the entry
+   */
+  public static synchronized void release(String key) {
+    Entry	entry;
+
+    entry = m_Entries.get(key);
+    if (entry == null)
+      return;
+    entry.m_References = Math.max(0, entry.m_References - 1);
+    if ((entry.m_References == 0) && (entry.m_Value == null))
+      m_Entries.remove(key);
+    evict();
+  }
+
+  /**
+   * Closes the least recently used entries that are no longer referenced,
+   * until the total size no longer exceeds the maximum.
+   */
+  protected static synchronized void evict() {
+    Iterator<Entry>	iter;
+    Entry		entry;
+    List<Entry>		evicted;
+    long		size;
+
+    if (getMaxSize() == 0)
+      return;
+
+    size = getSize();
+    if (size <= getMaxSize())
+      return;
+
+    evicted = new ArrayList<>();
+    iter    = m_Entries.values().iterator();
+    while (iter.hasNext() && (size > getMaxSize())) {
+      entry = iter.next();
+      if ((entry.m_References > 0) || (entry.m_Value == null))
+	continue;
+      iter.remove();
+      evicted.add(entry);
+      size -= entry.m_Size;
+    }
+
+    for (Entry e: evicted) {
+      if (e.m_Value instanceof AutoCloseable) {
+	try {
+	  ((AutoCloseable) e.m_Value).close();
+	}
+	catch (Exception ex) {
+	  System.err.println("Failed to close evicted model " + e.m_Key + ": " + ex.getMessage());
+	}
+      }
+    }
+  }
+
+  /**
+   * Closes and removes all entries that are no longer referenced.
+   */
+  public static synchronized void clear() {
+    long	max;
+
+    max       = getMaxSize();
+    m_MaxSize = 1;
+    evict();
+    m_MaxSize = max;
+  }
+}
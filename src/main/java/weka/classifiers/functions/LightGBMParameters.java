@@ -0,0 +1,734 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMParameters.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the LightGBM 3.3.2 parameters with their types, aliases and
+ * value constraints. Used for validating the user-supplied parameters
+ * before they get handed to the native side, which otherwise only logs
+ * unknown parameters and silently ignores them.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @see <a href="https://lightgbm.readthedocs.io/en/v3.3.2/Parameters.html">Parameters</a>
+ */
+public class LightGBMParameters {
+
+  /** integer value. */
+  public final static int TYPE_INT = 0;
+
+  /** floating point value. */
+  public final static int TYPE_DOUBLE = 1;
+
+  /** boolean value. */
+  public final static int TYPE_BOOL = 2;
+
+  /** string value. */
+  public final static int TYPE_STRING = 3;
+
+  /** comma-separated integer values. */
+  public final static int TYPE_INT_LIST = 4;
+
+  /** comma-separated floating point values. */
+  public final static int TYPE_DOUBLE_LIST = 5;
+
+  /** the parameters that get filled in automatically. */
+  public final static String[] AUTOMATIC = {"objective", "num_class", "categorical_feature", "label_column"};
+
+  /** the parameters that only get used when constructing datasets (binning). */
+  public final static String[] DATASET = {
+    "max_bin", "max_bin_by_feature", "min_data_in_bin", "bin_construct_sample_cnt",
+    "data_random_seed", "is_enable_sparse", "enable_bundle", "use_missing",
+    "zero_as_missing", "feature_pre_filter", "pre_partition", "categorical_feature",
+    "forcedbins_filename", "precise_float_parser"};
+
+  /** the parameters that get used by datasets and boosters. */
+  public final static String[] SHARED = {
+    "num_threads", "seed", "verbosity", "min_data_in_leaf", "linear_tree"};
+
+  /** the maximum number of bins before a warning gets output. */
+  public final static int MAX_BIN_WARNING = 255;
+
+  /**
+   * The definition of a single parameter.
+   */
+  public static class Definition {
+
+    /** the name. */
+    protected String m_Name;
+
+    /** the type. */
+    protected int m_Type;
+
+    /** the aliases. */
+    protected String[] m_Aliases;
+
+    /** the lower bound (NaN if none). */
+    protected double m_Lower = Double.NaN;
+
+    /** whether the lower bound is inclusive. */
+    protected boolean m_LowerInclusive;
+
+    /** the upper bound (NaN if none). */
+    protected double m_Upper = Double.NaN;
+
+    /** whether the upper bound is inclusive. */
+    protected boolean m_UpperInclusive;
+
+    /** the allowed values (null if any). */
+    protected List<String> m_Choices;
+
+    /**
+     * Initializes the definition.
+     *
+     * @param name	the name
+     * @param type	the type (TYPE_*)
+     * @param aliases	the aliases
+     */
+    public Definition(String name, int type, String... aliases) {
+      m_Name    = name;
+      m_Type    = type;
+      m_Aliases = aliases;
+    }
+
+    /**
+     * Returns the name.
+     *
+     * @return		the name
+     */
+    public String getName() {
+      return m_Name;
+    }
+
+    /**
+     * Returns the type.
+     *
+     * @return		the type (TYPE_*)
+     */
+    public int getType() {
+      return m_Type;
+    }
+
+    /**
+     * Returns the aliases.
+     *
+     * @return		the aliases
+     */
+    public String[] getAliases() {
+      return m_Aliases;
+    }
+
+    /**
+     * Sets an inclusive lower bound.
+     *
+     * @param value	the bound
+     * @return		itself
+     */
+    public Definition atLeast(double value) {
+      m_Lower          = value;
+      m_LowerInclusive = true;
+      return this;
+    }
+
+    /**
+     * Sets an exclusive lower bound.
+     *
+     * @param value	the bound
+     * @return		itself
+     */
+    public Definition greater(double value) {
+      m_Lower          = value;
+      m_LowerInclusive = false;
+      return this;
+    }
+
+    /**
+     * Sets an inclusive upper bound.
+     *
+     * @param value	the bound
+     * @return		itself
+     */
+    public Definition atMost(double value) {
+      m_Upper          = value;
+      m_UpperInclusive = true;
+      return this;
+    }
+
+    /**
+     * Sets an exclusive upper bound.
+     *
+     * @param value	the bound
+     * @return		itself
+     */
+    public Definition less(double value) {
+      m_Upper          = value;
+      m_UpperInclusive = false;
+      return this;
+    }
+
+    /**
+     * Sets the allowed values.
+     *
+     * @param values	the values
+     * @return		itself
+     */
+    public Definition choices(String... values) {
+      m_Choices = Arrays.asList(values);
+      return this;
+    }
+
+    /**
+     * Checks the numeric value against the bounds.
+     *
+     * @param value	the value to check
+     * @return		null if valid, otherwise error message
+     */
+    protected String checkBounds(double value) {
+      if (!Double.isNaN(m_Lower) && (m_LowerInclusive ? value < m_Lower : value <= m_Lower))
+	return "must be " + (m_LowerInclusive ? ">= " : "> ") + format(m_Lower);
+      if (!Double.isNaN(m_Upper) && (m_UpperInclusive ? value > m_Upper : value >= m_Upper))
+	return "must be " + (m_UpperInclusive ? "<= " : "< ") + format(m_Upper);
+      return null;
+    }
+
+    /**
+     * Validates the value.
+     *
+     * @param value	the value to validate
+     * @return		null if valid, otherwise error message
+     */
+    public String validate(String value) {
+      String	msg;
+
+      if (value.isEmpty() && (m_Type != TYPE_STRING))
+	return "no value provided";
+
+      try {
+	switch (m_Type) {
+	  case TYPE_INT:
+	    return checkBounds(Integer.parseInt(value));
+
+	  case TYPE_DOUBLE:
+	    return checkBounds(Double.parseDouble(value));
+
+	  case TYPE_BOOL:
+	    if (!Arrays.asList("true", "false", "+", "-").contains(value.toLowerCase()))
+	      return "must be true or false";
+	    return null;
+
+	  case TYPE_INT_LIST:
+	    for (String part: value.split(",")) {
+	      msg = checkBounds(Integer.parseInt(part.trim()));
+	      if (msg != null)
+		return msg;
+	    }
+	    return null;
+
+	  case TYPE_DOUBLE_LIST:
+	    for (String part: value.split(",")) {
+	      msg = checkBounds(Double.parseDouble(part.trim()));
+	      if (msg != null)
+		return msg;
+	    }
+	    return null;
+
+	  default:
+	    if ((m_Choices != null) && !m_Choices.contains(value))
+	      return "must be one of " + m_Choices;
+	    return null;
+	}
+      }
+      catch (NumberFormatException e) {
+	return "not a valid " + ((m_Type == TYPE_INT) || (m_Type == TYPE_INT_LIST) ? "integer" : "number");
+      }
+    }
+
+    /**
+     * Formats the bound.
+     *
+     * @param value	the bound
+     * @return		the formatted bound
+     */
+    protected static String format(double value) {
+      if (value == Math.rint(value))
+	return "" + (long) value;
+      return "" + value;
+    }
+  }
+
+  /** the definitions (name to definition). */
+  protected static Map<String,Definition> m_Definitions = new LinkedHashMap<>();
+
+  /** the lookup (name/alias to definition). */
+  protected static Map<String,Definition> m_Lookup = new LinkedHashMap<>();
+
+  static {
+    // core
+    define("config", TYPE_STRING, "config_file");
+    define("task", TYPE_STRING, "task_type").choices("train", "training", "predict", "prediction", "test", "convert_model", "refit", "refit_tree", "save_binary");
+    define("objective", TYPE_STRING, "objective_type", "app", "application", "loss");
+    define("boosting", TYPE_STRING, "boosting_type", "boost").choices("gbdt", "gbrt", "rf", "random_forest", "dart", "goss");
+    define("data", TYPE_STRING, "train", "train_data", "train_data_file", "data_filename");
+    define("valid", TYPE_STRING, "test", "valid_data", "valid_data_file", "test_data", "test_data_file", "valid_filenames");
+    define("num_iterations", TYPE_INT, "num_iteration", "n_iter", "num_tree", "num_trees", "num_round", "num_rounds", "num_boost_round", "n_estimators", "max_iter").atLeast(0);
+    define("learning_rate", TYPE_DOUBLE, "shrinkage_rate", "eta").greater(0);
+    define("num_leaves", TYPE_INT, "num_leaf", "max_leaves", "max_leaf").greater(1).atMost(131072);
+    define("tree_learner", TYPE_STRING, "tree", "tree_type", "tree_learner_type").choices("serial", "feature", "feature_parallel", "data", "data_parallel", "voting", "voting_parallel");
+    define("num_threads", TYPE_INT, "num_thread", "nthread", "nthreads", "n_jobs");
+    define("device_type", TYPE_STRING, "device").choices("cpu", "gpu", "cuda");
+    define("seed", TYPE_INT, "random_seed", "random_state");
+    define("deterministic", TYPE_BOOL);
+
+    // learning control
+    define("force_col_wise", TYPE_BOOL);
+    define("force_row_wise", TYPE_BOOL);
+    define("histogram_pool_size", TYPE_DOUBLE, "hist_pool_size");
+    define("max_depth", TYPE_INT);
+    define("min_data_in_leaf", TYPE_INT, "min_data_per_leaf", "min_data", "min_child_samples", "min_samples_leaf").atLeast(0);
+    define("min_sum_hessian_in_leaf", TYPE_DOUBLE, "min_sum_hessian_per_leaf", "min_sum_hessian", "min_hessian", "min_child_weight").atLeast(0);
+    define("bagging_fraction", TYPE_DOUBLE, "sub_row", "subsample", "bagging").greater(0).atMost(1);
+    define("pos_bagging_fraction", TYPE_DOUBLE, "pos_sub_row", "pos_subsample", "pos_bagging").greater(0).atMost(1);
+    define("neg_bagging_fraction", TYPE_DOUBLE, "neg_sub_row", "neg_subsample", "neg_bagging").greater(0).atMost(1);
+    define("bagging_freq", TYPE_INT, "subsample_freq");
+    define("bagging_seed", TYPE_INT, "bagging_fraction_seed");
+    define("feature_fraction", TYPE_DOUBLE, "sub_feature", "colsample_bytree").greater(0).atMost(1);
+    define("feature_fraction_bynode", TYPE_DOUBLE, "sub_feature_bynode", "colsample_bynode").greater(0).atMost(1);
+    define("feature_fraction_seed", TYPE_INT);
+    define("extra_trees", TYPE_BOOL, "extra_tree");
+    define("extra_seed", TYPE_INT);
+    define("early_stopping_round", TYPE_INT, "early_stopping_rounds", "early_stopping", "n_iter_no_change");
+    define("first_metric_only", TYPE_BOOL);
+    define("max_delta_step", TYPE_DOUBLE, "max_tree_output", "max_leaf_output");
+    define("lambda_l1", TYPE_DOUBLE, "reg_alpha", "l1_regularization").atLeast(0);
+    define("lambda_l2", TYPE_DOUBLE, "reg_lambda", "lambda", "l2_regularization").atLeast(0);
+    define("linear_lambda", TYPE_DOUBLE).atLeast(0);
+    define("min_gain_to_split", TYPE_DOUBLE, "min_split_gain").atLeast(0);
+    define("drop_rate", TYPE_DOUBLE, "rate_drop").atLeast(0).atMost(1);
+    define("max_drop", TYPE_INT);
+    define("skip_drop", TYPE_DOUBLE).atLeast(0).atMost(1);
+    define("xgboost_dart_mode", TYPE_BOOL);
+    define("uniform_drop", TYPE_BOOL);
+    define("drop_seed", TYPE_INT);
+    define("top_rate", TYPE_DOUBLE).atLeast(0).atMost(1);
+    define("other_rate", TYPE_DOUBLE).atLeast(0).atMost(1);
+    define("min_data_per_group", TYPE_INT).greater(0);
+    define("max_cat_threshold", TYPE_INT).greater(0);
+    define("cat_l2", TYPE_DOUBLE).atLeast(0);
+    define("cat_smooth", TYPE_DOUBLE).atLeast(0);
+    define("max_cat_to_onehot", TYPE_INT).greater(0);
+    define("top_k", TYPE_INT, "topk").greater(0);
+    define("monotone_constraints", TYPE_INT_LIST, "mc", "monotone_constraint", "monotonic_cst").atLeast(-1).atMost(1);
+    define("monotone_constraints_method", TYPE_STRING, "monotone_constraining_method", "mc_method").choices("basic", "intermediate", "advanced");
+    define("monotone_penalty", TYPE_DOUBLE, "monotone_splits_penalty", "ms_penalty", "mc_penalty").atLeast(0);
+    define("feature_contri", TYPE_DOUBLE_LIST, "feature_contrib", "fc", "fp", "feature_penalty");
+    define("forcedsplits_filename", TYPE_STRING, "fs", "forced_splits_filename", "forced_splits_file", "forced_splits");
+    define("refit_decay_rate", TYPE_DOUBLE).atLeast(0).atMost(1);
+    define("cegb_tradeoff", TYPE_DOUBLE).atLeast(0);
+    define("cegb_penalty_split", TYPE_DOUBLE).atLeast(0);
+    define("cegb_penalty_feature_lazy", TYPE_DOUBLE_LIST);
+    define("cegb_penalty_feature_coupled", TYPE_DOUBLE_LIST);
+    define("path_smooth", TYPE_DOUBLE).atLeast(0);
+    define("interaction_constraints", TYPE_STRING);
+    define("verbosity", TYPE_INT, "verbose");
+    define("input_model", TYPE_STRING, "model_input", "model_in");
+    define("output_model", TYPE_STRING, "model_output", "model_out");
+    define("saved_feature_importance_type", TYPE_INT).atLeast(0).atMost(1);
+    define("snapshot_freq", TYPE_INT, "save_period");
+    define("linear_tree", TYPE_BOOL, "linear_trees");
+
+    // dataset
+    define("max_bin", TYPE_INT, "max_bins").greater(1);
+    define("max_bin_by_feature", TYPE_INT_LIST).greater(1);
+    define("min_data_in_bin", TYPE_INT).greater(0);
+    define("bin_construct_sample_cnt", TYPE_INT, "subsample_for_bin").greater(0);
+    define("data_random_seed", TYPE_INT, "data_seed");
+    define("is_enable_sparse", TYPE_BOOL, "is_sparse", "enable_sparse", "sparse");
+    define("enable_bundle", TYPE_BOOL, "is_enable_bundle", "bundle");
+    define("use_missing", TYPE_BOOL);
+    define("zero_as_missing", TYPE_BOOL);
+    define("feature_pre_filter", TYPE_BOOL);
+    define("pre_partition", TYPE_BOOL, "is_pre_partition");
+    define("two_round", TYPE_BOOL, "two_round_loading", "use_two_round_loading");
+    define("header", TYPE_BOOL, "has_header");
+    define("label_column", TYPE_STRING, "label");
+    define("weight_column", TYPE_STRING, "weight");
+    define("group_column", TYPE_STRING, "group", "group_id", "query_column", "query", "query_id");
+    define("ignore_column", TYPE_STRING, "ignore_feature", "blacklist");
+    define("categorical_feature", TYPE_STRING, "cat_feature", "categorical_column", "cat_column", "categorical_features");
+    define("forcedbins_filename", TYPE_STRING);
+    define("save_binary", TYPE_BOOL, "is_save_binary", "is_save_binary_file");
+    define("precise_float_parser", TYPE_BOOL);
+
+    // predict
+    define("start_iteration_predict", TYPE_INT);
+    define("num_iteration_predict", TYPE_INT);
+    define("predict_raw_score", TYPE_BOOL, "is_predict_raw_score", "predict_rawscore", "raw_score");
+    define("predict_leaf_index", TYPE_BOOL, "is_predict_leaf_index", "leaf_index");
+    define("predict_contrib", TYPE_BOOL, "is_predict_contrib", "contrib");
+    define("predict_disable_shape_check", TYPE_BOOL);
+    define("pred_early_stop", TYPE_BOOL);
+    define("pred_early_stop_freq", TYPE_INT);
+    define("pred_early_stop_margin", TYPE_DOUBLE);
+    define("output_result", TYPE_STRING, "predict_result", "prediction_result", "predict_name", "prediction_name", "pred_name", "name_pred");
+
+    // convert
+    define("convert_model_language", TYPE_STRING);
+    define("convert_model", TYPE_STRING, "convert_model_file");
+
+    // objective
+    define("objective_seed", TYPE_INT);
+    define("num_class", TYPE_INT, "num_classes").greater(0);
+    define("is_unbalance", TYPE_BOOL, "unbalance", "unbalanced_sets");
+    define("scale_pos_weight", TYPE_DOUBLE).greater(0);
+    define("sigmoid", TYPE_DOUBLE).greater(0);
+    define("boost_from_average", TYPE_BOOL);
+    define("reg_sqrt", TYPE_BOOL);
+    define("alpha", TYPE_DOUBLE).greater(0);
+    define("fair_c", TYPE_DOUBLE).greater(0);
+    define("poisson_max_delta_step", TYPE_DOUBLE).greater(0);
+    define("tweedie_variance_power", TYPE_DOUBLE).atLeast(1).less(2);
+    define("lambdarank_truncation_level", TYPE_INT).greater(0);
+    define("lambdarank_norm", TYPE_BOOL);
+    define("label_gain", TYPE_DOUBLE_LIST);
+
+    // metric
+    define("metric", TYPE_STRING, "metrics", "metric_types");
+    define("metric_freq", TYPE_INT, "output_freq").greater(0);
+    define("is_provide_training_metric", TYPE_BOOL, "training_metric", "is_training_metric", "train_metric");
+    define("eval_at", TYPE_INT_LIST, "ndcg_eval_at", "ndcg_at", "map_eval_at", "map_at").greater(0);
+    define("multi_error_top_k", TYPE_INT).greater(0);
+    define("auc_mu_weights", TYPE_DOUBLE_LIST);
+
+    // network
+    define("num_machines", TYPE_INT, "num_machine").greater(0);
+    define("local_listen_port", TYPE_INT, "local_port", "port").greater(0);
+    define("time_out", TYPE_INT).greater(0);
+    define("machine_list_filename", TYPE_STRING, "machine_list_file", "machine_list", "mlist");
+    define("machines", TYPE_STRING, "workers", "nodes");
+
+    // gpu
+    define("gpu_platform_id", TYPE_INT);
+    define("gpu_device_id", TYPE_INT);
+    define("gpu_use_dp", TYPE_BOOL);
+    define("num_gpu", TYPE_INT).greater(0);
+  }
+
+  /**
+   * Adds the definition of a parameter.
+   *
+   * @param name	the name
+   * @param type	the type (TYPE_*)
+   * @param aliases	the aliases
+   * @return		the definition
+   */
+  protected static Definition define(String name, int type, String... aliases) {
+    Definition	result;
+
+    result = new Definition(name, type, aliases);
+    m_Definitions.put(name, result);
+    m_Lookup.put(name, result);
+    for (String alias: aliases)
+      m_Lookup.put(alias, result);
+
+    return result;
+  }
+
+  /**
+   * Returns the definition for the parameter.
+   *
+   * @param name	the name or alias
+   * @return		the definition, null if unknown
+   */
+  public static Definition lookup(String name) {
+    return m_Lookup.get(name);
+  }
+
+  /**
+   * Returns all parameter definitions.
+   *
+   * @return		the definitions
+   */
+  public static List<Definition> getDefinitions() {
+    return Collections.unmodifiableList(new ArrayList<>(m_Definitions.values()));
+  }
+
+  /**
+   * Returns the edit distance between the two strings.
+   *
+   * @param s1		the first string
+   * @param s2		the second string
+   * @return		the distance
+   */
+  protected static int distance(String s1, String s2) {
+    int[]	prev;
+    int[]	curr;
+    int[]	tmp;
+    int		i;
+    int		n;
+
+    prev = new int[s2.length() + 1];
+    curr = new int[s2.length() + 1];
+    for (n = 0; n <= s2.length(); n++)
+      prev[n] = n;
+    for (i = 1; i <= s1.length(); i++) {
+      curr[0] = i;
+      for (n = 1; n <= s2.length(); n++)
+	curr[n] = Math.min(Math.min(curr[n - 1] + 1, prev[n] + 1), prev[n - 1] + (s1.charAt(i - 1) == s2.charAt(n - 1) ? 0 : 1));
+      tmp  = prev;
+      prev = curr;
+      curr = tmp;
+    }
+
+    return prev[s2.length()];
+  }
+
+  /**
+   * Returns the closest known parameter name or alias.
+   *
+   * @param name	the unknown name
+   * @return		the closest one, null if none is close enough
+   */
+  protected static String suggest(String name) {
+    String	result;
+    int		best;
+    int		dist;
+
+    result = null;
+    best   = Math.max(2, name.length() / 4) + 1;
+    for (String known: m_Lookup.keySet()) {
+      dist = distance(name, known);
+      if (dist < best) {
+	best   = dist;
+	result = known;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Parses and validates the blank-separated key=value pairs. Aliases get
+   * replaced with the parameter names.
+   *
+   * @param parameters	the parameters to parse
+   * @return		the parameters (name to value), in the order they were specified
+   * @throws IllegalArgumentException	if a parameter is unknown, has an invalid value or is specified more than once
+   */
+  public static Map<String,String> parse(String parameters) {
+    Map<String,String>	result;
+    Definition		def;
+    String		name;
+    String		value;
+    String		msg;
+    String		suggestion;
+    int			pos;
+
+    result = new LinkedHashMap<>();
+    if (parameters.trim().isEmpty())
+      return result;
+
+    for (String param: parameters.trim().split("\\s+")) {
+      pos = param.indexOf('=');
+      if (pos < 1)
+	throw new IllegalArgumentException("Parameter is not a key=value pair: " + param);
+      name  = param.substring(0, pos).trim();
+      value = param.substring(pos + 1).trim();
+      def   = lookup(name);
+      if (def == null) {
+	suggestion = suggest(name);
+	throw new IllegalArgumentException("Unknown LightGBM parameter '" + name + "'" + ((suggestion == null) ? "" : ", did you mean '" + suggestion + "'?"));
+      }
+      msg = def.validate(value);
+      if (msg != null)
+	throw new IllegalArgumentException("Invalid value for LightGBM parameter '" + name + "': " + value + " (" + msg + ")");
+      if (result.containsKey(def.getName()))
+	throw new IllegalArgumentException("LightGBM parameter '" + def.getName() + "' specified more than once (incl aliases): " + parameters);
+      result.put(def.getName(), value);
+    }
+
+    return result;
+  }
+
+  /**
+   * Checks whether the parameters contain any of the automatically filled
+   * in parameters (objective, number of classes, categorical features,
+   * label).
+   *
+   * @param parameters	the parsed parameters
+   * @throws IllegalArgumentException	if an automatic parameter is present
+   */
+  public static void checkAutomatic(Map<String,String> parameters) {
+    for (String name: AUTOMATIC) {
+      if (parameters.containsKey(name))
+	throw new IllegalArgumentException("LightGBM parameter '" + name + "' gets set automatically "
+	  + "(objective via the type of booster, the others from the data), remove it from the parameters!");
+    }
+  }
+
+  /**
+   * Checks for conflicting parameters.
+   *
+   * @param parameters	the parsed parameters
+   * @throws IllegalArgumentException	if parameters conflict
+   */
+  public static void checkConflicts(Map<String,String> parameters) {
+    if (isTrue(parameters.get("force_col_wise")) && isTrue(parameters.get("force_row_wise")))
+      throw new IllegalArgumentException("LightGBM parameters 'force_col_wise' and 'force_row_wise' cannot both be enabled!");
+  }
+
+  /**
+   * Returns whether the boolean value is true.
+   *
+   * @param value	the value, can be null
+   * @return		true if not null and true
+   */
+  protected static boolean isTrue(String value) {
+    return (value != null) && (value.equalsIgnoreCase("true") || value.equals("+"));
+  }
+
+  /**
+   * Returns warnings about settings that are ignored by the classifier or
+   * that affect performance.
+   *
+   * @param parameters	the parsed parameters
+   * @param debug	whether to include hints about defaults as well
+   * @return		the warnings, empty if none
+   */
+  public static List<String> warnings(Map<String,String> parameters, boolean debug) {
+    List<String>	result;
+    int			cores;
+
+    result = new ArrayList<>();
+    cores  = LightGBMThreads.getAvailableCores();
+
+    if (parameters.containsKey("num_iterations"))
+      result.add("num_iterations is ignored, use the classifier's number of iterations instead");
+    if (parameters.containsKey("early_stopping_round"))
+      result.add("early_stopping_round is ignored, use the classifier's early stopping rounds instead");
+    if (parameters.containsKey("max_bin") && (Integer.parseInt(parameters.get("max_bin")) > MAX_BIN_WARNING))
+      result.add("max_bin=" + parameters.get("max_bin") + " exceeds " + MAX_BIN_WARNING + ", which increases memory and slows down histogram construction");
+    if (isTrue(parameters.get("two_round")))
+      result.add("two_round only applies to loading data from files, it has no effect for data passed from memory");
+    if (parameters.containsKey("num_threads") && (Integer.parseInt(parameters.get("num_threads")) > cores))
+      result.add("num_threads=" + parameters.get("num_threads") + " exceeds the " + cores + " available cores, which oversubscribes them");
+    if (parameters.containsKey("device_type") && !parameters.get("device_type").equals("cpu"))
+      result.add("device_type=" + parameters.get("device_type") + " requires a LightGBM library built with GPU/CUDA support");
+
+    if (debug) {
+      if (!isTrue(parameters.get("force_col_wise")) && !isTrue(parameters.get("force_row_wise")))
+	result.add("neither force_col_wise nor force_row_wise set, LightGBM tests both histogram layouts at the start of training");
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns whether the parameter only gets used when constructing
+   * datasets.
+   *
+   * @param name	the parameter name (not an alias)
+   * @return		true if a dataset parameter
+   */
+  public static boolean isDataset(String name) {
+    return Arrays.asList(DATASET).contains(name);
+  }
+
+  /**
+   * Returns the parameters for constructing datasets, i.e., the dataset
+   * parameters and the ones that are shared with the booster.
+   *
+   * @param parameters	the parsed parameters
+   * @return		the dataset parameters, in the same order
+   */
+  public static Map<String,String> datasetParameters(Map<String,String> parameters) {
+    Map<String,String>	result;
+
+    result = new LinkedHashMap<>();
+    for (String name: parameters.keySet()) {
+      if (isDataset(name) || Arrays.asList(SHARED).contains(name))
+	result.put(name, parameters.get(name));
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the parameters for the booster, i.e., all but the dataset
+   * parameters (the booster takes the binning from the dataset).
+   *
+   * @param parameters	the parsed parameters
+   * @return		the booster parameters, in the same order
+   */
+  public static Map<String,String> boosterParameters(Map<String,String> parameters) {
+    Map<String,String>	result;
+
+    result = new LinkedHashMap<>();
+    for (String name: parameters.keySet()) {
+      if (!isDataset(name))
+	result.put(name, parameters.get(name));
+    }
+
+    return result;
+  }
+
+  /**
+   * Turns the parameters into blank-separated key=value pairs.
+   *
+   * @param parameters	the parameters to convert
+   * @return		the string
+   */
+  public static String toString(Map<String,String> parameters) {
+    StringBuilder	result;
+
+    result = new StringBuilder();
+    for (String name: parameters.keySet()) {
+      if (result.length() > 0)
+	result.append(" ");
+      result.append(name).append("=").append(parameters.get(name));
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Merges the two parameter strings, with the primary parameters taking
+   * precedence. Aliases get replaced with the parameter names.
+   *
+   * @param primary	the parameters that take precedence
+   * @param secondary	the other parameters
+   * @return		the merged parameters
+   * @throws IllegalArgumentException	if parameters are invalid
+   */
+  public static String merge(String primary, String secondary) {
+    Map<String,String>	result;
+
+    result = parse(secondary);
+    result.putAll(parse(primary));
+
+    return toString(result);
+  }
+}
@@ -0,0 +1,342 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMPredictionMetrics.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low-overhead, thread-safe counters and a latency histogram for the
+ * predictions of a LightGBM classifier. Splits the time of a prediction
+ * into converting the instance and scoring it (native call or pure-Java
+ * inference) and records the time for loading models (cold starts).
+ * <br>
+ * The histogram uses logarithmic buckets with four sub-buckets per power
+ * of two, i.e., percentiles have a relative error of at most 25%.
+ * <br>
+ * Can be registered with the platform MBean server via
+ * {@link #register(String)}.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LightGBMPredictionMetrics
+  implements LightGBMPredictionMetricsMBean {
+
+  /** the domain for the JMX object names. */
+  public final static String JMX_DOMAIN = "weka.classifiers.functions";
+
+  /** the number of histogram buckets (covers all positive longs). */
+  public final static int NUM_BUCKETS = 248;
+
+  /** the number of single-instance predictions. */
+  protected LongAdder m_Count = new LongAdder();
+
+  /** the number of instances predicted in batches. */
+  protected LongAdder m_BatchCount = new LongAdder();
+
+  /** the total latency of single-instance predictions (nanoseconds). */
+  protected LongAdder m_Latency = new LongAdder();
+
+  /** the total conversion time (nanoseconds). */
+  protected LongAdder m_Conversion = new LongAdder();
+
+  /** the total scoring time (nanoseconds). */
+  protected LongAdder m_Scoring = new LongAdder();
+
+  /** the number of model loads. */
+  protected LongAdder m_LoadCount = new LongAdder();
+
+  /** the total load time (nanoseconds). */
+  protected LongAdder m_Load = new LongAdder();
+
+  /** the latency histogram. */
+  protected AtomicLongArray m_Histogram = new AtomicLongArray(NUM_BUCKETS);
+
+  /**
+   * Returns the histogram bucket for the value.
+   *
+   * @param value	the value (nanoseconds)
+   * @return		the bucket
+   */
+  protected static int bucket(long value) {
+    int		exp;
+
+    if (value < 4)
+      return (int) Math.max(0, value);
+    exp = 63 - Long.numberOfLeadingZeros(value);
+    return (exp - 1) * 4 + (int) ((value >>> (exp - 2)) & 3);
+  }
+
+  /**
+   * Returns the (inclusive) upper bound of the bucket.
+   *
+   * @param bucket	the bucket
+   * @return		the upper bound (nanoseconds)
+   */
+  protected static long upperBound(int bucket) {
+    int		exp;
+
+    if (bucket < 4)
+      return bucket;
+    exp = bucket / 4 + 1;
+    return ((4L + (bucket % 4) + 1) << (exp - 2)) - 1;
+  }
+
+  /**
+   * Records a single-instance prediction.
+   *
+   * @param conversion	the time for converting the instance (nanoseconds)
+   * @param scoring	the time for scoring the instance (nanoseconds)
+   * @param total	the total time of the prediction (nanoseconds)
+   */
+  public void addPrediction(long conversion, long scoring, long total) {
+    m_Count.increment();
+    m_Conversion.add(conversion);
+    m_Scoring.add(scoring);
+    m_Latency.add(total);
+    m_Histogram.incrementAndGet(bucket(total));
+  }
+
+  /**
+   * Records a batch of predictions.
+   *
+   * @param numInstances	the number of instances in the batch
+   * @param conversion	the time for converting the batch (nanoseconds)
+   * @param scoring	the time for scoring the batch (nanoseconds)
+   */
+  public void addBatch(int numInstances, long conversion, long scoring) {
+    m_BatchCount.add(numInstances);
+    m_Conversion.add(conversion);
+    m_Scoring.add(scoring);
+  }
+
+  /**
+   * Records loading a model.
+   *
+   * @param time	the load time (nanoseconds)
+   */
+  public void addLoad(long time) {
+    m_LoadCount.increment();
+    m_Load.add(time);
+  }
+
+  /**
+   * Returns the latency percentile of single-instance predictions.
+   *
+   * @param percentile	the percentile (0-100)
+   * @return		the latency (microseconds), 0 if no predictions yet
+   */
+  public double getPercentileLatency(double percentile) {
+    long[]	counts;
+    long	total;
+    long	threshold;
+    long	sum;
+    int		i;
+
+    counts = new long[NUM_BUCKETS];
+    total  = 0;
+    for (i = 0; i < NUM_BUCKETS; i++) {
+      counts[i] = m_Histogram.get(i);
+      total    += counts[i];
+    }
+    if (total == 0)
+      return 0.0;
+
+    threshold = (long) Math.ceil(total * percentile / 100.0);
+    sum       = 0;
+    for (i = 0; i < NUM_BUCKETS; i++) {
+      sum += counts[i];
+      if ((sum >= threshold) && (sum > 0))
+	return upperBound(i) / 1000.0;
+    }
+
+    return upperBound(NUM_BUCKETS - 1) / 1000.0;
+  }
+
+  /**
+   * Returns the number of single-instance predictions.
+   *
+   * @return		the number of calls
+   */
+  @Override
+  public long getCount() {
+    return m_Count.sum();
+  }
+
+  /**
+   * Returns the number of instances predicted in batches.
+   *
+   * @return		the number of instances
+   */
+  @Override
+  public long getBatchCount() {
+    return m_BatchCount.sum();
+  }
+
+  /**
+   * Returns the mean latency of single-instance predictions.
+   *
+   * @return		the latency (microseconds)
+   */
+  @Override
+  public double getMeanLatency() {
+    long	count;
+
+    count = m_Count.sum();
+    if (count == 0)
+      return 0.0;
+    return m_Latency.sum() / 1000.0 / count;
+  }
+
+  /**
+   * Returns the median latency of single-instance predictions.
+   *
+   * @return		the latency (microseconds)
+   */
+  @Override
+  public double getP50Latency() {
+    return getPercentileLatency(50);
+  }
+
+  /**
+   * Returns the 99th percentile of the latency of single-instance predictions.
+   *
+   * @return		the latency (microseconds)
+   */
+  @Override
+  public double getP99Latency() {
+    return getPercentileLatency(99);
+  }
+
+  /**
+   * Returns the total time spent converting instances.
+   *
+   * @return		the time (microseconds)
+   */
+  @Override
+  public double getConversionTime() {
+    return m_Conversion.sum() / 1000.0;
+  }
+
+  /**
+   * Returns the total time spent scoring.
+   *
+   * @return		the time (microseconds)
+   */
+  @Override
+  public double getScoringTime() {
+    return m_Scoring.sum() / 1000.0;
+  }
+
+  /**
+   * Returns the number of times a model was loaded for predictions.
+   *
+   * @return		the number of loads
+   */
+  @Override
+  public long getLoadCount() {
+    return m_LoadCount.sum();
+  }
+
+  /**
+   * Returns the total time spent loading models.
+   *
+   * @return		the time (microseconds)
+   */
+  @Override
+  public double getLoadTime() {
+    return m_Load.sum() / 1000.0;
+  }
+
+  /**
+   * Resets all counters.
+   */
+  @Override
+  public void reset() {
+    int		i;
+
+    m_Count.reset();
+    m_BatchCount.reset();
+    m_Latency.reset();
+    m_Conversion.reset();
+    m_Scoring.reset();
+    m_LoadCount.reset();
+    m_Load.reset();
+    for (i = 0; i < NUM_BUCKETS; i++)
+      m_Histogram.set(i, 0);
+  }
+
+  /**
+   * Registers the metrics with the platform MBean server, replacing any
+   * metrics already registered under the same name.
+   *
+   * @param name	the name to use in the object name
+   * @return		the object name
+   * @throws Exception	if registration fails
+   */
+  public ObjectName register(String name) throws Exception {
+    MBeanServer		server;
+    ObjectName		result;
+
+    server = ManagementFactory.getPlatformMBeanServer();
+    result = new ObjectName(JMX_DOMAIN + ":type=LightGBM,name=" + ObjectName.quote(name));
+    if (server.isRegistered(result))
+      server.unregisterMBean(result);
+    server.registerMBean(this, result);
+
+    return result;
+  }
+
+  /**
+   * Unregisters the metrics from the platform MBean server.
+   *
+   * @param name	the object name returned by {@link #register(String)}
+   * @throws Exception	if unregistering fails
+   */
+  public static void unregister(ObjectName name) throws Exception {
+    MBeanServer		server;
+
+    server = ManagementFactory.getPlatformMBeanServer();
+    if (server.isRegistered(name))
+      server.unregisterMBean(name);
+  }
+
+  /**
+   * Returns a short summary of the metrics.
+   *
+   * @return		the summary
+   */
+  @Override
+  public String toString() {
+    return "count=" + getCount()
+      + ", batch=" + getBatchCount()
+      + ", mean=" + getMeanLatency() + "us"
+      + ", p50=" + getP50Latency() + "us"
+      + ", p99=" + getP99Latency() + "us"
+      + ", conversion=" + getConversionTime() + "us"
+      + ", scoring=" + getScoringTime() + "us"
+      + ", loads=" + getLoadCount()
+      + ", load=" + getLoadTime() + "us";
+  }
+}
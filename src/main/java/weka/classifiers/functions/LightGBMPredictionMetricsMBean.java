@@ -0,0 +1,100 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMPredictionMetricsMBean.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+/**
+ * JMX interface for the prediction metrics of a LightGBM classifier.
+ * All times are in microseconds.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @see LightGBMPredictionMetrics
+ */
+public interface LightGBMPredictionMetricsMBean {
+
+  /**
+   * Returns the number of single-instance predictions.
+   *
+   * @return		the number of calls
+   */
+  public long getCount();
+
+  /**
+   * Returns the number of instances predicted in batches.
+   *
+   * @return		the number of instances
+   */
+  public long getBatchCount();
+
+  /**
+   * Returns the mean latency of single-instance predictions.
+   *
+   * @return		the latency
+   */
+  public double getMeanLatency();
+
+  /**
+   * Returns the median latency of single-instance predictions.
+   *
+   * @return		the latency
+   */
+  public double getP50Latency();
+
+  /**
+   * Returns the 99th percentile of the latency of single-instance predictions.
+   *
+   * @return		the latency
+   */
+  public double getP99Latency();
+
+  /**
+   * Returns the total time spent converting instances.
+   *
+   * @return		the time
+   */
+  public double getConversionTime();
+
+  /**
+   * Returns the total time spent scoring, i.e., in the native calls or in
+   * the pure-Java inference engine.
+   *
+   * @return		the time
+   */
+  public double getScoringTime();
+
+  /**
+   * Returns the number of times a model was loaded for predictions.
+   *
+   * @return		the number of loads
+   */
+  public long getLoadCount();
+
+  /**
+   * Returns the total time spent loading models (cold starts).
+   *
+   * @return		the time
+   */
+  public double getLoadTime();
+
+  /**
+   * Resets all counters.
+   */
+  public void reset();
+}
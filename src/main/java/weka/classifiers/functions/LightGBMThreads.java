@@ -0,0 +1,217 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMThreads.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * JVM-wide budget of native threads for training LightGBM models.
+ * LightGBM's OpenMP runtime uses all cores of the host by default, ignoring
+ * container CPU quotas and any other models that train concurrently in the
+ * same JVM (e.g., in the Experimenter or in ensembles). Training requests
+ * its threads from this budget and returns them afterwards.
+ * <br>
+ * The budget defaults to the available cores, i.e., the minimum of
+ * Runtime.availableProcessors() and the cgroup (v1 or v2) CPU quota. It can
+ * be overridden with the system property {@link #PROPERTY_BUDGET} or via
+ * {@link #setBudget(int)}.
+ * <br>
+ * Requests never block: once the budget is exhausted, each further request
+ * still gets a single thread.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LightGBMThreads {
+
+  /** the system property for overriding the budget. */
+  public final static String PROPERTY_BUDGET = "weka.classifiers.functions.LightGBM.threads";
+
+  /** the cgroup v2 CPU limit (quota and period). */
+  public final static String CGROUP2_CPU_MAX = "/sys/fs/cgroup/cpu.max";
+
+  /** the cgroup v1 CPU quota. */
+  public final static String CGROUP1_CPU_QUOTA = "/sys/fs/cgroup/cpu/cpu.cfs_quota_us";
+
+  /** the cgroup v1 CPU period. */
+  public final static String CGROUP1_CPU_PERIOD = "/sys/fs/cgroup/cpu/cpu.cfs_period_us";
+
+  /** the available cores (0 if not determined yet). */
+  protected static int m_AvailableCores;
+
+  /** the budget (0 if not determined yet). */
+  protected static int m_Budget;
+
+  /** the number of threads currently in use. */
+  protected static int m_InUse;
+
+  /**
+   * Reads the first line of the file.
+   *
+   * @param filename	the file to read
+   * @return		the trimmed line, null if not available
+   */
+  protected static String readLine(String filename) {
+    List<String>	lines;
+
+    try {
+      if (!new File(filename).isFile())
+	return null;
+      lines = Files.readAllLines(new File(filename).toPath());
+      if (lines.isEmpty())
+	return null;
+      return lines.get(0).trim();
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the number of cores that the cgroup CPU quota allows.
+   *
+   * @return		the number of cores, -1 if no quota
+   */
+  protected static int cgroupCores() {
+    String	line;
+    String	quota;
+    String[]	parts;
+    long	period;
+
+    try {
+      // cgroup v2: "<quota> <period>" or "max <period>"
+      line = readLine(CGROUP2_CPU_MAX);
+      if (line != null) {
+	parts = line.split("\\s+");
+	if ((parts.length == 2) && !parts[0].equals("max"))
+	  return (int) Math.max(1, (long) Math.ceil((double) Long.parseLong(parts[0]) / Long.parseLong(parts[1])));
+	return -1;
+      }
+
+      // cgroup v1: quota of -1 means no limit
+      quota = readLine(CGROUP1_CPU_QUOTA);
+      line  = readLine(CGROUP1_CPU_PERIOD);
+      if ((quota != null) && (line != null) && (Long.parseLong(quota) > 0)) {
+	period = Long.parseLong(line);
+	if (period > 0)
+	  return (int) Math.max(1, (long) Math.ceil((double) Long.parseLong(quota) / period));
+      }
+    }
+    catch (Exception e) {
+      // ignored
+    }
+
+    return -1;
+  }
+
+  /**
+   * Returns the number of cores available to the JVM, taking cgroup CPU
+   * quotas into account.
+   *
+   * @return		the number of cores
+   */
+  public static synchronized int getAvailableCores() {
+    int		cgroup;
+
+    if (m_AvailableCores == 0) {
+      m_AvailableCores = Runtime.getRuntime().availableProcessors();
+      cgroup           = cgroupCores();
+      if (cgroup > 0)
+	m_AvailableCores = Math.min(m_AvailableCores, cgroup);
+    }
+
+    return m_AvailableCores;
+  }
+
+  /**
+   * Sets the JVM-wide budget of threads.
+   *
+   * @param value	the budget, less than 1 for the available cores
+   */
+  public static synchronized void setBudget(int value) {
+    if (value < 1)
+      value = getAvailableCores();
+    m_Budget = value;
+  }
+
+  /**
+   * Returns the JVM-wide budget of threads.
+   *
+   * @return		the budget
+   */
+  public static synchronized int getBudget() {
+    String	prop;
+
+    if (m_Budget == 0) {
+      m_Budget = getAvailableCores();
+      prop     = System.getProperty(PROPERTY_BUDGET);
+      if (prop != null) {
+	try {
+	  if (Integer.parseInt(prop) > 0)
+	    m_Budget = Integer.parseInt(prop);
+	}
+	catch (Exception e) {
+	  System.err.println("Invalid value for system property " + PROPERTY_BUDGET + ": " + prop);
+	}
+      }
+    }
+
+    return m_Budget;
+  }
+
+  /**
+   * Returns the number of threads currently in use.
+   *
+   * @return		the number of threads
+   */
+  public static synchronized int getInUse() {
+    return m_InUse;
+  }
+
+  /**
+   * Requests threads from the budget. Must be followed by a call to
+   * {@link #release(int)} with the granted number of threads.
+   *
+   * @param requested	the number of threads, less than 1 for as many as possible
+   * @return		the granted number of threads (at least 1)
+   */
+  public static synchronized int acquire(int requested) {
+    int		result;
+
+    result = getBudget() - m_InUse;
+    if (requested > 0)
+      result = Math.min(result, requested);
+    result = Math.max(1, result);
+    m_InUse += result;
+
+    return result;
+  }
+
+  /**
+   * Returns the threads to the budget.
+   *
+   * @param granted	the number of threads returned by {@link #acquire(int)}
+   */
+  public static synchronized void release(int granted) {
+    m_InUse = Math.max(0, m_InUse - granted);
+  }
+}
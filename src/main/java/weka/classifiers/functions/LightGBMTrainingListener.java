@@ -0,0 +1,64 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMTrainingListener.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+/**
+ * Interface for classes that want to get notified about the progress of
+ * training a LightGBM model, e.g., for feeding timings and metrics into a
+ * monitoring system. All times are in nanoseconds. The methods get called
+ * from the thread that builds the classifier.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @see LightGBM#addTrainingListener(LightGBMTrainingListener)
+ */
+public interface LightGBMTrainingListener {
+
+  /**
+   * Gets called when a phase of the training has been completed.
+   *
+   * @param phase	the phase, see LightGBMTrainingMetrics.PHASE_*
+   * @param time	the time the phase took
+   */
+  public default void phaseCompleted(String phase, long time) {
+  }
+
+  /**
+   * Gets called after each boosting iteration. The metric values are only
+   * available if the booster evaluates the respective data, e.g., training
+   * metrics require "is_provide_training_metric=true".
+   *
+   * @param iteration	the iteration (1-based)
+   * @param time	the time the iteration took
+   * @param names	the names of the metrics
+   * @param train	the metrics on the training data, empty if not available
+   * @param valid	the metrics on the validation data, empty if not available
+   */
+  public default void iterationCompleted(int iteration, long time, String[] names, double[] train, double[] valid) {
+  }
+
+  /**
+   * Gets called once the model has been trained and saved.
+   *
+   * @param metrics	the collected metrics
+   */
+  public default void trainingCompleted(LightGBMTrainingMetrics metrics) {
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMTrainingMetrics.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timings and metrics collected while training a LightGBM model. All times
+ * are in nanoseconds. The native memory is an estimate, based on the size
+ * of the raw feature matrix handed to LightGBM.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LightGBMTrainingMetrics
+  implements Serializable {
+
+  private static final long serialVersionUID = -3466419547302873150L;
+
+  /** the phase for converting the data into datasets (incl. binning). */
+  public final static String PHASE_CONVERSION = "conversion";
+
+  /** the phase for creating the booster. */
+  public final static String PHASE_BOOSTER = "booster";
+
+  /** the phase for the boosting iterations. */
+  public final static String PHASE_BOOSTING = "boosting";
+
+  /** the phase for saving the model. */
+  public final static String PHASE_SAVE = "save";
+
+  /** the time per phase. */
+  protected Map<String,Long> m_PhaseTimes = new LinkedHashMap<>();
+
+  /** the time per iteration. */
+  protected long[] m_IterationTimes = new long[0];
+
+  /** the number of iterations. */
+  protected int m_NumIterations = 0;
+
+  /** the names of the metrics. */
+  protected String[] m_MetricNames = new String[0];
+
+  /** the training metrics per iteration. */
+  protected List<double[]> m_TrainMetrics = new ArrayList<>();
+
+  /** the validation metrics per iteration. */
+  protected List<double[]> m_ValidMetrics = new ArrayList<>();
+
+  /** the number of training rows. */
+  protected int m_NumRows = 0;
+
+  /** the number of features. */
+  protected int m_NumFeatures = 0;
+
+  /** the estimated native memory in bytes. */
+  protected long m_NativeMemory = 0;
+
+  /** the size of the model text in characters. */
+  protected long m_ModelSize = 0;
+
+  /**
+   * Records the time for the phase, adds to any previously recorded time.
+   *
+   * @param phase	the phase
+   * @param time	the time
+   */
+  public void addPhaseTime(String phase, long time) {
+    m_PhaseTimes.merge(phase, time, Long::sum);
+  }
+
+  /**
+   * Returns the time for the phase.
+   *
+   * @param phase	the phase
+   * @return		the time, 0 if not recorded
+   */
+  public long getPhaseTime(String phase) {
+    return m_PhaseTimes.getOrDefault(phase, 0L);
+  }
+
+  /**
+   * Returns the recorded phases.
+   *
+   * @return		the phases, in the order they were recorded
+   */
+  public List<String> getPhases() {
+    return new ArrayList<>(m_PhaseTimes.keySet());
+  }
+
+  /**
+   * Records an iteration.
+   *
+   * @param time	the time the iteration took
+   * @param names	the names of the metrics, null if not evaluated
+   * @param train	the training metrics, null if not evaluated
+   * @param valid	the validation metrics, null if not evaluated
+   */
+  public void addIteration(long time, String[] names, double[] train, double[] valid) {
+    if (m_NumIterations == m_IterationTimes.length)
+      m_IterationTimes = Arrays.copyOf(m_IterationTimes, Math.max(16, m_IterationTimes.length * 2));
+    m_IterationTimes[m_NumIterations] = time;
+    m_NumIterations++;
+    if (names != null)
+      m_MetricNames = names;
+    if (train != null)
+      m_TrainMetrics.add(train);
+    if (valid != null)
+      m_ValidMetrics.add(valid);
+  }
+
+  /**
+   * Returns the number of recorded iterations.
+   *
+   * @return		the number of iterations
+   */
+  public int getNumIterations() {
+    return m_NumIterations;
+  }
+
+  /**
+   * Returns the times of the iterations.
+   *
+   * @return		the times
+   */
+  public long[] getIterationTimes() {
+    return Arrays.copyOf(m_IterationTimes, m_NumIterations);
+  }
+
+  /**
+   * Returns the names of the metrics.
+   *
+   * @return		the names, empty if no metrics were evaluated
+   */
+  public String[] getMetricNames() {
+    return m_MetricNames;
+  }
+
+  /**
+   * Returns the training metrics per iteration.
+   *
+   * @return		the metrics, empty if not evaluated
+   */
+  public List<double[]> getTrainMetrics() {
+    return m_TrainMetrics;
+  }
+
+  /**
+   * Returns the validation metrics per iteration.
+   *
+   * @return		the metrics, empty if not evaluated
+   */
+  public List<double[]> getValidMetrics() {
+    return m_ValidMetrics;
+  }
+
+  /**
+   * Sets the size of the training data.
+   *
+   * @param numRows	the number of rows
+   * @param numFeatures	the number of features
+   * @param float32	whether 32-bit floats are used instead of 64-bit doubles
+   */
+  public void setDataSize(int numRows, int numFeatures, boolean float32) {
+    m_NumRows      = numRows;
+    m_NumFeatures  = numFeatures;
+    m_NativeMemory = (long) numRows * numFeatures * (float32 ? 4 : 8);
+  }
+
+  /**
+   * Returns the number of training rows.
+   *
+   * @return		the number of rows
+   */
+  public int getNumRows() {
+    return m_NumRows;
+  }
+
+  /**
+   * Returns the number of features.
+   *
+   * @return		the number of features
+   */
+  public int getNumFeatures() {
+    return m_NumFeatures;
+  }
+
+  /**
+   * Returns the estimated native memory for the training data.
+   *
+   * @return		the bytes
+   */
+  public long getNativeMemory() {
+    return m_NativeMemory;
+  }
+
+  /**
+   * Sets the size of the model.
+   *
+   * @param size	the number of characters of the model text
+   */
+  public void setModelSize(long size) {
+    m_ModelSize = size;
+  }
+
+  /**
+   * Returns the size of the model.
+   *
+   * @return		the number of characters of the model text
+   */
+  public long getModelSize() {
+    return m_ModelSize;
+  }
+
+  /**
+   * Returns a short summary of the metrics.
+   *
+   * @return		the summary
+   */
+  @Override
+  public String toString() {
+    StringBuilder	result;
+    long		total;
+    int			i;
+
+    result = new StringBuilder();
+    for (String phase: m_PhaseTimes.keySet())
+      result.append(phase).append(": ").append(m_PhaseTimes.get(phase) / 1000000).append("ms\n");
+    total = 0;
+    for (i = 0; i < m_NumIterations; i++)
+      total += m_IterationTimes[i];
+    result.append("iterations: ").append(m_NumIterations);
+    if (m_NumIterations > 0)
+      result.append(" (mean ").append(total / m_NumIterations / 1000).append("us)");
+    result.append("\n");
+    result.append("rows x features: ").append(m_NumRows).append(" x ").append(m_NumFeatures).append("\n");
+    result.append("native memory (est.): ").append(m_NativeMemory).append(" bytes\n");
+    result.append("model size: ").append(m_ModelSize).append(" chars\n");
+    if (!m_TrainMetrics.isEmpty())
+      result.append("train: ").append(format(m_TrainMetrics.get(m_TrainMetrics.size() - 1))).append("\n");
+    if (!m_ValidMetrics.isEmpty())
+      result.append("valid: ").append(format(m_ValidMetrics.get(m_ValidMetrics.size() - 1))).append("\n");
+
+    return result.toString();
+  }
+
+  /**
+   * Formats the metric values with their names.
+   *
+   * @param values	the values
+   * @return		the formatted values
+   */
+  protected String format(double[] values) {
+    StringBuilder	result;
+    int			i;
+
+    result = new StringBuilder();
+    for (i = 0; i < values.length; i++) {
+      if (i > 0)
+	result.append(", ");
+      if (i < m_MetricNames.length)
+	result.append(m_MetricNames[i]).append("=");
+      result.append(values[i]);
+    }
+
+    return result.toString();
+  }
+}
@@ -0,0 +1,756 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMTreeModel.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pure-Java representation of a LightGBM tree ensemble, parsed from the
+ * model text generated by LightGBM. All trees are stored in flat primitive
+ * arrays, which allows scoring without any native calls.
+ * Predictions replicate the logic of LightGBM's tree.h (v3.3.2).
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LightGBMTreeModel
+  implements Serializable {
+
+  private static final long serialVersionUID = 3547198236742213587L;
+
+  /** the mask for categorical splits. */
+  public final static int CATEGORICAL_MASK = 1;
+
+  /** the mask for missing values going left. */
+  public final static int DEFAULT_LEFT_MASK = 2;
+
+  /** missing type: none. */
+  public final static int MISSING_NONE = 0;
+
+  /** missing type: zero. */
+  public final static int MISSING_ZERO = 1;
+
+  /** missing type: NaN. */
+  public final static int MISSING_NAN = 2;
+
+  /** the threshold below which values are considered zero. */
+  public final static double ZERO_THRESHOLD = 1e-35f;
+
+  /** the objective: identity output. */
+  public final static int OUTPUT_IDENTITY = 0;
+
+  /** the objective: sigmoid output. */
+  public final static int OUTPUT_SIGMOID = 1;
+
+  /** the objective: softmax output. */
+  public final static int OUTPUT_SOFTMAX = 2;
+
+  /** the objective: exponential output. */
+  public final static int OUTPUT_EXP = 3;
+
+  /** the objective: softplus output. */
+  public final static int OUTPUT_SOFTPLUS = 4;
+
+  /** the objective: squared output (regression with sqrt). */
+  public final static int OUTPUT_SQUARE = 5;
+
+  /** the version of the binary layout (2: added average output flag). */
+  public final static int BINARY_VERSION = 2;
+
+  /** the number of trees per iteration (ie number of outputs). */
+  protected int m_NumTreePerIteration;
+
+  /** the maximum feature index. */
+  protected int m_MaxFeatureIndex;
+
+  /** the output transformation. */
+  protected int m_OutputType;
+
+  /** the sigmoid parameter. */
+  protected double m_Sigmoid;
+
+  /** whether the output is the average rather than the sum of the trees (random forest). */
+  protected boolean m_AverageOutput;
+
+  /** the feature names. */
+  protected String[] m_FeatureNames;
+
+  /** the offset of the nodes for each tree. */
+  protected int[] m_NodeOffsets;
+
+  /** the offset of the leaves for each tree. */
+  protected int[] m_LeafOffsets;
+
+  /** the offset of the categorical boundaries for each tree. */
+  protected int[] m_CatOffsets;
+
+  /** the feature used by each split. */
+  protected int[] m_SplitFeature;
+
+  /** the threshold of each split (index in categorical boundaries for categorical splits). */
+  protected double[] m_Threshold;
+
+  /** the decision type of each split. */
+  protected byte[] m_DecisionType;
+
+  /** the left child of each split (negative values are leaves: ~leaf). */
+  protected int[] m_LeftChild;
+
+  /** the right child of each split (negative values are leaves: ~leaf). */
+  protected int[] m_RightChild;
+
+  /** the value of each leaf. */
+  protected double[] m_LeafValue;
+
+  /** the categorical boundaries (per tree, relative to tree's bitsets). */
+  protected int[] m_CatBoundaries;
+
+  /** the categorical bitsets. */
+  protected int[] m_CatThreshold;
+
+  /** the offset of the bitsets for each tree. */
+  protected int[] m_BitsetOffsets;
+
+  /**
+   * Returns the number of trees.
+   *
+   * @return		the number of trees
+   */
+  public int getNumTrees() {
+    return m_NodeOffsets.length - 1;
+  }
+
+  /**
+   * Returns the number of trees per iteration, ie the number of raw outputs.
+   *
+   * @return		the number of trees per iteration
+   */
+  public int getNumTreePerIteration() {
+    return m_NumTreePerIteration;
+  }
+
+  /**
+   * Returns the number of features the model expects.
+   *
+   * @return		the number of features
+   */
+  public int getNumFeatures() {
+    return m_MaxFeatureIndex + 1;
+  }
+
+  /**
+   * Returns the feature names.
+   *
+   * @return		the names
+   */
+  public String[] getFeatureNames() {
+    return m_FeatureNames;
+  }
+
+  /**
+   * Returns the total number of leaves across all trees.
+   *
+   * @return		the number of leaves
+   */
+  public int getNumLeaves() {
+    return m_LeafValue.length;
+  }
+
+  /**
+   * Returns the output transformation.
+   *
+   * @return		the type (OUTPUT_*)
+   */
+  public int getOutputType() {
+    return m_OutputType;
+  }
+
+  /**
+   * Returns the sigmoid parameter.
+   *
+   * @return		the parameter
+   */
+  public double getSigmoid() {
+    return m_Sigmoid;
+  }
+
+  /**
+   * Returns whether the output is the average rather than the sum of the
+   * trees, as with boosting=rf.
+   *
+   * @return		true if averaged
+   */
+  public boolean getAverageOutput() {
+    return m_AverageOutput;
+  }
+
+  /**
+   * Returns the index of the leaf that the row ends up in.
+   *
+   * @param tree	the index of the tree
+   * @param row		the feature values
+   * @return		the (global) index of the leaf
+   */
+  public int leafIndex(int tree, double[] row) {
+    int		nodeOffset;
+    int		node;
+    int		n;
+    int		type;
+    int		missing;
+    int		catIndex;
+    int		bitsetOffset;
+    int		intValue;
+    int		pos;
+    double	value;
+
+    nodeOffset = m_NodeOffsets[tree];
+    if (m_NodeOffsets[tree + 1] == nodeOffset)
+      return m_LeafOffsets[tree];
+
+    node = 0;
+    while (node >= 0) {
+      n     = nodeOffset + node;
+      value = row[m_SplitFeature[n]];
+      type  = m_DecisionType[n];
+      if ((type & CATEGORICAL_MASK) != 0) {
+	intValue = Double.isNaN(value) ? -1 : (int) value;
+	node     = m_RightChild[n];
+	if (intValue >= 0) {
+	  catIndex     = m_CatOffsets[tree] + (int) m_Threshold[n];
+	  bitsetOffset = m_BitsetOffsets[tree] + m_CatBoundaries[catIndex];
+	  pos          = intValue / 32;
+	  if ((pos < m_CatBoundaries[catIndex + 1] - m_CatBoundaries[catIndex])
+	    && (((m_CatThreshold[bitsetOffset + pos] >>> (intValue % 32)) & 1) != 0))
+	    node = m_LeftChild[n];
+	}
+      }
+      else {
+	missing = (type >> 2) & 3;
+	if (Double.isNaN(value) && (missing != MISSING_NAN))
+	  value = 0.0;
+	if (((missing == MISSING_ZERO) && (value >= -ZERO_THRESHOLD) && (value <= ZERO_THRESHOLD))
+	  || ((missing == MISSING_NAN) && Double.isNaN(value)))
+	  node = ((type & DEFAULT_LEFT_MASK) != 0) ? m_LeftChild[n] : m_RightChild[n];
+	else
+	  node = (value <= m_Threshold[n]) ? m_LeftChild[n] : m_RightChild[n];
+      }
+    }
+
+    return m_LeafOffsets[tree] + ~node;
+  }
+
+  /**
+   * Computes the summed scores of the trees (before averaging and output
+   * transformation) for the row.
+   *
+   * @param row		the feature values
+   * @param output	the array for the raw scores, numTreePerIteration long
+   */
+  public void predictRaw(double[] row, double[] output) {
+    int		i;
+
+    for (i = 0; i < m_NumTreePerIteration; i++)
+      output[i] = 0.0;
+    for (i = 0; i < getNumTrees(); i++)
+      output[i % m_NumTreePerIteration] += m_LeafValue[leafIndex(i, row)];
+  }
+
+  /**
+   * Averages the summed scores (random forests only) and applies the output
+   * transformation of the objective.
+   *
+   * @param output	the summed scores, get transformed in place
+   */
+  public void transform(double[] output) {
+    int		i;
+    double	max;
+    double	sum;
+
+    if (m_AverageOutput && (getNumTrees() > 0)) {
+      for (i = 0; i < output.length; i++)
+	output[i] /= getNumTrees() / m_NumTreePerIteration;
+    }
+
+    switch (m_OutputType) {
+      case OUTPUT_SIGMOID:
+	for (i = 0; i < output.length; i++)
+	  output[i] = 1.0 / (1.0 + Math.exp(-m_Sigmoid * output[i]));
+	break;
+
+      case OUTPUT_SOFTMAX:
+	max = output[0];
+	for (i = 1; i < output.length; i++)
+	  max = Math.max(max, output[i]);
+	sum = 0.0;
+	for (i = 0; i < output.length; i++) {
+	  output[i] = Math.exp(output[i] - max);
+	  sum      += output[i];
+	}
+	for (i = 0; i < output.length; i++)
+	  output[i] /= sum;
+	break;
+
+      case OUTPUT_EXP:
+	for (i = 0; i < output.length; i++)
+	  output[i] = Math.exp(output[i]);
+	break;
+
+      case OUTPUT_SOFTPLUS:
+	for (i = 0; i < output.length; i++)
+	  output[i] = Math.log1p(Math.exp(output[i]));
+	break;
+
+      case OUTPUT_SQUARE:
+	for (i = 0; i < output.length; i++)
+	  output[i] = Math.signum(output[i]) * output[i] * output[i];
+	break;
+
+      default:
+	// identity
+    }
+  }
+
+  /**
+   * Computes the predictions for the row, like LightGBM's normal prediction.
+   *
+   * @param row		the feature values
+   * @param output	the array for the predictions, numTreePerIteration long
+   */
+  public void predict(double[] row, double[] output) {
+    predictRaw(row, output);
+    transform(output);
+  }
+
+  /**
+   * Writes the model in a compact binary layout.
+   *
+   * @param out		the stream to write to
+   * @throws IOException	if writing fails
+   */
+  public void write(DataOutputStream out) throws IOException {
+    out.writeInt(BINARY_VERSION);
+    out.writeInt(m_NumTreePerIteration);
+    out.writeInt(m_MaxFeatureIndex);
+    out.writeInt(m_OutputType);
+    out.writeDouble(m_Sigmoid);
+    out.writeBoolean(m_AverageOutput);
+    out.writeInt(m_FeatureNames.length);
+    for (String name: m_FeatureNames)
+      out.writeUTF(name);
+    writeInts(out, m_NodeOffsets);
+    writeInts(out, m_LeafOffsets);
+    writeInts(out, m_CatOffsets);
+    writeInts(out, m_BitsetOffsets);
+    writeInts(out, m_SplitFeature);
+    writeDoubles(out, m_Threshold);
+    out.writeInt(m_DecisionType.length);
+    out.write(m_DecisionType);
+    writeInts(out, m_LeftChild);
+    writeInts(out, m_RightChild);
+    writeDoubles(out, m_LeafValue);
+    writeInts(out, m_CatBoundaries);
+    writeInts(out, m_CatThreshold);
+  }
+
+  /**
+   * Returns the model in a compact binary layout.
+   *
+   * @return		the binary representation
+   * @throws IOException	if writing fails
+   */
+  public byte[] toBytes() throws IOException {
+    ByteArrayOutputStream	bos;
+    DataOutputStream		dos;
+
+    bos = new ByteArrayOutputStream(m_LeafValue.length * 16 + m_SplitFeature.length * 32 + 1024);
+    dos = new DataOutputStream(bos);
+    write(dos);
+    dos.flush();
+
+    return bos.toByteArray();
+  }
+
+  /**
+   * Writes the array with its length.
+   *
+   * @param out		the stream to write to
+   * @param values	the values to write
+   * @throws IOException	if writing fails
+   */
+  protected static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    out.writeInt(values.length);
+    for (int value: values)
+      out.writeInt(value);
+  }
+
+  /**
+   * Writes the array with its length.
+   *
+   * @param out		the stream to write to
+   * @param values	the values to write
+   * @throws IOException	if writing fails
+   */
+  protected static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+    out.writeInt(values.length);
+    for (double value: values)
+      out.writeDouble(value);
+  }
+
+  /**
+   * Reads an array written by {@link #writeInts(DataOutputStream, int[])}.
+   *
+   * @param in		the stream to read from
+   * @return		the values
+   * @throws IOException	if reading fails
+   */
+  protected static int[] readInts(DataInputStream in) throws IOException {
+    int[]	result;
+    int		i;
+
+    result = new int[in.readInt()];
+    for (i = 0; i < result.length; i++)
+      result[i] = in.readInt();
+
+    return result;
+  }
+
+  /**
+   * Reads an array written by {@link #writeDoubles(DataOutputStream, double[])}.
+   *
+   * @param in		the stream to read from
+   * @return		the values
+   * @throws IOException	if reading fails
+   */
+  protected static double[] readDoubles(DataInputStream in) throws IOException {
+    double[]	result;
+    int		i;
+
+    result = new double[in.readInt()];
+    for (i = 0; i < result.length; i++)
+      result[i] = in.readDouble();
+
+    return result;
+  }
+
+  /**
+   * Reads the model from its compact binary layout.
+   *
+   * @param in		the stream to read from
+   * @return		the model
+   * @throws IOException	if reading fails
+   */
+  public static LightGBMTreeModel read(DataInputStream in) throws IOException {
+    LightGBMTreeModel	result;
+    int			version;
+    int			i;
+
+    version = in.readInt();
+    if ((version < 1) || (version > BINARY_VERSION))
+      throw new IOException("Unsupported binary layout version: " + version);
+
+    result = new LightGBMTreeModel();
+    result.m_NumTreePerIteration = in.readInt();
+    result.m_MaxFeatureIndex     = in.readInt();
+    result.m_OutputType          = in.readInt();
+    result.m_Sigmoid             = in.readDouble();
+    result.m_AverageOutput       = (version >= 2) && in.readBoolean();
+    result.m_FeatureNames        = new String[in.readInt()];
+    for (i = 0; i < result.m_FeatureNames.length; i++)
+      result.m_FeatureNames[i] = in.readUTF();
+    result.m_NodeOffsets   = readInts(in);
+    result.m_LeafOffsets   = readInts(in);
+    result.m_CatOffsets    = readInts(in);
+    result.m_BitsetOffsets = readInts(in);
+    result.m_SplitFeature  = readInts(in);
+    result.m_Threshold     = readDoubles(in);
+    result.m_DecisionType  = new byte[in.readInt()];
+    in.readFully(result.m_DecisionType);
+    result.m_LeftChild     = readInts(in);
+    result.m_RightChild    = readInts(in);
+    result.m_LeafValue     = readDoubles(in);
+    result.m_CatBoundaries = readInts(in);
+    result.m_CatThreshold  = readInts(in);
+
+    return result;
+  }
+
+  /**
+   * Restores the model from its compact binary layout.
+   *
+   * @param data	the binary representation
+   * @return		the model
+   * @throws IOException	if reading fails
+   */
+  public static LightGBMTreeModel fromBytes(byte[] data) throws IOException {
+    return read(new DataInputStream(new ByteArrayInputStream(data)));
+  }
+
+  /**
+   * Parses the key=value pairs of a block of lines.
+   *
+   * @param lines	the lines
+   * @param from	the first line (incl)
+   * @param to		the last line (excl)
+   * @return		the key-value pairs
+   */
+  protected static Map<String,String> parseBlock(String[] lines, int from, int to) {
+    Map<String,String>	result;
+    int			i;
+    int			pos;
+
+    result = new HashMap<>();
+    for (i = from; i < to; i++) {
+      pos = lines[i].indexOf('=');
+      if (pos > 0)
+	result.put(lines[i].substring(0, pos).trim(), lines[i].substring(pos + 1).trim());
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the value associated with the key.
+   *
+   * @param block	the key-value pairs
+   * @param key		the key to retrieve
+   * @return		the value
+   * @throws IllegalArgumentException	if key is missing
+   */
+  protected static String get(Map<String,String> block, String key) {
+    if (!block.containsKey(key))
+      throw new IllegalArgumentException("Missing key in model: " + key);
+    return block.get(key);
+  }
+
+  /**
+   * Parses a floating point number as written by LightGBM, which uses
+   * "inf", "-inf" and "nan" for special values.
+   *
+   * @param value	the value to parse
+   * @return		the parsed value
+   */
+  protected static double parseDouble(String value) {
+    switch (value) {
+      case "inf":
+      case "+inf":
+	return Double.POSITIVE_INFINITY;
+      case "-inf":
+	return Double.NEGATIVE_INFINITY;
+      case "nan":
+      case "-nan":
+	return Double.NaN;
+      default:
+	return Double.parseDouble(value);
+    }
+  }
+
+  /**
+   * Splits the blank-separated values.
+   *
+   * @param values	the values to split
+   * @return		the split values
+   */
+  protected static String[] split(String values) {
+    if (values.isEmpty())
+      return new String[0];
+    return values.split(" ");
+  }
+
+  /**
+   * Parses the model text generated by LightGBM.
+   *
+   * @param model	the model text
+   * @return		the parsed model
+   * @throws IllegalArgumentException	if parsing fails or the model uses unsupported features
+   */
+  public static LightGBMTreeModel parse(String model) {
+    LightGBMTreeModel		result;
+    String[]			lines;
+    List<Map<String,String>>	trees;
+    Map<String,String>		header;
+    Map<String,String>		tree;
+    String[]			objective;
+    int				i;
+    int				n;
+    int				start;
+    int				numNodes;
+    int				numLeaves;
+    int				numCats;
+    int				numBitsets;
+    int				node;
+    int				leaf;
+    int				cat;
+    int				bitset;
+    String[]			values;
+    boolean			averageOutput;
+
+    lines         = model.split("\n");
+    averageOutput = false;
+    trees = new ArrayList<>();
+    start = -1;
+    header = null;
+    for (i = 0; i <= lines.length; i++) {
+      if ((i == lines.length) || lines[i].startsWith("Tree=") || lines[i].startsWith("end of trees")) {
+	if (start == -1) {
+	  header = parseBlock(lines, 0, i);
+	  // flag without value, set by boosting=rf
+	  for (n = 0; n < i; n++)
+	    averageOutput = averageOutput || lines[n].trim().equals("average_output");
+	}
+	else
+	  trees.add(parseBlock(lines, start, i));
+	start = i;
+	if ((i == lines.length) || lines[i].startsWith("end of trees"))
+	  break;
+      }
+    }
+    if (header == null)
+      throw new IllegalArgumentException("No model header found!");
+
+    result = new LightGBMTreeModel();
+    result.m_NumTreePerIteration = Integer.parseInt(get(header, "num_tree_per_iteration"));
+    result.m_MaxFeatureIndex     = Integer.parseInt(get(header, "max_feature_idx"));
+    result.m_FeatureNames        = split(header.getOrDefault("feature_names", ""));
+    result.m_Sigmoid             = 1.0;
+    result.m_OutputType          = OUTPUT_IDENTITY;
+    result.m_AverageOutput       = averageOutput;
+    objective = split(get(header, "objective"));
+    for (i = 1; i < objective.length; i++) {
+      if (objective[i].startsWith("sigmoid:"))
+	result.m_Sigmoid = Double.parseDouble(objective[i].substring("sigmoid:".length()));
+    }
+    switch (objective[0]) {
+      case "binary":
+      case "multiclassova":
+	result.m_OutputType = OUTPUT_SIGMOID;
+	break;
+      case "cross_entropy":
+	result.m_OutputType = OUTPUT_SIGMOID;
+	result.m_Sigmoid    = 1.0;
+	break;
+      case "multiclass":
+	result.m_OutputType = OUTPUT_SOFTMAX;
+	break;
+      case "poisson":
+      case "gamma":
+      case "tweedie":
+	result.m_OutputType = OUTPUT_EXP;
+	break;
+      case "cross_entropy_lambda":
+	result.m_OutputType = OUTPUT_SOFTPLUS;
+	break;
+      default:
+	for (i = 1; i < objective.length; i++) {
+	  if (objective[i].equals("sqrt"))
+	    result.m_OutputType = OUTPUT_SQUARE;
+	}
+    }
+
+    // sizes
+    numNodes   = 0;
+    numLeaves  = 0;
+    numCats    = 0;
+    numBitsets = 0;
+    for (Map<String,String> t: trees) {
+      if (t.getOrDefault("is_linear", "0").equals("1"))
+	throw new IllegalArgumentException("Linear trees are not supported!");
+      numLeaves += Integer.parseInt(get(t, "num_leaves"));
+      numNodes  += Integer.parseInt(get(t, "num_leaves")) - 1;
+      n          = Integer.parseInt(t.getOrDefault("num_cat", "0"));
+      if (n > 0) {
+	numCats    += n + 1;
+	numBitsets += split(get(t, "cat_threshold")).length;
+      }
+    }
+    result.m_NodeOffsets   = new int[trees.size() + 1];
+    result.m_LeafOffsets   = new int[trees.size() + 1];
+    result.m_CatOffsets    = new int[trees.size() + 1];
+    result.m_BitsetOffsets = new int[trees.size() + 1];
+    result.m_SplitFeature  = new int[numNodes];
+    result.m_Threshold     = new double[numNodes];
+    result.m_DecisionType  = new byte[numNodes];
+    result.m_LeftChild     = new int[numNodes];
+    result.m_RightChild    = new int[numNodes];
+    result.m_LeafValue     = new double[numLeaves];
+    result.m_CatBoundaries = new int[numCats];
+    result.m_CatThreshold  = new int[numBitsets];
+
+    // fill
+    node   = 0;
+    leaf   = 0;
+    cat    = 0;
+    bitset = 0;
+    for (i = 0; i < trees.size(); i++) {
+      tree = trees.get(i);
+      result.m_NodeOffsets[i]   = node;
+      result.m_LeafOffsets[i]   = leaf;
+      result.m_CatOffsets[i]    = cat;
+      result.m_BitsetOffsets[i] = bitset;
+      numLeaves = Integer.parseInt(get(tree, "num_leaves"));
+      values    = split(get(tree, "leaf_value"));
+      for (n = 0; n < numLeaves; n++)
+	result.m_LeafValue[leaf + n] = parseDouble(values[n]);
+      leaf += numLeaves;
+      if (numLeaves > 1) {
+	values = split(get(tree, "split_feature"));
+	for (n = 0; n < values.length; n++)
+	  result.m_SplitFeature[node + n] = Integer.parseInt(values[n]);
+	values = split(get(tree, "threshold"));
+	for (n = 0; n < values.length; n++)
+	  result.m_Threshold[node + n] = parseDouble(values[n]);
+	values = split(get(tree, "decision_type"));
+	for (n = 0; n < values.length; n++)
+	  result.m_DecisionType[node + n] = (byte) Integer.parseInt(values[n]);
+	values = split(get(tree, "left_child"));
+	for (n = 0; n < values.length; n++)
+	  result.m_LeftChild[node + n] = Integer.parseInt(values[n]);
+	values = split(get(tree, "right_child"));
+	for (n = 0; n < values.length; n++)
+	  result.m_RightChild[node + n] = Integer.parseInt(values[n]);
+	node += numLeaves - 1;
+      }
+      if (Integer.parseInt(tree.getOrDefault("num_cat", "0")) > 0) {
+	values = split(get(tree, "cat_boundaries"));
+	for (n = 0; n < values.length; n++)
+	  result.m_CatBoundaries[cat + n] = Integer.parseInt(values[n]);
+	cat += values.length;
+	values = split(get(tree, "cat_threshold"));
+	for (n = 0; n < values.length; n++)
+	  result.m_CatThreshold[bitset + n] = (int) Long.parseLong(values[n]);
+	bitset += values.length;
+      }
+    }
+    result.m_NodeOffsets[trees.size()]   = node;
+    result.m_LeafOffsets[trees.size()]   = leaf;
+    result.m_CatOffsets[trees.size()]    = cat;
+    result.m_BitsetOffsets[trees.size()] = bitset;
+
+    return result;
+  }
+}
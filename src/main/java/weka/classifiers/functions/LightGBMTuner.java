@@ -0,0 +1,724 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMTuner.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import io.github.metarank.lightgbm4j.LGBMBooster;
+import io.github.metarank.lightgbm4j.LGBMDataset;
+import weka.classifiers.AbstractClassifier;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Native hyperparameter search for LightGBM, using successive halving.
+ * The parameters get tuned via the booster parameters (e.g., num_leaves,
+ * learning_rate, feature_fraction), all other settings are taken from the
+ * template classifier.
+ * <br>
+ * The data gets converted and binned only once and split into a training
+ * and a validation subset, which all trials share. All trials are first
+ * trained for the minimum number of iterations. Then only the best
+ * 1/eta of them get trained further, for eta times as many iterations,
+ * until the number of iterations of the template is reached. Promoted
+ * trials continue training instead of starting from scratch. Trials get
+ * ranked by the best value of the validation metric across their
+ * iterations. The trials of a rung are trained concurrently, with the
+ * available threads split between them.
+ * <br>
+ * Parameters that affect the binning (e.g., max_bin) cannot be tuned,
+ * as the dataset is binned only once (they get rejected).
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LightGBMTuner {
+
+  /**
+   * A single configuration that gets evaluated.
+   */
+  public static class Trial
+    implements Serializable {
+
+    private static final long serialVersionUID = -1184613926339165422L;
+
+    /** the trial parameters. */
+    protected String m_Parameters;
+
+    /** the number of iterations trained. */
+    protected int m_Iterations;
+
+    /** the best value of the metric. */
+    protected double m_BestValue = Double.NaN;
+
+    /** the iteration with the best value. */
+    protected int m_BestIteration;
+
+    /** the rung the trial was pruned in (-1 if not pruned). */
+    protected int m_PrunedRung = -1;
+
+    /** whether training has finished (no more splits or early stopping). */
+    protected boolean m_Finished;
+
+    /** the booster. */
+    protected transient LGBMBooster m_Booster;
+
+    /**
+     * Initializes the trial.
+     *
+     * @param parameters	the trial parameters
+     */
+    public Trial(String parameters) {
+      m_Parameters = parameters;
+    }
+
+    /**
+     * Returns the trial parameters.
+     *
+     * @return		the parameters
+     */
+    public String getParameters() {
+      return m_Parameters;
+    }
+
+    /**
+     * Returns the number of iterations that were trained.
+     *
+     * @return		the iterations
+     */
+    public int getIterations() {
+      return m_Iterations;
+    }
+
+    /**
+     * Returns the best value of the metric.
+     *
+     * @return		the value, NaN if not evaluated
+     */
+    public double getBestValue() {
+      return m_BestValue;
+    }
+
+    /**
+     * Returns the iteration with the best value of the metric.
+     *
+     * @return		the iteration (1-based)
+     */
+    public int getBestIteration() {
+      return m_BestIteration;
+    }
+
+    /**
+     * Returns the rung in which the trial got pruned.
+     *
+     * @return		the rung (0-based), -1 if not pruned
+     */
+    public int getPrunedRung() {
+      return m_PrunedRung;
+    }
+  }
+
+  /**
+   * The outcome of the search.
+   */
+  public static class Result
+    implements Serializable {
+
+    private static final long serialVersionUID = 5034286014757329957L;
+
+    /** the metric used for ranking. */
+    protected String m_Metric;
+
+    /** the trials. */
+    protected List<Trial> m_Trials;
+
+    /** the best trial. */
+    protected Trial m_Best;
+
+    /**
+     * Initializes the result.
+     *
+     * @param metric	the metric used for ranking
+     * @param trials	the trials
+     * @param best	the best trial
+     */
+    public Result(String metric, List<Trial> trials, Trial best) {
+      m_Metric = metric;
+      m_Trials = trials;
+      m_Best   = best;
+    }
+
+    /**
+     * Returns the metric used for ranking.
+     *
+     * @return		the metric
+     */
+    public String getMetric() {
+      return m_Metric;
+    }
+
+    /**
+     * Returns all the trials.
+     *
+     * @return		the trials
+     */
+    public List<Trial> getTrials() {
+      return m_Trials;
+    }
+
+    /**
+     * Returns the best trial.
+     *
+     * @return		the trial
+     */
+    public Trial getBest() {
+      return m_Best;
+    }
+
+    /**
+     * Returns the parameters of the best trial.
+     *
+     * @return		the parameters
+     */
+    public String getBestParameters() {
+      return m_Best.getParameters();
+    }
+
+    /**
+     * Returns a copy of the template, configured with the parameters and
+     * the best number of iterations of the best trial.
+     *
+     * @param template	the classifier setup to configure
+     * @return		the configured copy (not trained)
+     * @throws Exception	if copying fails
+     */
+    public LightGBM configure(LightGBM template) throws Exception {
+      LightGBM	result;
+
+      result = (LightGBM) AbstractClassifier.makeCopy(template);
+      result.setParameters(LightGBMParameters.merge(m_Best.getParameters(), template.getParameters()));
+      result.setNumIterations(Math.max(1, m_Best.getBestIteration()));
+
+      return result;
+    }
+
+    /**
+     * Returns the trials as table, best ones first.
+     *
+     * @return		the table
+     */
+    @Override
+    public String toString() {
+      StringBuilder	result;
+
+      result = new StringBuilder();
+      result.append("Best: ").append(m_Best.getParameters())
+	.append(" (").append(m_Metric).append("=").append(Utils.doubleToString(m_Best.getBestValue(), 6))
+	.append(" @ ").append(m_Best.getBestIteration()).append(")\n\n");
+      result.append(String.format("%14s %10s %10s %6s  %s\n", m_Metric, "best-iter", "iterations", "pruned", "parameters"));
+      for (Trial trial: m_Trials)
+	result.append(String.format("%14s %10d %10d %6s  %s\n",
+	  Utils.doubleToString(trial.getBestValue(), 6), trial.getBestIteration(), trial.getIterations(),
+	  (trial.getPrunedRung() == -1) ? "-" : "" + trial.getPrunedRung(), trial.getParameters()));
+
+      return result.toString();
+    }
+  }
+
+  /** the classifier setup to tune. */
+  protected LightGBM m_Template;
+
+  /** the search space (parameter name to candidate values). */
+  protected Map<String,List<String>> m_Space = new LinkedHashMap<>();
+
+  /** the maximum number of trials. */
+  protected int m_NumTrials = 27;
+
+  /** the number of iterations for the first rung. */
+  protected int m_MinIterations = 10;
+
+  /** the reduction factor. */
+  protected int m_Eta = 3;
+
+  /** the total number of threads (less than 1 for all cores). */
+  protected int m_NumThreads = 0;
+
+  /** the size of the validation set in percent. */
+  protected double m_ValidationPercentage = 20.0;
+
+  /** the seed for sampling configurations and splitting the data. */
+  protected long m_Seed = 1;
+
+  /**
+   * Initializes the tuner.
+   *
+   * @param template	the classifier setup to tune, provides objective, metric and maximum iterations
+   */
+  public LightGBMTuner(LightGBM template) {
+    m_Template = template;
+  }
+
+  /**
+   * Adds a parameter with its candidate values to the search space.
+   *
+   * @param name	the LightGBM parameter, e.g., num_leaves
+   * @param values	the values to try
+   * @throws IllegalArgumentException	if the parameter is unknown, a value is invalid or it affects the binning
+   */
+  public void addParameter(String name, String... values) {
+    List<String>			list;
+    LightGBMParameters.Definition	def;
+
+    def = LightGBMParameters.lookup(name);
+    if ((def != null) && LightGBMParameters.isDataset(def.getName()))
+      throw new IllegalArgumentException("LightGBM parameter '" + name + "' affects the binning of the dataset, "
+	+ "which is shared by all trials, and cannot be tuned!");
+
+    list = new ArrayList<>();
+    for (String value: values) {
+      LightGBMParameters.parse(name + "=" + value);
+      list.add(value);
+    }
+    if (list.isEmpty())
+      throw new IllegalArgumentException("No values provided for parameter: " + name);
+    m_Space.put(name, list);
+  }
+
+  /**
+   * Sets the maximum number of trials. If the grid of the search space is
+   * larger, trials get sampled randomly from it.
+   *
+   * @param value	the number of trials
+   */
+  public void setNumTrials(int value) {
+    if (value >= 1)
+      m_NumTrials = value;
+  }
+
+  /**
+   * Returns the maximum number of trials.
+   *
+   * @return		the number of trials
+   */
+  public int getNumTrials() {
+    return m_NumTrials;
+  }
+
+  /**
+   * Sets the number of iterations that all trials get trained for.
+   *
+   * @param value	the iterations
+   */
+  public void setMinIterations(int value) {
+    if (value >= 1)
+      m_MinIterations = value;
+  }
+
+  /**
+   * Returns the number of iterations that all trials get trained for.
+   *
+   * @return		the iterations
+   */
+  public int getMinIterations() {
+    return m_MinIterations;
+  }
+
+  /**
+   * Sets the reduction factor, i.e., only 1/eta of the trials get promoted
+   * to the next rung, which trains eta times as many iterations.
+   *
+   * @param value	the factor
+   */
+  public void setEta(int value) {
+    if (value >= 2)
+      m_Eta = value;
+  }
+
+  /**
+   * Returns the reduction factor.
+   *
+   * @return		the factor
+   */
+  public int getEta() {
+    return m_Eta;
+  }
+
+  /**
+   * Sets the total number of threads to use.
+   *
+   * @param value	the threads, less than 1 for as many as available in the JVM-wide budget
+   */
+  public void setNumThreads(int value) {
+    m_NumThreads = value;
+  }
+
+  /**
+   * Returns the total number of threads to use.
+   *
+   * @return		the threads, less than 1 for as many as available in the JVM-wide budget
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Sets the size of the validation set.
+   *
+   * @param value	the size in percent (0-100 excl)
+   */
+  public void setValidationPercentage(double value) {
+    if ((value > 0) && (value < 100))
+      m_ValidationPercentage = value;
+  }
+
+  /**
+   * Returns the size of the validation set.
+   *
+   * @return		the size in percent
+   */
+  public double getValidationPercentage() {
+    return m_ValidationPercentage;
+  }
+
+  /**
+   * Sets the seed for sampling trials and splitting the data.
+   *
+   * @param value	the seed
+   */
+  public void setSeed(long value) {
+    m_Seed = value;
+  }
+
+  /**
+   * Returns the seed for sampling trials and splitting the data.
+   *
+   * @return		the seed
+   */
+  public long getSeed() {
+    return m_Seed;
+  }
+
+  /**
+   * Generates the parameters of the trials: the full grid if it is not
+   * larger than the number of trials, otherwise a random sample of it.
+   *
+   * @param random	for sampling
+   * @return		the trial parameters
+   */
+  protected List<String> sample(Random random) {
+    Set<String>		result;
+    List<String>	names;
+    StringBuilder	params;
+    long		size;
+    int[]		indices;
+    int			attempts;
+    int			i;
+    int			n;
+
+    names = new ArrayList<>(m_Space.keySet());
+    size  = 1;
+    for (String name: names)
+      size = Math.min(size * m_Space.get(name).size(), Integer.MAX_VALUE);
+
+    result  = new LinkedHashSet<>();
+    indices = new int[names.size()];
+    if (size <= m_NumTrials) {
+      for (n = 0; n < size; n++) {
+	params = new StringBuilder();
+	for (i = 0; i < names.size(); i++)
+	  params.append(i > 0 ? " " : "").append(names.get(i)).append("=").append(m_Space.get(names.get(i)).get(indices[i]));
+	result.add(params.toString());
+	// next grid point
+	for (i = names.size() - 1; i >= 0; i--) {
+	  indices[i]++;
+	  if (indices[i] < m_Space.get(names.get(i)).size())
+	    break;
+	  indices[i] = 0;
+	}
+      }
+    }
+    else {
+      attempts = 0;
+      while ((result.size() < m_NumTrials) && (attempts < m_NumTrials * 100)) {
+	params = new StringBuilder();
+	for (i = 0; i < names.size(); i++)
+	  params.append(i > 0 ? " " : "").append(names.get(i)).append("=").append(m_Space.get(names.get(i)).get(random.nextInt(m_Space.get(names.get(i)).size())));
+	result.add(params.toString());
+	attempts++;
+      }
+    }
+
+    return new ArrayList<>(result);
+  }
+
+  /**
+   * Returns the parameter that sets the number of threads, if any.
+   *
+   * @param parameters	the parameters to check
+   * @return		the key=value pair, null if the number of threads is not set
+   */
+  protected static String numThreadsParameter(String parameters) {
+    Map<String,String>	params;
+
+    params = LightGBMParameters.parse(parameters);
+    if (params.containsKey("num_threads"))
+      return "num_threads=" + params.get("num_threads");
+    return null;
+  }
+
+  /**
+   * Trains the trial up to the specified number of iterations, evaluating
+   * the validation metric after each iteration.
+   *
+   * @param trial	the trial to train
+   * @param iterations	the number of iterations to reach
+   * @param metricIndex	the index of the metric
+   * @param higherBetter	whether higher values are better
+   * @param patience	the number of iterations without improvement before stopping, 0 for off
+   * @throws Exception	if training fails
+   */
+  protected void trainTrial(Trial trial, int iterations, int metricIndex, boolean higherBetter, int patience) throws Exception {
+    double	value;
+
+    while (!trial.m_Finished && (trial.m_Iterations < iterations)) {
+      if (trial.m_Booster.updateOneIter()) {
+	trial.m_Finished = true;
+	break;
+      }
+      trial.m_Iterations++;
+      value = trial.m_Booster.getEval(1)[metricIndex];
+      if (Double.isNaN(trial.m_BestValue) || (higherBetter ? value > trial.m_BestValue : value < trial.m_BestValue)) {
+	trial.m_BestValue     = value;
+	trial.m_BestIteration = trial.m_Iterations;
+      }
+      else if ((patience > 0) && (trial.m_Iterations - trial.m_BestIteration >= patience)) {
+	trial.m_Finished = true;
+      }
+    }
+  }
+
+  /**
+   * Runs the trials concurrently up to the specified number of iterations.
+   *
+   * @param trials	the trials to run
+   * @param iterations	the number of iterations to reach
+   * @param numThreads	the total number of threads
+   * @param threadsParam	the user-supplied number of threads parameter, null to split the threads
+   * @param metricIndex	the index of the metric
+   * @param higherBetter	whether higher values are better
+   * @param patience	the number of iterations without improvement before stopping, 0 for off
+   * @throws Exception	if training fails
+   */
+  protected void runRung(List<Trial> trials, int iterations, int numThreads, String threadsParam, int metricIndex, boolean higherBetter, int patience) throws Exception {
+    ExecutorService	executor;
+    List<Future<?>>	futures;
+    int			poolSize;
+    String		threads;
+
+    poolSize = Math.max(1, Math.min(trials.size(), numThreads));
+    threads  = (threadsParam != null) ? threadsParam : "num_threads=" + Math.max(1, numThreads / poolSize);
+
+    executor = Executors.newFixedThreadPool(poolSize);
+    try {
+      futures = new ArrayList<>();
+      for (Trial trial: trials) {
+	futures.add(executor.submit(() -> {
+	  // LightGBM applies the number of threads to the calling thread only
+	  LightGBMUtils.resetParameter(trial.m_Booster, threads);
+	  trainTrial(trial, iterations, metricIndex, higherBetter, patience);
+	  return null;
+	}));
+      }
+      for (Future<?> future: futures) {
+	try {
+	  future.get();
+	}
+	catch (ExecutionException e) {
+	  if (e.getCause() instanceof Exception)
+	    throw (Exception) e.getCause();
+	  throw e;
+	}
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Performs the search on the data.
+   *
+   * @param data	the data to tune on
+   * @return		the trials and the best configuration
+   * @throws Exception	if the search fails
+   */
+  public Result tune(Instances data) throws Exception {
+    LGBMDataset		dataset;
+    LGBMDataset		train;
+    LGBMDataset		valid;
+    List<Trial>		trials;
+    List<Trial>		active;
+    Trial		best;
+    LightGBM		setup;
+    String[]		names;
+    String		metric;
+    String		threadsParam;
+    boolean		higherBetter;
+    int			metricIndex;
+    int			numThreads;
+    int			numTrain;
+    int			maxIterations;
+    int			iterations;
+    int			rung;
+    int			keep;
+    int			i;
+
+    if (m_Space.isEmpty())
+      throw new IllegalStateException("No parameters to tune!");
+
+    m_Template.getCapabilities().testWithFail(data);
+
+    data = new Instances(data);
+    data.deleteWithMissingClass();
+    data.randomize(new Random(m_Seed));
+    numTrain = data.numInstances() - (int) Math.round(data.numInstances() * m_ValidationPercentage / 100);
+    if ((numTrain < 1) || (numTrain == data.numInstances()))
+      throw new IllegalArgumentException("Not enough data for splitting off a validation set: " + data.numInstances());
+
+    threadsParam  = numThreadsParameter(m_Template.getParameters());
+    maxIterations = m_Template.getNumIterations();
+    trials        = new ArrayList<>();
+    for (String params: sample(new Random(m_Seed)))
+      trials.add(new Trial(params));
+
+    setup      = (LightGBM) AbstractClassifier.makeCopy(m_Template);
+    numThreads = LightGBMThreads.acquire(m_NumThreads);
+    dataset    = null;
+    train      = null;
+    valid      = null;
+    try {
+      dataset = LightGBMUtils.fromInstances(data, null, m_Template.getSinglePrecision(), m_Template.datasetParameters(data, numThreads));
+      train   = LightGBMUtils.subset(dataset, range(0, numTrain));
+      valid   = LightGBMUtils.subset(dataset, range(numTrain, data.numInstances()));
+
+      // create boosters, trial parameters take precedence
+      for (Trial trial: trials) {
+	setup.setParameters(LightGBMParameters.merge(trial.getParameters(), m_Template.getParameters()));
+	trial.m_Booster = LGBMBooster.create(train, setup.actualParameters(data));
+	trial.m_Booster.addValidData(valid);
+      }
+      names        = trials.get(0).m_Booster.getEvalNames();
+      metricIndex  = m_Template.metricIndex(names, m_Template.getEarlyStoppingMetric());
+      metric       = names[metricIndex];
+      higherBetter = m_Template.isHigherBetter(metric);
+      if (m_Template.getDebug())
+	System.out.println("Tuning " + trials.size() + " trial(s) on " + metric + " with up to " + maxIterations + " iteration(s)");
+
+      // successive halving
+      active     = new ArrayList<>(trials);
+      iterations = Math.min(m_MinIterations, maxIterations);
+      rung       = 0;
+      while (true) {
+	runRung(active, iterations, numThreads, threadsParam, metricIndex, higherBetter, m_Template.getEarlyStoppingRounds());
+	if (m_Template.getDebug())
+	  System.out.println("Rung " + rung + ": " + active.size() + " trial(s), " + iterations + " iteration(s)");
+	if ((iterations >= maxIterations) || (active.size() <= 1))
+	  break;
+	active.sort(comparator(higherBetter));
+	keep = Math.max(1, active.size() / m_Eta);
+	for (i = keep; i < active.size(); i++) {
+	  active.get(i).m_PrunedRung = rung;
+	  active.get(i).m_Booster.close();
+	  active.get(i).m_Booster = null;
+	}
+	active     = new ArrayList<>(active.subList(0, keep));
+	iterations = (int) Math.min((long) iterations * m_Eta, maxIterations);
+	rung++;
+      }
+
+      trials.sort(comparator(higherBetter));
+      best = trials.get(0);
+    }
+    finally {
+      for (Trial trial: trials) {
+	if (trial.m_Booster != null) {
+	  trial.m_Booster.close();
+	  trial.m_Booster = null;
+	}
+      }
+      if (train != null)
+	train.close();
+      if (valid != null)
+	valid.close();
+      if (dataset != null)
+	dataset.close();
+      LightGBMThreads.release(numThreads);
+    }
+
+    return new Result(metric, trials, best);
+  }
+
+  /**
+   * Returns a comparator that sorts the trials, best first.
+   *
+   * @param higherBetter	whether higher values are better
+   * @return		the comparator
+   */
+  protected static Comparator<Trial> comparator(boolean higherBetter) {
+    return (t1, t2) -> {
+      if (Double.isNaN(t1.m_BestValue) || Double.isNaN(t2.m_BestValue))
+	return Boolean.compare(Double.isNaN(t1.m_BestValue), Double.isNaN(t2.m_BestValue));
+      if (higherBetter)
+	return Double.compare(t2.m_BestValue, t1.m_BestValue);
+      else
+	return Double.compare(t1.m_BestValue, t2.m_BestValue);
+    };
+  }
+
+  /**
+   * Returns the consecutive row indices.
+   *
+   * @param from	the first row (incl)
+   * @param to		the last row (excl)
+   * @return		the indices
+   */
+  protected static int[] range(int from, int to) {
+    int[]	result;
+    int		i;
+
+    result = new int[to - from];
+    for (i = from; i < to; i++)
+      result[i - from] = i;
+
+    return result;
+  }
+}
@@ -20,18 +20,35 @@
 
 package weka.classifiers.functions;
 
+import com.microsoft.ml.lightgbm.SWIGTYPE_p_double;
+import com.microsoft.ml.lightgbm.SWIGTYPE_p_float;
+import com.microsoft.ml.lightgbm.SWIGTYPE_p_int;
+import com.microsoft.ml.lightgbm.SWIGTYPE_p_long_long;
+import com.microsoft.ml.lightgbm.SWIGTYPE_p_p_void;
+import com.microsoft.ml.lightgbm.SWIGTYPE_p_void;
+import com.microsoft.ml.lightgbm.doubleChunkedArray;
+import com.microsoft.ml.lightgbm.floatChunkedArray;
+import com.microsoft.ml.lightgbm.lightgbmlib;
+import com.microsoft.ml.lightgbm.lightgbmlibConstants;
+import io.github.metarank.lightgbm4j.LGBMBooster;
 import io.github.metarank.lightgbm4j.LGBMDataset;
 import io.github.metarank.lightgbm4j.LGBMException;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.converters.Loader;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 
 /**
  * Utility functions for LightGBM.
@@ -40,6 +57,29 @@ import java.util.zip.GZIPOutputStream;
  */
 public class LightGBMUtils {
 
+  /** the (private) field of the booster that holds the native handle. */
+  protected static Field m_BoosterHandle;
+
+  /** the (package-private) constructor for wrapping a native dataset handle. */
+  protected static Constructor<LGBMDataset> m_DatasetConstructor;
+
+  /**
+   * Ensures that the native libraries are loaded, as the lightgbm4j wrapper
+   * only loads them when its classes get initialized.
+   *
+   * @throws LGBMException	if loading fails
+   */
+  public static void loadNative() throws LGBMException {
+    if (!LGBMBooster.isNativeLoaded()) {
+      try {
+        LGBMBooster.loadNative();
+      }
+      catch (IOException e) {
+        throw new LGBMException("Failed to load native libraries: " + e);
+      }
+    }
+  }
+
   /**
    * Converts the Weka Instances into a LightGBM dataset.
    *
@@ -60,15 +100,49 @@ public class LightGBMUtils {
    * @throws LGBMException	if conversion fails
    */
   public static LGBMDataset fromInstances(Instances data, LGBMDataset reference) throws LGBMException {
-    LGBMDataset	result;
-    int		clsIndex;
-    String[]	columns;
-    double[] 	attValues;
-    float[] 	clsValues;
-    int		i;
-    int		n;
-    int		offset;
-    double[]	values;
+    return fromInstances(data, reference, false);
+  }
+
+  /**
+   * Converts the Weka Instances into a LightGBM dataset.
+   * The attribute values are streamed straight into a single, off-heap
+   * buffer that is handed to LightGBM, without any intermediate copies on
+   * the Java heap. The buffer is released once LightGBM has built the dataset.
+   * Instance weights get set as "weight" field, unless all of them are 1.
+   * Missing values are passed on as NaN, which LightGBM treats as missing.
+   *
+   * @param data	the data to convert
+   * @param reference   the reference dataset to use, can be null
+   * @param float32	whether to use 32-bit floats instead of 64-bit doubles
+   * @return		the generated dataset
+   * @throws LGBMException	if conversion fails
+   */
+  public static LGBMDataset fromInstances(Instances data, LGBMDataset reference, boolean float32) throws LGBMException {
+    return fromInstances(data, reference, float32, "");
+  }
+
+  /**
+   * Converts the Weka Instances into a LightGBM dataset, using the
+   * specified parameters for constructing the dataset (e.g., num_threads).
+   *
+   * @param data	the data to convert
+   * @param reference   the reference dataset to use, can be null
+   * @param float32	whether to use 32-bit floats instead of 64-bit doubles
+   * @param parameters	the dataset parameters (blank-separated key=value pairs)
+   * @return		the generated dataset
+   * @throws LGBMException	if conversion fails
+   * @see #fromInstances(Instances, LGBMDataset, boolean)
+   */
+  public static LGBMDataset fromInstances(Instances data, LGBMDataset reference, boolean float32, String parameters) throws LGBMException {
+    LGBMDataset		result;
+    int			clsIndex;
+    String[]		columns;
+    float[] 		clsValues;
+    float[] 		weights;
+    int			i;
+    int			n;
+
+    loadNative();
 
     clsIndex = data.classIndex();
 
@@ -85,36 +159,1052 @@ public class LightGBMUtils {
     // class values
     clsValues = null;
     if (clsIndex > -1) {
-      values    = data.attributeToDoubleArray(clsIndex);
-      clsValues = new float[values.length];
-      for (i = 0; i < values.length; i++)
-        clsValues[i] = (float) values[i];
+      clsValues = new float[data.numInstances()];
+      for (i = 0; i < data.numInstances(); i++)
+        clsValues[i] = (float) data.instance(i).classValue();
     }
 
-    // attribute values
-    attValues = new double[data.numInstances() * columns.length];
-    offset    = 0;
-    for (Instance inst: data) {
-      n = 0;
-      values = inst.toDoubleArray();
-      for (i = 0; i < values.length; i++) {
-	if (i == clsIndex)
-	  continue;
-	attValues[offset + n] = values[i];
-	n++;
+    // instance weights (only if not all 1)
+    weights = null;
+    for (i = 0; i < data.numInstances(); i++) {
+      if (data.instance(i).weight() != 1.0) {
+        weights = new float[data.numInstances()];
+        break;
       }
-      offset += columns.length;
+    }
+    if (weights != null) {
+      for (i = 0; i < data.numInstances(); i++)
+        weights[i] = (float) data.instance(i).weight();
     }
 
     // create dataset
-    result = LGBMDataset.createFromMat(attValues, data.numInstances(), columns.length, true, "", reference);
+    if (isSparse(data))
+      result = createFromCSR(data, columns.length, reference, float32, parameters);
+    else
+      result = createFromMat(data, columns.length, reference, float32, parameters);
     result.setFeatureNames(columns);
     if (clsValues != null)
       result.setField("label", clsValues);
+    if (weights != null)
+      result.setField("weight", weights);
+
+    return result;
+  }
+
+  /**
+   * Creates a LightGBM dataset from the dense attribute values (excluding class).
+   * The values are streamed straight into a single, off-heap row-major matrix.
+   *
+   * @param data	the data to convert
+   * @param numFeatures	the number of features
+   * @param reference   the reference dataset to use, can be null
+   * @param float32	whether to use 32-bit floats instead of 64-bit doubles
+   * @param parameters	the dataset parameters
+   * @return		the generated dataset
+   * @throws LGBMException	if creation fails
+   */
+  protected static LGBMDataset createFromMat(Instances data, int numFeatures, LGBMDataset reference, boolean float32, String parameters) throws LGBMException {
+    int			clsIndex;
+    int			numAtts;
+    int			i;
+    long		offset;
+    SWIGTYPE_p_float	floatMatrix;
+    SWIGTYPE_p_double	doubleMatrix;
+    SWIGTYPE_p_p_void	handle;
+    int			code;
+
+    clsIndex     = data.classIndex();
+    numAtts      = data.numAttributes();
+    floatMatrix  = null;
+    doubleMatrix = null;
+    handle       = lightgbmlib.new_voidpp();
+    try {
+      if (float32)
+        floatMatrix = lightgbmlib.new_floatArray((long) data.numInstances() * numFeatures);
+      else
+        doubleMatrix = lightgbmlib.new_doubleArray((long) data.numInstances() * numFeatures);
+      offset = 0;
+      for (Instance inst: data) {
+        for (i = 0; i < numAtts; i++) {
+          if (i == clsIndex)
+            continue;
+          if (float32)
+            lightgbmlib.floatArray_setitem(floatMatrix, offset, (float) inst.value(i));
+          else
+            lightgbmlib.doubleArray_setitem(doubleMatrix, offset, inst.value(i));
+          offset++;
+        }
+      }
+
+      if (float32)
+        code = lightgbmlib.LGBM_DatasetCreateFromMat(
+          lightgbmlib.float_to_voidp_ptr(floatMatrix), lightgbmlibConstants.C_API_DTYPE_FLOAT32,
+          data.numInstances(), numFeatures, 1, parameters, (reference == null) ? null : reference.handle, handle);
+      else
+        code = lightgbmlib.LGBM_DatasetCreateFromMat(
+          lightgbmlib.double_to_voidp_ptr(doubleMatrix), lightgbmlibConstants.C_API_DTYPE_FLOAT64,
+          data.numInstances(), numFeatures, 1, parameters, (reference == null) ? null : reference.handle, handle);
+      if (code < 0)
+        throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+      return wrapDataset(lightgbmlib.voidpp_value(handle));
+    }
+    finally {
+      if (floatMatrix != null)
+        lightgbmlib.delete_floatArray(floatMatrix);
+      if (doubleMatrix != null)
+        lightgbmlib.delete_doubleArray(doubleMatrix);
+      lightgbmlib.delete_voidpp(handle);
+    }
+  }
+
+  /**
+   * Creates a LightGBM dataset from the sparse attribute values (excluding class),
+   * using the compressed sparse row (CSR) format. Only the non-zero values get
+   * transferred, i.e., the data never gets densified.
+   *
+   * @param data	the data to convert
+   * @param numFeatures	the number of features
+   * @param reference   the reference dataset to use, can be null
+   * @param float32	whether to use 32-bit floats instead of 64-bit doubles
+   * @param parameters	the dataset parameters
+   * @return		the generated dataset
+   * @throws LGBMException	if creation fails
+   */
+  protected static LGBMDataset createFromCSR(Instances data, int numFeatures, LGBMDataset reference, boolean float32, String parameters) throws LGBMException {
+    long		numNonZeros;
+    SWIGTYPE_p_int	indptr;
+    SWIGTYPE_p_int	indices;
+    SWIGTYPE_p_float	floatValues;
+    SWIGTYPE_p_double	doubleValues;
+    SWIGTYPE_p_p_void	handle;
+    int			code;
+
+    numNonZeros  = numNonZeros(data, 0, data.numInstances());
+    indptr       = lightgbmlib.new_intArray(data.numInstances() + 1);
+    indices      = lightgbmlib.new_intArray(numNonZeros);
+    floatValues  = null;
+    doubleValues = null;
+    handle       = lightgbmlib.new_voidpp();
+    try {
+      if (float32)
+        floatValues = lightgbmlib.new_floatArray(numNonZeros);
+      else
+        doubleValues = lightgbmlib.new_doubleArray(numNonZeros);
+      fillCSR(data, 0, data.numInstances(), indptr, indices, floatValues, doubleValues);
+
+      code = lightgbmlib.LGBM_DatasetCreateFromCSR(
+        lightgbmlib.int_to_voidp_ptr(indptr), lightgbmlibConstants.C_API_DTYPE_INT32, indices,
+        float32 ? lightgbmlib.float_to_voidp_ptr(floatValues) : lightgbmlib.double_to_voidp_ptr(doubleValues),
+        float32 ? lightgbmlibConstants.C_API_DTYPE_FLOAT32 : lightgbmlibConstants.C_API_DTYPE_FLOAT64,
+        data.numInstances() + 1, numNonZeros, numFeatures, parameters, (reference == null) ? null : reference.handle, handle);
+      if (code < 0)
+        throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+      return wrapDataset(lightgbmlib.voidpp_value(handle));
+    }
+    finally {
+      lightgbmlib.delete_intArray(indptr);
+      lightgbmlib.delete_intArray(indices);
+      if (floatValues != null)
+        lightgbmlib.delete_floatArray(floatValues);
+      if (doubleValues != null)
+        lightgbmlib.delete_doubleArray(doubleValues);
+      lightgbmlib.delete_voidpp(handle);
+    }
+  }
+
+  /**
+   * Creates a LightGBM dataset by reading the rows one by one from the loader.
+   * The feature values get collected in off-heap chunks of a fixed number of
+   * rows, which are then handed to LightGBM as separate matrices. Rows with
+   * a missing class value are skipped. Instance weights get set as "weight"
+   * field, unless all of them are 1.
+   *
+   * @param loader	the loader to read the rows from
+   * @param structure	the structure of the data, with the class set
+   * @param chunkSize	the number of rows per chunk
+   * @param float32	whether to use 32-bit floats instead of 64-bit doubles
+   * @return		the generated dataset
+   * @throws Exception	if reading or creation fails
+   */
+  public static LGBMDataset fromLoader(Loader loader, Instances structure, int chunkSize, boolean float32) throws Exception {
+    return fromLoader(loader, structure, chunkSize, float32, "");
+  }
+
+  /**
+   * Creates a LightGBM dataset by reading the rows one by one from the
+   * loader, using the specified parameters for constructing the dataset
+   * (e.g., num_threads).
+   *
+   * @param loader	the loader to read the rows from
+   * @param structure	the structure of the data, with the class set
+   * @param chunkSize	the number of rows per chunk
+   * @param float32	whether to use 32-bit floats instead of 64-bit doubles
+   * @param parameters	the dataset parameters (blank-separated key=value pairs)
+   * @return		the generated dataset
+   * @throws Exception	if reading or creation fails
+   * @see #fromLoader(Loader, Instances, int, boolean)
+   */
+  public static LGBMDataset fromLoader(Loader loader, Instances structure, int chunkSize, boolean float32, String parameters) throws Exception {
+    LGBMDataset		result;
+    int			clsIndex;
+    int			numAtts;
+    int			numFeatures;
+    String[]		columns;
+    Instance		inst;
+    int			numRows;
+    int			numChunks;
+    boolean		weighted;
+    int			i;
+    int			n;
+    floatChunkedArray	floatValues;
+    doubleChunkedArray	doubleValues;
+    floatChunkedArray	labels;
+    floatChunkedArray	weights;
+    SWIGTYPE_p_int	chunkRows;
+    SWIGTYPE_p_p_void	handle;
+    int			code;
+
+    loadNative();
+
+    clsIndex    = structure.classIndex();
+    numAtts     = structure.numAttributes();
+    numFeatures = numAtts - 1;
+    columns     = new String[numFeatures];
+    n = 0;
+    for (i = 0; i < numAtts; i++) {
+      if (i == clsIndex)
+        continue;
+      columns[n] = structure.attribute(i).name();
+      n++;
+    }
+
+    floatValues  = null;
+    doubleValues = null;
+    if (float32)
+      floatValues = new floatChunkedArray((long) chunkSize * numFeatures);
+    else
+      doubleValues = new doubleChunkedArray((long) chunkSize * numFeatures);
+    labels    = new floatChunkedArray(chunkSize);
+    weights   = new floatChunkedArray(chunkSize);
+    chunkRows = null;
+    handle    = lightgbmlib.new_voidpp();
+    try {
+      // read rows
+      numRows  = 0;
+      weighted = false;
+      while ((inst = loader.getNextInstance(structure)) != null) {
+        if (inst.classIsMissing())
+          continue;
+        for (i = 0; i < numAtts; i++) {
+          if (i == clsIndex)
+            continue;
+          if (float32)
+            floatValues.add((float) inst.value(i));
+          else
+            doubleValues.add(inst.value(i));
+        }
+        labels.add((float) inst.classValue());
+        weights.add((float) inst.weight());
+        if (inst.weight() != 1.0)
+          weighted = true;
+        numRows++;
+      }
+      if (numRows == 0)
+        throw new IllegalStateException("No training data with class values!");
+
+      // rows per chunk
+      numChunks = (int) (float32 ? floatValues.get_chunks_count() : doubleValues.get_chunks_count());
+      chunkRows = lightgbmlib.new_intArray(numChunks);
+      for (i = 0; i < numChunks - 1; i++)
+        lightgbmlib.intArray_setitem(chunkRows, i, chunkSize);
+      lightgbmlib.intArray_setitem(chunkRows, numChunks - 1, numRows - (numChunks - 1) * chunkSize);
+
+      // create dataset
+      code = lightgbmlib.LGBM_DatasetCreateFromMats(
+        numChunks, float32 ? floatValues.data_as_void() : doubleValues.data_as_void(),
+        float32 ? lightgbmlibConstants.C_API_DTYPE_FLOAT32 : lightgbmlibConstants.C_API_DTYPE_FLOAT64,
+        chunkRows, numFeatures, 1, parameters, null, handle);
+      if (code < 0)
+        throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+      result = wrapDataset(lightgbmlib.voidpp_value(handle));
+      result.setFeatureNames(columns);
+      setField(result, "label", labels, numRows);
+      if (weighted)
+        setField(result, "weight", weights, numRows);
+
+      return result;
+    }
+    finally {
+      if (floatValues != null) {
+        floatValues.release();
+        floatValues.delete();
+      }
+      if (doubleValues != null) {
+        doubleValues.release();
+        doubleValues.delete();
+      }
+      labels.release();
+      labels.delete();
+      weights.release();
+      weights.delete();
+      if (chunkRows != null)
+        lightgbmlib.delete_intArray(chunkRows);
+      lightgbmlib.delete_voidpp(handle);
+    }
+  }
+
+  /**
+   * Sets the float field of the dataset from the chunked values.
+   *
+   * @param dataset	the dataset to update
+   * @param field	the name of the field
+   * @param values	the values
+   * @param numRows	the number of values
+   * @throws LGBMException	if setting fails
+   */
+  protected static void setField(LGBMDataset dataset, String field, floatChunkedArray values, int numRows) throws LGBMException {
+    SWIGTYPE_p_float	array;
+    int			code;
+
+    array = lightgbmlib.new_floatArray(numRows);
+    try {
+      values.coalesce_to(array);
+      code = lightgbmlib.LGBM_DatasetSetField(dataset.handle, field, lightgbmlib.float_to_voidp_ptr(array), numRows, lightgbmlibConstants.C_API_DTYPE_FLOAT32);
+      if (code < 0)
+        throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+    }
+    finally {
+      lightgbmlib.delete_floatArray(array);
+    }
+  }
+
+  /**
+   * Checks whether the data consists only of sparse instances.
+   *
+   * @param data	the data to check
+   * @return		true if all instances are sparse
+   */
+  public static boolean isSparse(Instances data) {
+    if (data.numInstances() == 0)
+      return false;
+    for (Instance inst: data) {
+      if (!(inst instanceof SparseInstance))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Counts the number of stored (non-zero) attribute values in the specified
+   * range of instances, excluding the class.
+   *
+   * @param data	the data to inspect
+   * @param from	the first instance (incl)
+   * @param to		the last instance (excl)
+   * @return		the number of values
+   * @throws LGBMException	if there are too many values for 32-bit indexing
+   */
+  public static int numNonZeros(Instances data, int from, int to) throws LGBMException {
+    long	result;
+    int		clsIndex;
+    int		n;
+    int		i;
+    Instance	inst;
+
+    result   = 0;
+    clsIndex = data.classIndex();
+    for (n = from; n < to; n++) {
+      inst = data.instance(n);
+      for (i = 0; i < inst.numValues(); i++) {
+        if (inst.index(i) != clsIndex)
+          result++;
+      }
+    }
+
+    if (result > Integer.MAX_VALUE)
+      throw new LGBMException("Too many non-zero values for CSR format: " + result);
+
+    return (int) result;
+  }
+
+  /**
+   * Fills the native CSR arrays with the sparse values (excluding class) of
+   * the specified range of instances.
+   *
+   * @param data	the data to convert
+   * @param from	the first instance (incl)
+   * @param to		the last instance (excl)
+   * @param indptr	the row offsets to fill, (to - from + 1) values
+   * @param indices	the feature indices to fill
+   * @param floatValues	the feature values to fill if 32-bit floats, otherwise null
+   * @param doubleValues	the feature values to fill if 64-bit doubles, otherwise null
+   */
+  protected static void fillCSR(Instances data, int from, int to, SWIGTYPE_p_int indptr, SWIGTYPE_p_int indices, SWIGTYPE_p_float floatValues, SWIGTYPE_p_double doubleValues) {
+    int		clsIndex;
+    int		offset;
+    int		index;
+    int		n;
+    int		i;
+    Instance	inst;
+
+    clsIndex = data.classIndex();
+    offset   = 0;
+    lightgbmlib.intArray_setitem(indptr, 0, 0);
+    for (n = from; n < to; n++) {
+      inst = data.instance(n);
+      for (i = 0; i < inst.numValues(); i++) {
+        index = inst.index(i);
+        if (index == clsIndex)
+          continue;
+        lightgbmlib.intArray_setitem(indices, offset, featureIndex(index, clsIndex));
+        if (floatValues != null)
+          lightgbmlib.floatArray_setitem(floatValues, offset, (float) inst.valueSparse(i));
+        else
+          lightgbmlib.doubleArray_setitem(doubleValues, offset, inst.valueSparse(i));
+        offset++;
+      }
+      lightgbmlib.intArray_setitem(indptr, n - from + 1, offset);
+    }
+  }
+
+  /**
+   * Turns the attribute index into a feature index, i.e., skipping the class.
+   *
+   * @param attIndex	the attribute index
+   * @param clsIndex	the class index, -1 if none
+   * @return		the feature index
+   */
+  protected static int featureIndex(int attIndex, int clsIndex) {
+    if ((clsIndex > -1) && (attIndex > clsIndex))
+      return attIndex - 1;
+    else
+      return attIndex;
+  }
+
+  /**
+   * Wraps the native dataset handle in a {@link LGBMDataset} object.
+   *
+   * @param handle	the native handle
+   * @return		the dataset
+   * @throws LGBMException	if wrapping fails
+   */
+  public static synchronized LGBMDataset wrapDataset(SWIGTYPE_p_void handle) throws LGBMException {
+    try {
+      if (m_DatasetConstructor == null) {
+        m_DatasetConstructor = LGBMDataset.class.getDeclaredConstructor(SWIGTYPE_p_void.class);
+        m_DatasetConstructor.setAccessible(true);
+      }
+      return m_DatasetConstructor.newInstance(handle);
+    }
+    catch (Exception e) {
+      lightgbmlib.LGBM_DatasetFree(handle);
+      throw new LGBMException("Failed to wrap dataset handle: " + e);
+    }
+  }
+
+  /**
+   * Creates a subset of the dataset with the specified rows. The subset
+   * shares the bin mappers of the dataset, i.e., no re-binning occurs.
+   *
+   * @param dataset	the dataset to create the subset from
+   * @param rows	the indices of the rows to use (sorted)
+   * @return		the subset
+   * @throws LGBMException	if creation fails
+   */
+  public static LGBMDataset subset(LGBMDataset dataset, int[] rows) throws LGBMException {
+    SWIGTYPE_p_int	indices;
+    SWIGTYPE_p_p_void	handle;
+    int			code;
+    int			i;
+
+    indices = lightgbmlib.new_intArray(rows.length);
+    handle  = lightgbmlib.new_voidpp();
+    try {
+      for (i = 0; i < rows.length; i++)
+        lightgbmlib.intArray_setitem(indices, i, rows[i]);
+      code = lightgbmlib.LGBM_DatasetGetSubset(dataset.handle, indices, rows.length, "", handle);
+      if (code < 0)
+        throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+      return wrapDataset(lightgbmlib.voidpp_value(handle));
+    }
+    finally {
+      lightgbmlib.delete_intArray(indices);
+      lightgbmlib.delete_voidpp(handle);
+    }
+  }
+
+  /**
+   * Fills the row-major matrix with the attribute values (excluding class value)
+   * of the specified range of instances. Avoids any per-instance allocation.
+   *
+   * @param data	the data to convert
+   * @param from	the first instance (incl)
+   * @param to		the last instance (excl)
+   * @param matrix	the matrix to fill, must hold at least (to - from) * numFeatures values
+   * @return		the number of features per row
+   */
+  public static int fillMatrix(Instances data, int from, int to, double[] matrix) {
+    int		clsIndex;
+    int		numAtts;
+    int		numFeatures;
+    int		offset;
+    int		i;
+    int		n;
+    Instance	inst;
+
+    clsIndex    = data.classIndex();
+    numAtts     = data.numAttributes();
+    numFeatures = numAtts - (clsIndex == -1 ? 0 : 1);
+    offset      = 0;
+    for (n = from; n < to; n++) {
+      inst = data.instance(n);
+      for (i = 0; i < numAtts; i++) {
+        if (i == clsIndex)
+          continue;
+        matrix[offset] = inst.value(i);
+        offset++;
+      }
+    }
+
+    return numFeatures;
+  }
+
+  /**
+   * Fills the native row-major matrix with the attribute values (excluding
+   * class value) of the specified range of instances, without an
+   * intermediate matrix on the heap.
+   *
+   * @param data	the data to convert
+   * @param from	the first instance (incl)
+   * @param to		the last instance (excl)
+   * @param matrix	the native matrix to fill, must hold at least (to - from) * numFeatures values
+   * @return		the number of features per row
+   */
+  public static int fillMatrix(Instances data, int from, int to, SWIGTYPE_p_double matrix) {
+    int		clsIndex;
+    int		numAtts;
+    int		numFeatures;
+    long	offset;
+    int		i;
+    int		n;
+    Instance	inst;
+
+    clsIndex    = data.classIndex();
+    numAtts     = data.numAttributes();
+    numFeatures = numAtts - (clsIndex == -1 ? 0 : 1);
+    offset      = 0;
+    for (n = from; n < to; n++) {
+      inst = data.instance(n);
+      for (i = 0; i < numAtts; i++) {
+        if (i == clsIndex)
+          continue;
+        lightgbmlib.doubleArray_setitem(matrix, offset, inst.value(i));
+        offset++;
+      }
+    }
+
+    return numFeatures;
+  }
+
+  /**
+   * Returns the native handle of the booster.
+   * The lightgbm4j wrapper does not expose it, but it is required for calls
+   * that the wrapper does not support (correctly).
+   *
+   * @param booster	the booster to get the handle for
+   * @return		the handle
+   * @throws LGBMException	if the handle cannot be accessed
+   */
+  public static synchronized SWIGTYPE_p_void getHandle(LGBMBooster booster) throws LGBMException {
+    try {
+      if (m_BoosterHandle == null) {
+        m_BoosterHandle = LGBMBooster.class.getDeclaredField("handle");
+        m_BoosterHandle.setAccessible(true);
+      }
+      return lightgbmlib.voidpp_value((SWIGTYPE_p_p_void) m_BoosterHandle.get(booster));
+    }
+    catch (Exception e) {
+      throw new LGBMException("Failed to access booster handle: " + e);
+    }
+  }
+
+  /**
+   * Removes the last iteration from the booster.
+   *
+   * @param booster	the booster to update
+   * @throws LGBMException	if the rollback fails
+   */
+  public static void rollbackOneIter(LGBMBooster booster) throws LGBMException {
+    if (lightgbmlib.LGBM_BoosterRollbackOneIter(getHandle(booster)) < 0)
+      throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+  }
+
+  /**
+   * Updates parameters of the booster, eg the number of threads.
+   *
+   * @param booster	the booster to update
+   * @param parameters	the parameters (blank-separated key=value pairs)
+   * @throws LGBMException	if the update fails
+   */
+  public static void resetParameter(LGBMBooster booster, String parameters) throws LGBMException {
+    if (lightgbmlib.LGBM_BoosterResetParameter(getHandle(booster), parameters) < 0)
+      throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+  }
+
+  /**
+   * Returns the number of iterations of the booster.
+   *
+   * @param booster	the booster to query
+   * @return		the number of iterations
+   * @throws LGBMException	if the query fails
+   */
+  public static int currentIteration(LGBMBooster booster) throws LGBMException {
+    SWIGTYPE_p_int	result;
+
+    result = lightgbmlib.new_intp();
+    try {
+      if (lightgbmlib.LGBM_BoosterGetCurrentIteration(getHandle(booster), result) < 0)
+        throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+      return lightgbmlib.intp_value(result);
+    }
+    finally {
+      lightgbmlib.delete_intp(result);
+    }
+  }
+
+  /**
+   * Merges the trees of the other booster into the booster, placing them
+   * in front of the booster's own trees.
+   *
+   * @param booster	the booster to merge into
+   * @param other	the booster with the trees to prepend
+   * @throws LGBMException	if merging fails
+   */
+  public static void merge(LGBMBooster booster, LGBMBooster other) throws LGBMException {
+    if (lightgbmlib.LGBM_BoosterMerge(getHandle(booster), getHandle(other)) < 0)
+      throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+  }
+
+  /**
+   * Returns the SHA-256 digest of the file's content.
+   *
+   * @param file	the file to compute the digest for
+   * @return		the digest as hex string
+   * @throws IOException	if reading fails
+   */
+  public static String digest(File file) throws IOException {
+    MessageDigest	digest;
+    StringBuilder	result;
+    byte[]		buffer;
+    int		len;
+
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (Exception e) {
+      throw new IOException("Failed to instantiate SHA-256 digest!", e);
+    }
+    buffer = new byte[LightGBMModelCodec.BUFFER_SIZE];
+    try (InputStream in = new FileInputStream(file)) {
+      while ((len = in.read(buffer)) > 0)
+        digest.update(buffer, 0, len);
+    }
+    result = new StringBuilder();
+    for (byte b: digest.digest())
+      result.append(String.format("%02x", b));
+
+    return result.toString();
+  }
+
+  /**
+   * Returns the SHA-256 digest of the data.
+   *
+   * @param data	the data to compute the digest for
+   * @return		the digest as hex string
+   */
+  public static String digest(byte[] data) {
+    MessageDigest	digest;
+    StringBuilder	result;
+
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Failed to instantiate SHA-256 digest!", e);
+    }
+    result = new StringBuilder();
+    for (byte b: digest.digest(data))
+      result.append(String.format("%02x", b));
+
+    return result.toString();
+  }
+
+  /**
+   * Moves the temporary file to the target, unless the target already
+   * exists (e.g., written by another process), in which case the temporary
+   * file gets deleted.
+   *
+   * @param tmp		the temporary file
+   * @param target	the target file
+   * @throws IOException	if moving fails
+   */
+  public static void publish(File tmp, File target) throws IOException {
+    if (target.exists()) {
+      tmp.delete();
+      return;
+    }
+    try {
+      Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (FileAlreadyExistsException e) {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Saves the model of the booster as text file in the directory, named
+   * after the SHA-256 digest of its content. The model text gets written
+   * by LightGBM directly, i.e., it never gets materialized on the Java heap.
+   * Identical models share the same file.
+   *
+   * @param booster	the booster to save
+   * @param numIterations	the number of iterations to save, 0 for all
+   * @param dir		the directory to save the model in
+   * @return		the model file
+   * @throws Exception	if saving fails
+   */
+  public static File saveModel(LGBMBooster booster, int numIterations, File dir) throws Exception {
+    File	tmp;
+    File	result;
+
+    if (!dir.isDirectory() && !dir.mkdirs())
+      throw new IOException("Failed to create model directory: " + dir);
+    tmp = File.createTempFile("model", ".tmp", dir);
+    try {
+      if (lightgbmlib.LGBM_BoosterSaveModel(getHandle(booster), 0, numIterations, lightgbmlibConstants.C_API_FEATURE_IMPORTANCE_GAIN, tmp.getAbsolutePath()) < 0)
+        throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+      result = new File(dir, digest(tmp) + ".txt").getAbsoluteFile();
+      publish(tmp, result);
+    }
+    finally {
+      if (tmp.exists())
+        tmp.delete();
+    }
 
     return result;
   }
 
+  /**
+   * Sets the raw scores of the booster on the data as "init_score" field of
+   * the dataset, for continuing training from the booster's model. The data
+   * gets predicted in blocks of rows, to limit the memory requirements.
+   *
+   * @param dataset	the dataset to set the scores for
+   * @param booster	the booster to compute the scores with
+   * @param data	the data that the dataset was created from
+   * @param numOutputs	the number of outputs per row (eg number of classes)
+   * @throws LGBMException	if computing or setting the scores fails
+   */
+  public static void setInitScore(LGBMDataset dataset, LGBMBooster booster, Instances data, int numOutputs) throws LGBMException {
+    double[]			scores;
+    double[]			predictions;
+    SWIGTYPE_p_double		matrix;
+    SWIGTYPE_p_double		output;
+    SWIGTYPE_p_long_long	outputLen;
+    boolean			sparse;
+    int			numRows;
+    int			numFeatures;
+    int			blockSize;
+    int			from;
+    int			to;
+    int			i;
+    int			n;
+
+    numRows     = data.numInstances();
+    numFeatures = data.numAttributes() - (data.classIndex() == -1 ? 0 : 1);
+    sparse      = isSparse(data);
+    blockSize   = Math.max(1, Math.min(numRows, 10000));
+    matrix      = sparse ? null : lightgbmlib.new_doubleArray((long) blockSize * numFeatures);
+    output      = sparse ? null : lightgbmlib.new_doubleArray((long) blockSize * numOutputs);
+    outputLen   = sparse ? null : lightgbmlib.new_int64_tp();
+    scores      = new double[numRows * numOutputs];
+    try {
+      for (from = 0; from < numRows; from += blockSize) {
+        to = Math.min(from + blockSize, numRows);
+        if (sparse) {
+          predictions = predictForCSR(booster, data, from, to, numFeatures, numOutputs, lightgbmlibConstants.C_API_PREDICT_RAW_SCORE);
+        }
+        else {
+          fillMatrix(data, from, to, matrix);
+          predictions = predictForMat(booster, matrix, to - from, numFeatures, output, outputLen, lightgbmlibConstants.C_API_PREDICT_RAW_SCORE);
+        }
+        // predictions are row-major, init scores are class-major
+        for (i = from; i < to; i++) {
+          for (n = 0; n < numOutputs; n++)
+            scores[n * numRows + i] = predictions[(i - from) * numOutputs + n];
+        }
+      }
+    }
+    finally {
+      if (matrix != null)
+        lightgbmlib.delete_doubleArray(matrix);
+      if (output != null)
+        lightgbmlib.delete_doubleArray(output);
+      if (outputLen != null)
+        lightgbmlib.delete_int64_tp(outputLen);
+    }
+
+    dataset.setField("init_score", scores);
+  }
+
+  /**
+   * Predicts the rows of the row-major matrix with a single native call.
+   * Unlike {@link LGBMBooster#predictForMat(double[], int, int, boolean, com.microsoft.ml.lightgbm.PredictionType)},
+   * the output buffer gets sized correctly for multi-class models.
+   *
+   * @param booster	the booster to use
+   * @param matrix	the row-major matrix with the feature values
+   * @param numRows	the number of rows in the matrix
+   * @param numFeatures	the number of features per row
+   * @param numOutputs	the number of outputs per row (eg number of classes)
+   * @return		the predictions, numRows * numOutputs values
+   * @throws LGBMException	if prediction fails
+   */
+  public static double[] predictForMat(LGBMBooster booster, double[] matrix, int numRows, int numFeatures, int numOutputs) throws LGBMException {
+    return predictForMat(booster, matrix, numRows, numFeatures, numOutputs, lightgbmlibConstants.C_API_PREDICT_NORMAL);
+  }
+
+  /**
+   * Predicts the rows of the row-major matrix with a single native call.
+   *
+   * @param booster	the booster to use
+   * @param matrix	the row-major matrix with the feature values
+   * @param numRows	the number of rows in the matrix
+   * @param numFeatures	the number of features per row
+   * @param numOutputs	the number of outputs per row (eg number of classes)
+   * @param predictType	the type of prediction (C_API_PREDICT_*)
+   * @return		the predictions, numRows * numOutputs values
+   * @throws LGBMException	if prediction fails
+   */
+  public static double[] predictForMat(LGBMBooster booster, double[] matrix, int numRows, int numFeatures, int numOutputs, int predictType) throws LGBMException {
+    SWIGTYPE_p_double		input;
+    SWIGTYPE_p_double		output;
+    SWIGTYPE_p_long_long	outputLen;
+    long			len;
+    long			i;
+
+    len       = (long) numRows * numFeatures;
+    input     = lightgbmlib.new_doubleArray(len);
+    output    = lightgbmlib.new_doubleArray((long) numRows * numOutputs);
+    outputLen = lightgbmlib.new_int64_tp();
+    try {
+      for (i = 0; i < len; i++)
+        lightgbmlib.doubleArray_setitem(input, i, matrix[(int) i]);
+      return predictForMat(booster, input, numRows, numFeatures, output, outputLen, predictType);
+    }
+    finally {
+      lightgbmlib.delete_doubleArray(input);
+      lightgbmlib.delete_doubleArray(output);
+      lightgbmlib.delete_int64_tp(outputLen);
+    }
+  }
+
+  /**
+   * Predicts the rows of the native row-major matrix with a single native
+   * call, using the supplied (reusable) output buffers.
+   *
+   * @param booster	the booster to use
+   * @param matrix	the native row-major matrix with the feature values
+   * @param numRows	the number of rows in the matrix
+   * @param numFeatures	the number of features per row
+   * @param output	the native output buffer, must hold at least numRows * numOutputs values
+   * @param outputLen	the native buffer for the number of generated outputs
+   * @param predictType	the type of prediction (C_API_PREDICT_*)
+   * @return		the predictions, numRows * numOutputs values
+   * @throws LGBMException	if prediction fails
+   */
+  public static double[] predictForMat(LGBMBooster booster, SWIGTYPE_p_double matrix, int numRows, int numFeatures, SWIGTYPE_p_double output, SWIGTYPE_p_long_long outputLen, int predictType) throws LGBMException {
+    double[]	result;
+    int		i;
+
+    if (lightgbmlib.LGBM_BoosterPredictForMat(
+      getHandle(booster), lightgbmlib.double_to_voidp_ptr(matrix), lightgbmlibConstants.C_API_DTYPE_FLOAT64,
+      numRows, numFeatures, 1, predictType, 0, -1, "", outputLen, output) < 0)
+      throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+    result = new double[(int) lightgbmlib.int64_tp_value(outputLen)];
+    for (i = 0; i < result.length; i++)
+      result[i] = lightgbmlib.doubleArray_getitem(output, i);
+
+    return result;
+  }
+
+  /**
+   * Predicts a single row with a single native call, passing the Java array
+   * straight through to the native side. The output buffers get reused.
+   *
+   * @param booster	the booster to use
+   * @param row		the feature values of the row
+   * @param output	the native output buffer, must hold at least result.length values
+   * @param outputLen	the native buffer for the number of generated outputs
+   * @param result	the array to store the predictions in
+   * @throws LGBMException	if prediction fails
+   */
+  public static void predictForRow(LGBMBooster booster, double[] row, SWIGTYPE_p_double output, SWIGTYPE_p_long_long outputLen, double[] result) throws LGBMException {
+    int		i;
+
+    if (lightgbmlib.LGBM_BoosterPredictForMatSingle(
+      row, getHandle(booster), lightgbmlibConstants.C_API_DTYPE_FLOAT64,
+      row.length, 1, lightgbmlibConstants.C_API_PREDICT_NORMAL, 0, -1, "", outputLen, output) < 0)
+      throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+    for (i = 0; i < result.length; i++)
+      result[i] = lightgbmlib.doubleArray_getitem(output, i);
+  }
+
+  /**
+   * Predicts the specified range of sparse instances with a single native
+   * call, passing the data in CSR format.
+   *
+   * @param booster	the booster to use
+   * @param data	the data to predict
+   * @param from	the first instance (incl)
+   * @param to		the last instance (excl)
+   * @param numFeatures	the number of features per row
+   * @param numOutputs	the number of outputs per row (eg number of classes)
+   * @return		the predictions, (to - from) * numOutputs values
+   * @throws LGBMException	if prediction fails
+   */
+  public static double[] predictForCSR(LGBMBooster booster, Instances data, int from, int to, int numFeatures, int numOutputs) throws LGBMException {
+    return predictForCSR(booster, data, from, to, numFeatures, numOutputs, lightgbmlibConstants.C_API_PREDICT_NORMAL);
+  }
+
+  /**
+   * Predicts the specified range of sparse instances with a single native
+   * call, passing the data in CSR format.
+   *
+   * @param booster	the booster to use
+   * @param data	the data to predict
+   * @param from	the first instance (incl)
+   * @param to		the last instance (excl)
+   * @param numFeatures	the number of features per row
+   * @param numOutputs	the number of outputs per row (eg number of classes)
+   * @param predictType	the type of prediction (C_API_PREDICT_*)
+   * @return		the predictions, (to - from) * numOutputs values
+   * @throws LGBMException	if prediction fails
+   */
+  public static double[] predictForCSR(LGBMBooster booster, Instances data, int from, int to, int numFeatures, int numOutputs, int predictType) throws LGBMException {
+    double[]			result;
+    int				numNonZeros;
+    SWIGTYPE_p_int		indptr;
+    SWIGTYPE_p_int		indices;
+    SWIGTYPE_p_double		values;
+    SWIGTYPE_p_double		output;
+    SWIGTYPE_p_long_long	outputLen;
+    int				i;
+
+    numNonZeros = numNonZeros(data, from, to);
+    indptr      = lightgbmlib.new_intArray(to - from + 1);
+    indices     = lightgbmlib.new_intArray(numNonZeros);
+    values      = lightgbmlib.new_doubleArray(numNonZeros);
+    output      = lightgbmlib.new_doubleArray((long) (to - from) * numOutputs);
+    outputLen   = lightgbmlib.new_int64_tp();
+    try {
+      fillCSR(data, from, to, indptr, indices, null, values);
+      if (lightgbmlib.LGBM_BoosterPredictForCSR(
+        getHandle(booster), lightgbmlib.int_to_voidp_ptr(indptr), lightgbmlibConstants.C_API_DTYPE_INT32, indices,
+        lightgbmlib.double_to_voidp_ptr(values), lightgbmlibConstants.C_API_DTYPE_FLOAT64,
+        to - from + 1, numNonZeros, numFeatures, predictType, 0, -1, "", outputLen, output) < 0)
+        throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+      result = new double[(int) lightgbmlib.int64_tp_value(outputLen)];
+      for (i = 0; i < result.length; i++)
+        result[i] = lightgbmlib.doubleArray_getitem(output, i);
+    }
+    finally {
+      lightgbmlib.delete_intArray(indptr);
+      lightgbmlib.delete_intArray(indices);
+      lightgbmlib.delete_doubleArray(values);
+      lightgbmlib.delete_doubleArray(output);
+      lightgbmlib.delete_int64_tp(outputLen);
+    }
+
+    return result;
+  }
+
+  /**
+   * Predicts a single sparse row with a single native call, passing the
+   * Java arrays with the non-zero values straight through to the native side.
+   * The output buffers get reused.
+   *
+   * @param booster	the booster to use
+   * @param data	the sparse instance to predict
+   * @param numFeatures	the number of features
+   * @param indices	the buffer for the feature indices, at least numFeatures long
+   * @param values	the buffer for the feature values, at least numFeatures long
+   * @param output	the native output buffer, must hold at least result.length values
+   * @param outputLen	the native buffer for the number of generated outputs
+   * @param result	the array to store the predictions in
+   * @throws LGBMException	if prediction fails
+   */
+  public static void predictForSparseRow(LGBMBooster booster, Instance data, int numFeatures, int[] indices, double[] values, SWIGTYPE_p_double output, SWIGTYPE_p_long_long outputLen, double[] result) throws LGBMException {
+    int		numNonZeros;
+
+    numNonZeros = fromSparseInstance(data, indices, values);
+    predictForSparseRow(booster, indices, values, numNonZeros, numFeatures, output, outputLen, result);
+  }
+
+  /**
+   * Fills the buffers with the non-zero feature values of the instance
+   * (excluding the class value).
+   *
+   * @param data	the sparse instance to convert
+   * @param indices	the buffer for the feature indices, at least numFeatures long
+   * @param values	the buffer for the feature values, at least numFeatures long
+   * @return		the number of non-zero values
+   */
+  public static int fromSparseInstance(Instance data, int[] indices, double[] values) {
+    int		clsIndex;
+    int		numNonZeros;
+    int		index;
+    int		i;
+
+    clsIndex    = data.classIndex();
+    numNonZeros = 0;
+    for (i = 0; i < data.numValues(); i++) {
+      index = data.index(i);
+      if (index == clsIndex)
+        continue;
+      indices[numNonZeros] = featureIndex(index, clsIndex);
+      values[numNonZeros]  = data.valueSparse(i);
+      numNonZeros++;
+    }
+
+    return numNonZeros;
+  }
+
+  /**
+   * Predicts a single sparse row, already converted into indices/values,
+   * with a single native call. The output buffers get reused.
+   *
+   * @param booster	the booster to use
+   * @param indices	the feature indices
+   * @param values	the feature values
+   * @param numNonZeros	the number of non-zero values in the buffers
+   * @param numFeatures	the number of features
+   * @param output	the native output buffer, must hold at least result.length values
+   * @param outputLen	the native buffer for the number of generated outputs
+   * @param result	the array to store the predictions in
+   * @throws LGBMException	if prediction fails
+   */
+  public static void predictForSparseRow(LGBMBooster booster, int[] indices, double[] values, int numNonZeros, int numFeatures, SWIGTYPE_p_double output, SWIGTYPE_p_long_long outputLen, double[] result) throws LGBMException {
+    int		i;
+
+    if (lightgbmlib.LGBM_BoosterPredictForCSRSingle(
+      indices, values, numNonZeros, getHandle(booster), lightgbmlibConstants.C_API_DTYPE_INT32, lightgbmlibConstants.C_API_DTYPE_FLOAT64,
+      numNonZeros, numFeatures, lightgbmlibConstants.C_API_PREDICT_NORMAL, 0, -1, "", outputLen, output) < 0)
+      throw new LGBMException(lightgbmlib.LGBM_GetLastError());
+    for (i = 0; i < result.length; i++)
+      result[i] = lightgbmlib.doubleArray_getitem(output, i);
+  }
+
   /**
    * Converts the Weka Instance into a double array for LightGBM (excluding class value).
    *
@@ -123,22 +1213,34 @@ public class LightGBMUtils {
    */
   public static double[] fromInstance(Instance data) {
     double[]	result;
+
+    result = new double[data.numAttributes() - (data.classIndex() == -1 ? 0 : 1)];
+    fromInstance(data, result);
+
+    return result;
+  }
+
+  /**
+   * Fills the double array with the values of the Weka Instance (excluding class value).
+   * Missing values are represented as NaN, just like in Weka.
+   *
+   * @param data	the data to convert
+   * @param row		the array to fill
+   */
+  public static void fromInstance(Instance data, double[] row) {
     int		clsIndex;
     int		n;
     int		i;
 
     clsIndex = data.classIndex();
 
-    result = new double[data.numAttributes() - (clsIndex == -1 ? 0 : 1)];
     n = 0;
     for (i = 0; i < data.numAttributes(); i++) {
       if (i == clsIndex)
 	continue;
-      result[n] = data.value(i);
+      row[n] = data.value(i);
       n++;
     }
-
-    return result;
   }
 
 
@@ -153,30 +1255,31 @@ public class LightGBMUtils {
     byte[] buffer;
     int n;
 
-    buffer = new byte[1024];
+    buffer = new byte[LightGBMModelCodec.BUFFER_SIZE];
     while ((n = input.read(buffer)) != -1)
       output.write(buffer, 0, n);
   }
 
   /**
-   * Compresses the string.
+   * Compresses the string using gzip.
    *
    * @param text the string to compress
    * @return the compressed string as bytes
    */
   public static byte[] compress(String text) {
-    ByteArrayInputStream bis;
-    ByteArrayOutputStream bos;
-    GZIPOutputStream gos;
+    return compress(text, LightGBMModelCodec.CODEC_GZIP);
+  }
 
+  /**
+   * Compresses the string.
+   *
+   * @param text the string to compress
+   * @param codec the codec to use, see {@link LightGBMModelCodec}
+   * @return the compressed string as bytes
+   */
+  public static byte[] compress(String text, int codec) {
     try {
-      bis = new ByteArrayInputStream(text.getBytes());
-      bos = new ByteArrayOutputStream();
-      gos = new GZIPOutputStream(bos);
-      copy(bis, gos);
-      gos.flush();
-      gos.close();
-      return bos.toByteArray();
+      return LightGBMModelCodec.encode(text.getBytes(), codec);
     }
     catch (Exception e) {
       System.err.println("Error compressing text: " + text);
@@ -192,16 +1295,8 @@ public class LightGBMUtils {
    * @return the decompressed string
    */
   public static String decompress(byte[] compressed) {
-    ByteArrayInputStream bis;
-    GZIPInputStream gis;
-    ByteArrayOutputStream bos;
-
     try {
-      bis = new ByteArrayInputStream(compressed);
-      gis = new GZIPInputStream(bis);
-      bos = new ByteArrayOutputStream();
-      copy(gis, bos);
-      return new String(bos.toByteArray());
+      return new String(LightGBMModelCodec.decode(compressed));
     }
     catch (Exception e) {
       System.err.println("Error decompressing data:");
@@ -0,0 +1,114 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMDatasetCacheTest.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import org.junit.Test;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.core.Utils;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests the keys of the dataset cache.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LightGBMDatasetCacheTest {
+
+  /**
+   * Generates a dataset with numeric and nominal attributes.
+   *
+   * @return		the data
+   * @throws Exception	if generation fails
+   */
+  protected Instances generate() throws Exception {
+    TestInstances	test;
+
+    test = new TestInstances();
+    test.setSeed(42);
+    test.setNumInstances(200);
+    test.setNumNumeric(4);
+    test.setNumNominal(2);
+    test.setClassType(Attribute.NOMINAL);
+    test.setNumClasses(2);
+    test.setClassIndex(TestInstances.CLASS_IS_LAST);
+
+    return test.generate();
+  }
+
+  /**
+   * Tests that the dataset parameters are part of the key, except for the
+   * number of threads and the order of the parameters.
+   *
+   * @throws Exception	if the test fails
+   */
+  @Test
+  public void testKeyParameters() throws Exception {
+    Instances	data;
+    String	key;
+
+    data = generate();
+    key  = LightGBMDatasetCache.key(data, false, "max_bin=255 categorical_feature=4,5");
+
+    assertNotEquals("max_bin", key, LightGBMDatasetCache.key(data, false, "max_bin=3 categorical_feature=4,5"));
+    assertNotEquals("categorical_feature", key, LightGBMDatasetCache.key(data, false, "max_bin=255"));
+    assertNotEquals("categorical_feature", key, LightGBMDatasetCache.key(data, false, "max_bin=255 categorical_feature=4"));
+    assertNotEquals("float32", key, LightGBMDatasetCache.key(data, true, "max_bin=255 categorical_feature=4,5"));
+    assertEquals("order", key, LightGBMDatasetCache.key(data, false, "categorical_feature=4,5 max_bin=255"));
+    assertEquals("num_threads", key, LightGBMDatasetCache.key(data, false, "max_bin=255 num_threads=3 categorical_feature=4,5"));
+  }
+
+  /**
+   * Tests that the classifier caches separate datasets for different
+   * binning parameters.
+   *
+   * @throws Exception	if the test fails
+   */
+  @Test
+  public void testClassifierParameters() throws Exception {
+    Instances	data;
+    File	dir;
+    LightGBM	classifier;
+
+    data = generate();
+    dir  = Files.createTempDirectory("lightgbm-cache").toFile();
+    try {
+      for (String params: new String[]{"max_bin=15", "max_bin=15 num_threads=1", "max_bin=7"}) {
+        classifier = new LightGBM();
+        classifier.setOptions(Utils.splitOptions("-O BINARY -I 5 -G " + dir.getAbsolutePath() + " -P \"" + params + "\""));
+        classifier.buildClassifier(data);
+        classifier.close();
+      }
+      assertEquals(2, dir.list().length);
+    }
+    finally {
+      for (File file: dir.listFiles())
+        file.delete();
+      dir.delete();
+    }
+  }
+}
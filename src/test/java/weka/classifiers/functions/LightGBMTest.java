@@ -0,0 +1,276 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LightGBMTest.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import org.junit.Test;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the LightGBM classifier, in particular concurrent predictions
+ * using the pool of boosters.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LightGBMTest {
+
+  /** the number of threads making predictions. */
+  public final static int NUM_THREADS = 8;
+
+  /** the number of rounds each thread predicts all the data. */
+  public final static int NUM_ROUNDS = 20;
+
+  /**
+   * Generates a dataset.
+   *
+   * @param classType	the type of class attribute
+   * @return		the data
+   * @throws Exception	if generation fails
+   */
+  protected Instances generate(int classType) throws Exception {
+    TestInstances	test;
+
+    test = new TestInstances();
+    test.setSeed(42);
+    test.setNumInstances(300);
+    test.setNumNumeric(8);
+    test.setNumNominal(2);
+    test.setClassType(classType);
+    test.setNumClasses(3);
+    test.setClassIndex(TestInstances.CLASS_IS_LAST);
+
+    return test.generate();
+  }
+
+  /**
+   * Trains the classifier.
+   *
+   * @param data	the training data
+   * @param options	the options
+   * @return		the trained classifier
+   * @throws Exception	if training fails
+   */
+  protected LightGBM train(Instances data, String... options) throws Exception {
+    LightGBM	result;
+
+    result = new LightGBM();
+    result.setOptions(options);
+    result.buildClassifier(data);
+
+    return result;
+  }
+
+  /**
+   * Makes single and batch predictions from several threads at the same
+   * time and compares them with the ones made sequentially.
+   *
+   * @param classifier	the classifier to use
+   * @param data	the data to predict
+   * @throws Exception	if predictions fail or differ
+   */
+  protected void checkConcurrentPredictions(final LightGBM classifier, final Instances data) throws Exception {
+    final double[][]		expected;
+    ExecutorService		executor;
+    List<Future<Integer>>	futures;
+    int				i;
+
+    expected = new double[data.numInstances()][];
+    for (i = 0; i < data.numInstances(); i++)
+      expected[i] = classifier.distributionForInstance(data.instance(i));
+    assertArrayEquals("batch vs single", expected, classifier.distributionsForInstances(data));
+
+    executor = Executors.newFixedThreadPool(NUM_THREADS);
+    futures  = new ArrayList<>();
+    try {
+      for (i = 0; i < NUM_THREADS; i++) {
+        final boolean batch = (i % 2 == 0);
+        futures.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            int	n;
+            int	round;
+
+            for (round = 0; round < NUM_ROUNDS; round++) {
+              if (batch) {
+                assertArrayEquals("batch", expected, classifier.distributionsForInstances(data));
+              }
+              else {
+                for (n = 0; n < data.numInstances(); n++)
+                  assertArrayEquals("single #" + n, expected[n], classifier.distributionForInstance(data.instance(n)), 0.0);
+              }
+            }
+            return round;
+          }
+        }));
+      }
+      // propagates any failures
+      for (Future<Integer> future: futures)
+        assertEquals(NUM_ROUNDS, (int) future.get());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Concurrent predictions of a multi-class model, with fewer boosters
+   * than threads (i.e., threads have to wait for boosters).
+   *
+   * @throws Exception	if the test fails
+   */
+  @Test
+  public void testConcurrentMultiClass() throws Exception {
+    Instances	data;
+    LightGBM	classifier;
+
+    data       = generate(Attribute.NOMINAL);
+    classifier = train(data, "-O", "MULTICLASS", "-I", "20", "-N", "3", "-batch-size", "64");
+    try {
+      checkConcurrentPredictions(classifier, data);
+    }
+    finally {
+      classifier.close();
+    }
+  }
+
+  /**
+   * Concurrent predictions of a regression model, with a single booster.
+   *
+   * @throws Exception	if the test fails
+   */
+  @Test
+  public void testConcurrentRegression() throws Exception {
+    Instances	data;
+    LightGBM	classifier;
+
+    data       = generate(Attribute.NUMERIC);
+    classifier = train(data, "-O", "REGRESSION", "-I", "20", "-N", "1");
+    try {
+      checkConcurrentPredictions(classifier, data);
+    }
+    finally {
+      classifier.close();
+    }
+  }
+
+  /**
+   * Concurrent predictions using the pure-Java inference engine.
+   *
+   * @throws Exception	if the test fails
+   */
+  @Test
+  public void testConcurrentPureJava() throws Exception {
+    Instances	data;
+    LightGBM	classifier;
+
+    data       = generate(Attribute.NOMINAL);
+    classifier = train(data, "-O", "MULTICLASS", "-I", "20", "-J");
+    try {
+      checkConcurrentPredictions(classifier, data);
+    }
+    finally {
+      classifier.close();
+    }
+  }
+
+  /**
+   * Closes the classifier repeatedly while other threads make predictions.
+   * Threads that still hold a booster finish their prediction, the ones
+   * that try to obtain one from a closed pool get an exception (rather
+   * than using freed native memory); subsequent predictions use a new pool.
+   *
+   * @throws Exception	if the test fails
+   */
+  @Test
+  public void testCloseWhilePredicting() throws Exception {
+    final Instances		data;
+    final LightGBM		classifier;
+    final double[][]		expected;
+    final AtomicBoolean		stop;
+    ExecutorService		executor;
+    List<Future<Integer>>	futures;
+    int				i;
+    int				total;
+
+    data       = generate(Attribute.NOMINAL);
+    classifier = train(data, "-O", "MULTICLASS", "-I", "20", "-N", "2", "-batch-size", "32");
+    expected   = classifier.distributionsForInstances(data);
+    stop       = new AtomicBoolean(false);
+    executor   = Executors.newFixedThreadPool(NUM_THREADS);
+    futures    = new ArrayList<>();
+    try {
+      for (i = 0; i < NUM_THREADS; i++) {
+        final boolean batch = (i % 2 == 0);
+        futures.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            int	n;
+            int	predictions;
+
+            predictions = 0;
+            n           = 0;
+            while (!stop.get()) {
+              try {
+                if (batch)
+                  assertArrayEquals("batch", expected, classifier.distributionsForInstances(data));
+                else
+                  assertArrayEquals("single #" + n, expected[n], classifier.distributionForInstance(data.instance(n)), 0.0);
+                predictions++;
+              }
+              catch (IllegalStateException e) {
+                // pool got closed while waiting for a booster
+              }
+              n = (n + 1) % data.numInstances();
+            }
+            return predictions;
+          }
+        }));
+      }
+      for (i = 0; i < 20; i++) {
+        Thread.sleep(20);
+        classifier.close();
+      }
+      stop.set(true);
+      total = 0;
+      for (Future<Integer> future: futures)
+        total += future.get();
+      assertTrue("no predictions made", total > 0);
+    }
+    finally {
+      stop.set(true);
+      executor.shutdownNow();
+      classifier.close();
+    }
+  }
+}